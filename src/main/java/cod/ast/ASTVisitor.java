@@ -1,11 +1,12 @@
 package cod.ast;
 
 import cod.ast.node.*;
-import cod.debug.DebugSystem;
+import cod.debug.Metrics;
 import java.util.ArrayList;
 import java.util.List;
 
 public abstract class ASTVisitor<T> implements VisitorImpl<T> {
+  private static final int METRIC_DISPATCH = Metrics.register("ast.dispatch");
 
   protected T defaultVisit(Base n) {
     return null;
@@ -280,30 +281,11 @@ public T visit(ChainedComparison n) {
 
   // Helper method to dispatch via accept() - this is what should be used in InterpreterVisitor
   public T dispatch(Base n) {
-    String timer = startPerfTimer(DebugSystem.Level.TRACE, "ast.dispatch");
+    long metricStart = Metrics.start();
     try {
       return n.accept(this);
     } finally {
-      stopPerfTimer(timer);
-    }
-  }
-
-  private static boolean isTimerEnabled(DebugSystem.Level level) {
-    DebugSystem.Level current = DebugSystem.getLevel();
-    return current != DebugSystem.Level.OFF && current.getLevel() >= level.getLevel();
-  }
-
-  private static String startPerfTimer(DebugSystem.Level level, String operation) {
-    if (!isTimerEnabled(level)) {
-      return null;
-    }
-    DebugSystem.startTimer(level, operation);
-    return operation;
-  }
-
-  private static void stopPerfTimer(String timerName) {
-    if (timerName != null) {
-      DebugSystem.stopTimer(timerName);
+      Metrics.stop(METRIC_DISPATCH, metricStart);
     }
   }
 }
@@ -4,6 +4,14 @@ import cod.ast.VisitorImpl;
 
 public class Identifier extends Expr {
     public final String name;
+
+    // Filled in by the interpreter on first use: the scope index the name was
+    // bound at, and the imported or module-level field it resolved to under
+    // the given import version.
+    public transient int scopeHint = -1;
+    public transient Field resolvedField;
+    public transient Object resolvedFieldOwner;
+    public transient int resolvedFieldVersion;
     
     public Identifier(String name) {
         this.name = name;
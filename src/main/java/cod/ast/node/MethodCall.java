@@ -20,6 +20,9 @@ public class MethodCall extends Expr {
     public Integer selfCallLevel;
     public String selfCallLevelConstantName;
 
+    // Resolved-method cache owned by the interpreter
+    public transient Object callSiteCache;
+
     public MethodCall() {
         this.arguments = new ArrayList<Expr>();
         this.slotNames = new ArrayList<String>();
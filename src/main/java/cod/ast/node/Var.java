@@ -6,6 +6,7 @@ public class Var extends Stmt {
     public String name;
     public Expr value;
     public String explicitType; // <<< ADDED THIS FIELD
+    public transient int scopeHint = -1; // scope index of the last binding, set by the interpreter
 
 
            @Override
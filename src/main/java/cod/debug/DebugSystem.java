@@ -37,6 +37,8 @@ public class DebugSystem {
             ThreadLocal.withInitial(HashMap::new);
     private static final ThreadLocal<Map<String, Deque<Level>>> timerLevelStacks =
             ThreadLocal.withInitial(HashMap::new);
+    // Set once any level-based timer starts; until then stopTimer skips the thread-locals
+    private static volatile boolean levelTimersStarted = false;
 
     private static boolean parseBenchmarkMode() {
         String raw = System.getProperty("cod.benchmark.mode");
@@ -117,6 +119,7 @@ public class DebugSystem {
     // New level-based timer
     public static void startTimer(Level level, String name) {
         if (shouldLog(level)) {
+            levelTimersStarted = true;
             Map<String, Deque<Long>> startsByName = levelTimerStacks.get();
             Deque<Long> starts = startsByName.computeIfAbsent(name, k -> new ArrayDeque<>());
             starts.push(System.nanoTime());
@@ -130,8 +133,8 @@ public class DebugSystem {
     // Unified stopTimer - works for both original and level-based timers
     public static double stopTimer(String name) {
         // Check level-based timers first (LIFO for nested same-name timers)
-        Map<String, Deque<Long>> startsByName = levelTimerStacks.get();
-        Deque<Long> starts = startsByName.get(name);
+        Map<String, Deque<Long>> startsByName = levelTimersStarted ? levelTimerStacks.get() : null;
+        Deque<Long> starts = startsByName != null ? startsByName.get(name) : null;
         if (starts != null && !starts.isEmpty()) {
             long levelStart = starts.pop();
             if (starts.isEmpty()) {
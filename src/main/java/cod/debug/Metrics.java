@@ -0,0 +1,146 @@
+// Metrics.java
+package cod.debug;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Aggregated counters and latency histograms for interpreter hot paths.
+ *
+ * Switched on for the whole run with cod.metrics (or COD_METRICS) = true.
+ * ENABLED is a static final, so when it is off start() folds to a constant,
+ * stop() and count() to nothing, and instrumented code costs no more than
+ * it would without them. Metrics are registered once, into int ids held in
+ * static finals, and recorded into fixed arrays: a call count, total and
+ * maximum time, and a histogram with one bucket per power of two
+ * nanoseconds. The table is printed to stderr when the VM exits.
+ */
+public final class Metrics {
+    public static final boolean ENABLED = parseEnabled();
+
+    private static final int MAX_METRICS = 256;
+    private static final int BUCKETS = 48;
+
+    private static final String[] names = new String[MAX_METRICS];
+    private static int registered = 0;
+
+    private static final AtomicLongArray counts = new AtomicLongArray(ENABLED ? MAX_METRICS : 0);
+    private static final AtomicLongArray totalNanos = new AtomicLongArray(ENABLED ? MAX_METRICS : 0);
+    private static final AtomicLongArray maxNanos = new AtomicLongArray(ENABLED ? MAX_METRICS : 0);
+    private static final AtomicLongArray buckets = new AtomicLongArray(ENABLED ? MAX_METRICS * BUCKETS : 0);
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread("cod-metrics") {
+                @Override
+                public void run() {
+                    report(System.err);
+                }
+            });
+        }
+    }
+
+    private Metrics() {}
+
+    private static boolean parseEnabled() {
+        String raw = System.getProperty("cod.metrics");
+        if (raw == null || raw.trim().isEmpty()) {
+            raw = System.getenv("COD_METRICS");
+        }
+        return raw != null && "true".equalsIgnoreCase(raw.trim());
+    }
+
+    /** Id for a metric name; registering the same name again returns the same id. */
+    public static synchronized int register(String name) {
+        for (int i = 0; i < registered; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        if (registered == MAX_METRICS) {
+            throw new IllegalStateException("Too many metrics registered (max " + MAX_METRICS + ")");
+        }
+        names[registered] = name;
+        return registered++;
+    }
+
+    /** Start of a timed section, to be handed to stop(). */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    public static void stop(int id, long start) {
+        if (ENABLED) {
+            record(id, System.nanoTime() - start);
+        }
+    }
+
+    /** Counts an event without timing it. */
+    public static void count(int id) {
+        if (ENABLED) {
+            counts.incrementAndGet(id);
+        }
+    }
+
+    private static void record(int id, long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(id);
+        totalNanos.addAndGet(id, nanos);
+        long max = maxNanos.get(id);
+        while (nanos > max && !maxNanos.compareAndSet(id, max, nanos)) {
+            max = maxNanos.get(id);
+        }
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+        buckets.incrementAndGet(id * BUCKETS + bucket);
+    }
+
+    public static void reset() {
+        if (!ENABLED) return;
+        for (int i = 0; i < MAX_METRICS; i++) {
+            counts.set(i, 0);
+            totalNanos.set(i, 0);
+            maxNanos.set(i, 0);
+        }
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    /** Prints one line per metric that was hit: calls, total, mean, p50, p99, max. */
+    public static void report(PrintStream out) {
+        if (!ENABLED) return;
+        int count;
+        synchronized (Metrics.class) {
+            count = registered;
+        }
+        out.println(String.format(Locale.ROOT, "%-44s %12s %12s %10s %10s %10s %10s",
+            "metric", "calls", "total ms", "mean us", "p50 us", "p99 us", "max us"));
+        for (int id = 0; id < count; id++) {
+            long calls = counts.get(id);
+            if (calls == 0) continue;
+            long total = totalNanos.get(id);
+            if (total == 0 && maxNanos.get(id) == 0) {
+                out.println(String.format(Locale.ROOT, "%-44s %12d", names[id], calls));
+                continue;
+            }
+            out.println(String.format(Locale.ROOT, "%-44s %12d %12.3f %10.3f %10.3f %10.3f %10.3f",
+                names[id], calls, total / 1e6, total / 1e3 / calls,
+                percentile(id, calls, 0.50) / 1e3, percentile(id, calls, 0.99) / 1e3,
+                maxNanos.get(id) / 1e3));
+        }
+    }
+
+    // Upper bound of the histogram bucket holding the given fraction of calls.
+    private static long percentile(int id, long calls, double fraction) {
+        long target = (long) Math.ceil(calls * fraction);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets.get(id * BUCKETS + b);
+            if (seen >= target) {
+                return b == 0 ? 0L : Math.min(1L << b, maxNanos.get(id));
+            }
+        }
+        return maxNanos.get(id);
+    }
+}
@@ -0,0 +1,103 @@
+package cod.interpreter;
+
+import cod.ast.node.Method;
+import cod.ast.node.MethodCall;
+import cod.ast.node.Program;
+import cod.ast.node.Type;
+
+/**
+ * Inline cache of one method call site, kept on its MethodCall node. Each
+ * entry is a method the site resolved to, keyed on everything the lookup
+ * looked at: the called name (self calls take it from the enclosing
+ * method), the target's type, the calling class, the calling object's
+ * type and the state of a qualified call's receiver. A site keeps up to
+ * MAX_ENTRIES shapes; past that it is megamorphic and resolves every time.
+ * The cache is dropped when the program, the imports or the class tables
+ * change.
+ */
+final class CallSiteCache {
+    // Which instance the resolved method runs on
+    static final int ON_TARGET = 0;
+    static final int ON_RECEIVER = 1;
+    static final int ON_CONTEXT = 2;
+
+    // Receiver keys for calls that do not resolve through a receiver type
+    static final Object NO_RECEIVER = new Object();
+    static final Object RECEIVER_UNBOUND = new Object();
+    static final Object RECEIVER_NOT_OBJECT = new Object();
+    static final Object OBJECT_LOOKUP = new Object();
+
+    private static final int MAX_ENTRIES = 4;
+
+    private final Program program;
+    private final int importVersion;
+    private final int classVersion;
+    // Replaced, never written in place, so readers need no lock
+    private volatile Entry[] entries = new Entry[0];
+    private volatile boolean megamorphic;
+
+    private CallSiteCache(Program program, int importVersion, int classVersion) {
+        this.program = program;
+        this.importVersion = importVersion;
+        this.classVersion = classVersion;
+    }
+
+    /** The node's cache, replaced when stale; null once the site is megamorphic. */
+    static CallSiteCache of(MethodCall node, Interpreter interpreter) {
+        Program program = interpreter.getCurrentProgram();
+        int importVersion = interpreter.getImportResolver().getVersion();
+        int classVersion = interpreter.getConstructorResolver().getVersion();
+        CallSiteCache cache = (CallSiteCache) node.callSiteCache;
+        if (cache == null || cache.program != program
+            || cache.importVersion != importVersion || cache.classVersion != classVersion) {
+            cache = new CallSiteCache(program, importVersion, classVersion);
+            node.callSiteCache = cache;
+        }
+        return cache.megamorphic ? null : cache;
+    }
+
+    Entry find(String name, Type targetType, Type currentClass, Type objectType, Object receiver) {
+        for (Entry entry : entries) {
+            if (entry.name.equals(name) && entry.targetType == targetType && entry.currentClass == currentClass
+                && entry.objectType == objectType && entry.receiver == receiver) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    void add(String name, Type targetType, Type currentClass, Type objectType, Object receiver,
+             Method method, int binding) {
+        Entry[] current = entries;
+        if (current.length == MAX_ENTRIES) {
+            megamorphic = true;
+            entries = new Entry[0];
+            return;
+        }
+        Entry[] grown = new Entry[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[current.length] = new Entry(name, targetType, currentClass, objectType, receiver, method, binding);
+        entries = grown;
+    }
+
+    static final class Entry {
+        final String name;
+        final Type targetType;
+        final Type currentClass;
+        final Type objectType;
+        final Object receiver;
+        final Method method;
+        final int binding;
+
+        Entry(String name, Type targetType, Type currentClass, Type objectType, Object receiver,
+              Method method, int binding) {
+            this.name = name;
+            this.targetType = targetType;
+            this.currentClass = currentClass;
+            this.objectType = objectType;
+            this.receiver = receiver;
+            this.method = method;
+            this.binding = binding;
+        }
+    }
+}
@@ -956,9 +956,68 @@ public void run(Object entryPoint) {
     return hasSlots ? slotValues : result;
   }
 
+  /**
+   * Runs a method with arguments that are already evaluated. The CodP-TAC
+   * executor uses this to hand a single function back to the interpreter.
+   */
+  public Object invokeMethod(Method method, ObjectInstance obj, List<Object> arguments) {
+    if (method == null) {
+      throw new InternalError("invokeMethod called with null method");
+    }
+
+    int argCount = arguments != null ? arguments.size() : 0;
+    int paramCount = method.parameters != null ? method.parameters.size() : 0;
+    if (argCount > paramCount) {
+      throw new ProgramError(
+          "Too many arguments: expected " + paramCount + ", got " + argCount);
+    }
+
+    Map<String, Object> locals = new HashMap<String, Object>();
+    for (int i = 0; i < paramCount; i++) {
+      Param param = method.parameters.get(i);
+      Object argValue;
+      if (i < argCount) {
+        argValue = arguments.get(i);
+      } else if (param.hasDefaultValue) {
+        ExecutionContext defaultCtx = new ExecutionContext(obj, locals, null, null, typeSystem);
+        visitor.pushContext(defaultCtx);
+        try {
+          argValue = visitor.visit((Base) param.defaultValue);
+        } finally {
+          visitor.popContext();
+        }
+      } else {
+        throw new ProgramError(
+            "Missing argument for parameter '" + param.name + 
+            "'. Expected " + paramCount + " arguments, got " + argCount);
+      }
+
+      String paramType = param.type;
+      if (!typeSystem.validateType(paramType, argValue)) {
+        if (TEXT.toString().equals(paramType)) {
+          argValue = typeSystem.convertType(argValue, paramType);
+        } else {
+          throw new ProgramError(
+              "Argument type mismatch for parameter " + param.name + 
+              ". Expected " + paramType + ", got: " + typeSystem.getConcreteType(argValue));
+        }
+      }
+      argValue = typeSystem.normalizeForDeclaredType(paramType, argValue);
+      locals.put(param.name, typeSystem.wrapUnionType(argValue, paramType));
+    }
+
+    return evalMethod(method, obj, locals);
+  }
+
+  /**
+   * Calls a method with arguments evaluated in the caller's context, the
+   * frame locals was taken from. Without one, arguments are evaluated in a
+   * frame built over locals.
+   */
   @SuppressWarnings("unchecked")
   public Object evalMethodCall(
-      MethodCall call, ObjectInstance obj, Map<String, Object> locals, Method methodParam) {
+      MethodCall call, ObjectInstance obj, Map<String, Object> locals, Method methodParam,
+      ExecutionContext caller) {
     
     if (call == null) {
         throw new InternalError("evalMethodCall called with null call");
@@ -974,14 +1033,28 @@ public void run(Object entryPoint) {
     Method method = methodParam;
     
     if (method == null) {
-        if (obj != null && obj.type != null) {
-            ExecutionContext searchCtx = new ExecutionContext(obj, locals, null, null, typeSystem);
-            method = constructorResolver.findMethodInHierarchy(obj.type, call.name, searchCtx);
-        }
-        
-        if (method == null) {
-            String qName = call.qualifiedName != null ? call.qualifiedName : call.name;
-            method = resolveImportedMethod(qName);
+        Type objType = obj != null ? obj.type : null;
+        CallSiteCache callSite = CallSiteCache.of(call, this);
+        CallSiteCache.Entry cached = callSite != null
+            ? callSite.find(call.name, objType, null, null, CallSiteCache.OBJECT_LOOKUP)
+            : null;
+        if (cached != null) {
+            method = cached.method;
+        } else {
+            if (objType != null) {
+                ExecutionContext searchCtx = new ExecutionContext(obj, locals, null, null, typeSystem);
+                method = constructorResolver.findMethodInHierarchy(objType, call.name, searchCtx);
+            }
+            
+            if (method == null) {
+                String qName = call.qualifiedName != null ? call.qualifiedName : call.name;
+                method = resolveImportedMethod(qName);
+            }
+            
+            if (method != null && callSite != null) {
+                callSite.add(call.name, objType, null, null, CallSiteCache.OBJECT_LOOKUP,
+                    method, CallSiteCache.ON_CONTEXT);
+            }
         }
     }
     
@@ -1010,11 +1083,16 @@ public void run(Object entryPoint) {
         return handleBuiltinMethod(method, call);
     }
 
-    Map<String, Object> methodLocals = new HashMap<String, Object>();
-    Map<String, String> methodLocalTypes = new HashMap<String, String>();
-
     int argCount = call.arguments != null ? call.arguments.size() : 0;
     int paramCount = method.parameters != null ? method.parameters.size() : 0;
+    Map<String, Object> methodLocals = new HashMap<String, Object>(frameCapacity(paramCount));
+    Map<String, String> methodLocalTypes = new HashMap<String, String>(frameCapacity(paramCount));
+
+    // Defaults, and arguments without a caller context, are evaluated in one
+    // frame over locals.
+    boolean callerOnTop = caller != null
+        && !visitor.isContextStackEmpty() && visitor.getCurrentContext() == caller;
+    ExecutionContext argFrame = null;
 
     for (int i = 0; i < paramCount; i++) {
         Param param = method.parameters.get(i);
@@ -1025,43 +1103,30 @@ public void run(Object entryPoint) {
 
             if (argExpr instanceof Identifier && "_".equals(((Identifier) argExpr).name)) {
                 if (param.hasDefaultValue) {
-                    ExecutionContext defaultCtx = new ExecutionContext(obj, locals, null, null, typeSystem);
-                    visitor.pushContext(defaultCtx);
-                    try {
-                        argValue = visitor.visit((Base) param.defaultValue);
-                    } finally {
-                        visitor.popContext();
+                    if (argFrame == null) {
+                        argFrame = new ExecutionContext(obj, locals, null, null, typeSystem);
                     }
+                    argValue = evalInFrame(param.defaultValue, argFrame);
                 } else {
                     throw new ProgramError(
                         "Parameter '" + param.name + "' has no default value and cannot be skipped with '_'");
                 }
+            } else if (callerOnTop) {
+                argValue = visitor.visit((Base) argExpr);
+            } else if (caller != null) {
+                argValue = evalInFrame(argExpr, caller);
             } else {
-                ExecutionContext savedCtx = null;
-                if (!visitor.isContextStackEmpty()) {
-                    savedCtx = visitor.getCurrentContext();
-                }
-                
-                ExecutionContext argCtx = new ExecutionContext(obj, locals, null, null, typeSystem);
-                visitor.pushContext(argCtx);
-                try {
-                    argValue = visitor.visit((Base) argExpr);
-                } finally {
-                    visitor.popContext();
-                    if (savedCtx != null) {
-                        visitor.pushContext(savedCtx);
-                    }
+                if (argFrame == null) {
+                    argFrame = new ExecutionContext(obj, locals, null, null, typeSystem);
                 }
+                argValue = evalInFrame(argExpr, argFrame);
             }
         } else {
             if (param.hasDefaultValue) {
-                ExecutionContext defaultCtx = new ExecutionContext(obj, locals, null, null, typeSystem);
-                visitor.pushContext(defaultCtx);
-                try {
-                    argValue = visitor.visit((Base) param.defaultValue);
-                } finally {
-                    visitor.popContext();
+                if (argFrame == null) {
+                    argFrame = new ExecutionContext(obj, locals, null, null, typeSystem);
                 }
+                argValue = evalInFrame(param.defaultValue, argFrame);
 
                 if (!typeSystem.validateType(param.type, argValue)) {
                     throw new ProgramError(
@@ -1104,8 +1169,9 @@ public void run(Object entryPoint) {
             "Too many arguments: expected " + paramCount + ", got " + argCount);
     }
 
-    Map<String, Object> slotValues = new LinkedHashMap<String, Object>();
-    Map<String, String> slotTypes = new LinkedHashMap<String, String>();
+    int slotCount = method.returnSlots != null ? method.returnSlots.size() : 0;
+    Map<String, Object> slotValues = new LinkedHashMap<String, Object>(frameCapacity(slotCount));
+    Map<String, String> slotTypes = new LinkedHashMap<String, String>(frameCapacity(slotCount));
     if (method.returnSlots != null) {
         for (Slot s : method.returnSlots) {
             slotValues.put(s.name, null);
@@ -1113,13 +1179,9 @@ public void run(Object entryPoint) {
         }
     }
 
-    ExecutionContext ctx = new ExecutionContext(obj, methodLocals, slotValues, slotTypes, typeSystem);
+    ExecutionContext ctx = ExecutionContext.forCall(
+        obj, methodLocals, methodLocalTypes, slotValues, slotTypes, typeSystem);
     ctx.currentMethodName = call.name;
-    
-    for (Map.Entry<String, String> entry : methodLocalTypes.entrySet()) {
-        ctx.setVariableType(entry.getKey(), entry.getValue());
-    }
-    
     ctx.objectInstance = obj;
     
     if (method.associatedClass != null) {
@@ -1174,6 +1236,20 @@ public void run(Object entryPoint) {
     return result;
   }
 
+  private Object evalInFrame(Expr expr, ExecutionContext frame) {
+    visitor.pushContext(frame);
+    try {
+      return visitor.visit((Base) expr);
+    } finally {
+      visitor.popContext();
+    }
+  }
+
+  // HashMap capacity that holds n entries without resizing
+  static int frameCapacity(int n) {
+    return n < 3 ? 4 : (int) (n / 0.75f) + 1;
+  }
+
   @SuppressWarnings("unchecked")
   public Object handleBuiltinMethod(Method node, MethodCall call) {
     if (node == null) {
@@ -17,6 +17,7 @@ import cod.interpreter.handler.*;
 import java.util.*;
 import static cod.lexer.TokenType.Keyword.*;
 import cod.semantic.ConstructorResolver;
+import cod.semantic.ImportResolver;
 import cod.semantic.NamingValidator;
 
 public class InterpreterVisitor extends ASTVisitor<Object> implements Evaluator {
@@ -397,7 +398,7 @@ public class InterpreterVisitor extends ASTVisitor<Object> implements Evaluator
                 }
             }
             
-            ctx.setVariable(node.name, val);
+            node.scopeHint = ctx.setVariable(node.name, val, node.scopeHint);
             
             if (node.explicitType != null) {
                 String declaredType = node.explicitType;
@@ -409,26 +410,26 @@ public class InterpreterVisitor extends ASTVisitor<Object> implements Evaluator
                         String typeStr = (String) val;
                         if (typeSystem.isTypeLiteral(typeStr)) {
                             val = TypeHandler.Value.createTypeValue(typeStr);
-                            ctx.setVariable(node.name, val);
+                            ctx.setVariable(node.name, val, node.scopeHint);
                         }
                     } else if (val instanceof TextLiteral) {
                         String typeStr = ((TextLiteral) val).value;
                         if (typeSystem.isTypeLiteral(typeStr)) {
                             val = TypeHandler.Value.createTypeValue(typeStr);
-                            ctx.setVariable(node.name, val);
+                            ctx.setVariable(node.name, val, node.scopeHint);
                         }
                     }
                 }
                 
                 if (val == null && resolvedDeclaredType.contains("|none")) {
                     val = createNoneValue();
-                    ctx.setVariable(node.name, val);
+                    ctx.setVariable(node.name, val, node.scopeHint);
                 }
                 
                 if (!typeSystem.validateType(resolvedDeclaredType, val)) {
                     if (typeSystem.isNoneValue(val) && resolvedDeclaredType.contains("|none")) {
                         val = createNoneValue();
-                        ctx.setVariable(node.name, val);
+                        ctx.setVariable(node.name, val, node.scopeHint);
                     } else {
                         throw new ProgramError("Type mismatch for " + node.name + ". Expected " + resolvedDeclaredType);
                     }
@@ -437,7 +438,7 @@ public class InterpreterVisitor extends ASTVisitor<Object> implements Evaluator
                 if (resolvedDeclaredType != null && resolvedDeclaredType.indexOf('|') >= 0) {
                     String activeType = typeSystem.getConcreteType(typeSystem.unwrap(val));
                     val = new TypeHandler.Value(val, activeType, resolvedDeclaredType);
-                    ctx.setVariable(node.name, val);
+                    ctx.setVariable(node.name, val, node.scopeHint);
                 }
             }
             
@@ -1193,12 +1194,12 @@ public class InterpreterVisitor extends ASTVisitor<Object> implements Evaluator
 
     @Override
     public Object visit(Skip node) {
-        throw new SkipIterationException();
+        throw SkipIterationException.INSTANCE;
     }
 
     @Override
     public Object visit(Break node) {
-        throw new BreakLoopException();
+        throw BreakLoopException.INSTANCE;
     }
 
     @Override
@@ -1208,7 +1209,7 @@ public class InterpreterVisitor extends ASTVisitor<Object> implements Evaluator
 
     @Override
     public Object visit(VoidReturn node) {
-        throw new EarlyExitException();
+        throw EarlyExitException.INSTANCE;
     }
 
     @Override
@@ -1252,7 +1253,7 @@ public class InterpreterVisitor extends ASTVisitor<Object> implements Evaluator
                 return evaluateLambdaAssignment(node, ctx, allLocals);
             }
             
-            Object res = interpreter.evalMethodCall(node.methodCall, ctx.objectInstance, allLocals, null);
+            Object res = interpreter.evalMethodCall(node.methodCall, ctx.objectInstance, allLocals, null, ctx);
 
             if (res instanceof Map) {
                 Map<String, Object> map = (Map<String, Object>) res;
@@ -1750,10 +1751,18 @@ public class InterpreterVisitor extends ASTVisitor<Object> implements Evaluator
         ExecutionContext ctx = getCurrentContext();
         String name = node.name;
 
-        Object val = ctx.getVariable(name);
+        Object val = ctx.getVariableAt(node.scopeHint, name);
         if (val != null) {
             return val;
         }
+        int scopeIndex = ctx.findVariableScope(name, -1);
+        if (scopeIndex >= 0) {
+            node.scopeHint = scopeIndex;
+            val = ctx.getVariableAt(scopeIndex, name);
+            if (val != null) {
+                return val;
+            }
+        }
         
         if (ctx.getSlotValues() != null && ctx.getSlotValues().containsKey(name)) {
             return ctx.getSlotValues().get(name);
@@ -1768,15 +1777,26 @@ public class InterpreterVisitor extends ASTVisitor<Object> implements Evaluator
             }
         }
 
-        Field importedField = interpreter.getImportResolver().findField(name);
+        ImportResolver importResolver = interpreter.getImportResolver();
+        Program currentProgram = interpreter.getCurrentProgram();
+        // A newly loaded import can shadow either kind of cached field
+        if (node.resolvedField != null
+            && node.resolvedFieldVersion == importResolver.getVersion()
+            && (node.resolvedFieldOwner == importResolver || node.resolvedFieldOwner == currentProgram)) {
+            return node.resolvedField.value != null ? dispatch(node.resolvedField.value) : null;
+        }
+
+        Field importedField = importResolver.findField(name);
         if (importedField != null) {
+            node.resolvedField = importedField;
+            node.resolvedFieldOwner = importResolver;
+            node.resolvedFieldVersion = importResolver.getVersion();
             if (importedField.value != null) {
                 return dispatch(importedField.value);
             }
             return null;
         }
 
-        Program currentProgram = interpreter.getCurrentProgram();
         if (currentProgram != null && currentProgram.unit != null && currentProgram.unit.types != null) {
             for (Type type : currentProgram.unit.types) {
                 if (type == null || type.fields == null) {
@@ -1787,6 +1807,9 @@ public class InterpreterVisitor extends ASTVisitor<Object> implements Evaluator
                 }
                 for (Field field : type.fields) {
                     if (field != null && name.equals(field.name)) {
+                        node.resolvedField = field;
+                        node.resolvedFieldOwner = currentProgram;
+                        node.resolvedFieldVersion = importResolver.getVersion();
                         if (field.value != null) {
                             return dispatch(field.value);
                         }
@@ -2177,17 +2200,22 @@ public Object visit(MethodCall node) {
             }
         }
 
-        if (ctx != null && callQualifiedName != null && callQualifiedName.contains(".")) {
-            String[] parts = callQualifiedName.split("\\.");
-            if (parts.length == 2) {
-                String receiverName = parts[0];
-                String methodName = parts[1];
-                Object receiverValue = ctx.getVariable(receiverName);
-                receiverValue = typeSystem.unwrap(receiverValue);
-                if (literalRegistry.hasMethod(receiverValue, methodName)) {
-                    List<Object> evaluatedArgs = evaluateMethodCallArguments(node);
-                    return literalRegistry.handleMethod(receiverValue, methodName, evaluatedArgs, ctx);
-                }
+        String[] qualifiedParts = null;
+        if (callQualifiedName != null && callQualifiedName.contains(".")) {
+            qualifiedParts = callQualifiedName.split("\\.");
+            if (qualifiedParts.length != 2) {
+                qualifiedParts = null;
+            }
+        }
+
+        if (ctx != null && qualifiedParts != null) {
+            String receiverName = qualifiedParts[0];
+            String methodName = qualifiedParts[1];
+            Object receiverValue = ctx.getVariable(receiverName);
+            receiverValue = typeSystem.unwrap(receiverValue);
+            if (literalRegistry.hasMethod(receiverValue, methodName)) {
+                List<Object> evaluatedArgs = evaluateMethodCallArguments(node);
+                return literalRegistry.handleMethod(receiverValue, methodName, evaluatedArgs, ctx);
             }
         }
 
@@ -2219,75 +2247,95 @@ public Object visit(MethodCall node) {
             return globalRegistry.executeGlobal(callName, evaluatedArgs);
         }
         
-        // Try to find method in current class hierarchy
-        Method method = null;
-        ObjectInstance invocationInstance = ctx.objectInstance;
+        ObjectInstance targetInstance = null;
         if (node.target != null) {
-            Object targetValue = dispatch(node.target);
-            Object unwrappedTarget = typeSystem.unwrap(targetValue);
-            if (unwrappedTarget instanceof ObjectInstance) {
-                ObjectInstance targetInstance = (ObjectInstance) unwrappedTarget;
-                if (targetInstance.type != null) {
-                    Method targetMethod = interpreter
-                        .getConstructorResolver()
-                        .findMethodInHierarchy(targetInstance.type, callName, ctx);
-                    if (targetMethod != null) {
-                        method = targetMethod;
-                        invocationInstance = targetInstance;
-                    }
-                }
+            Object unwrappedTarget = typeSystem.unwrap(dispatch(node.target));
+            if (unwrappedTarget instanceof ObjectInstance
+                && ((ObjectInstance) unwrappedTarget).type != null) {
+                targetInstance = (ObjectInstance) unwrappedTarget;
             }
         }
-        if (method == null && ctx.currentClass != null) {
-            method = interpreter
-                .getConstructorResolver()
-                .findMethodInHierarchy(ctx.currentClass, callName, ctx);
-        }
 
-        // If not found, try from object instance
-        if (method == null && ctx.objectInstance != null && ctx.objectInstance.type != null) {
-            method = interpreter
-                .getConstructorResolver()
-                .findMethodInHierarchy(ctx.objectInstance.type, callName, ctx);
+        // The receiver of a qualified call, when it is bound to a local
+        Object receiverKey = CallSiteCache.NO_RECEIVER;
+        ObjectInstance receiverInstance = null;
+        if (qualifiedParts != null) {
+            int receiverScope = ctx.findVariableScope(qualifiedParts[0], -1);
+            if (receiverScope < 0) {
+                receiverKey = CallSiteCache.RECEIVER_UNBOUND;
+            } else {
+                receiverInstance = extractObjectInstance(ctx.getVariableAt(receiverScope, qualifiedParts[0]));
+                if (receiverInstance != null && receiverInstance.type != null) {
+                    receiverKey = receiverInstance.type;
+                } else {
+                    receiverKey = CallSiteCache.RECEIVER_NOT_OBJECT;
+                }
+            }
         }
 
-        // If still not found, try imported methods
-        if (method == null) {
-            String qName = callQualifiedName;
-            if (qName != null && qName.contains(".")) {
-                String[] parts = qName.split("\\.");
-                if (parts.length == 2) {
-                    String receiver = parts[0];
-                    String methodName = parts[1];
-                    if (ctx.locals().containsKey(receiver)) {
-                        Object receiverObj = ctx.locals().get(receiver);
-                        ObjectInstance objInst = extractObjectInstance(receiverObj);
-                        if (objInst != null) {
-                            if (objInst.type != null) {
-                                Method instanceMethod = interpreter
-                                    .getConstructorResolver()
-                                    .findMethodInHierarchy(objInst.type, methodName, ctx);
-                                if (instanceMethod != null) {
-                                    method = instanceMethod;
-                                    invocationInstance = objInst;
-                                }
-                                qName = objInst.type.name + "." + methodName;
-                            }
-                        }
-                    } else {
-                        Method receiverTypeMethod = findMethodOnReceiverType(receiver, methodName);
-                        if (receiverTypeMethod != null) {
-                            method = receiverTypeMethod;
+        Type targetType = targetInstance != null ? targetInstance.type : null;
+        Type objectType = ctx.objectInstance != null ? ctx.objectInstance.type : null;
+        CallSiteCache callSite = CallSiteCache.of(node, interpreter);
+        CallSiteCache.Entry cached = callSite != null
+            ? callSite.find(callName, targetType, ctx.currentClass, objectType, receiverKey)
+            : null;
+
+        Method method = null;
+        int binding = CallSiteCache.ON_CONTEXT;
+        if (cached != null) {
+            method = cached.method;
+            binding = cached.binding;
+        } else {
+            ConstructorResolver constructorResolver = interpreter.getConstructorResolver();
+            if (targetInstance != null) {
+                method = constructorResolver.findMethodInHierarchy(targetType, callName, ctx);
+                if (method != null) {
+                    binding = CallSiteCache.ON_TARGET;
+                }
+            }
+            // Try to find method in current class hierarchy
+            if (method == null && ctx.currentClass != null) {
+                method = constructorResolver.findMethodInHierarchy(ctx.currentClass, callName, ctx);
+            }
+
+            // If not found, try from object instance
+            if (method == null && objectType != null) {
+                method = constructorResolver.findMethodInHierarchy(objectType, callName, ctx);
+            }
+
+            // If still not found, try imported methods
+            if (method == null) {
+                String qName = callQualifiedName;
+                if (qualifiedParts != null) {
+                    String methodName = qualifiedParts[1];
+                    if (receiverKey == CallSiteCache.RECEIVER_UNBOUND) {
+                        method = findMethodOnReceiverType(qualifiedParts[0], methodName);
+                    } else if (receiverInstance != null && receiverInstance.type != null) {
+                        method = constructorResolver.findMethodInHierarchy(receiverInstance.type, methodName, ctx);
+                        if (method != null) {
+                            binding = CallSiteCache.ON_RECEIVER;
                         }
+                        qName = receiverInstance.type.name + "." + methodName;
                     }
                 }
+                if (method == null) {
+                    if (qName == null) qName = callName;
+                    method = interpreter.getImportResolver().findMethod(qName);
+                }
             }
-            if (method == null) {
-                if (qName == null) qName = callName;
-                method = interpreter.getImportResolver().findMethod(qName);
+
+            if (method != null && callSite != null) {
+                callSite.add(callName, targetType, ctx.currentClass, objectType, receiverKey, method, binding);
             }
         }
 
+        ObjectInstance invocationInstance = ctx.objectInstance;
+        if (binding == CallSiteCache.ON_TARGET) {
+            invocationInstance = targetInstance;
+        } else if (binding == CallSiteCache.ON_RECEIVER) {
+            invocationInstance = receiverInstance;
+        }
+
         // If method not found after all attempts, throw error
         if (method == null) {
             throw new ProgramError("Method not found: " + callName);
@@ -2332,11 +2380,10 @@ public Object visit(MethodCall node) {
 
         while (true) {
             // Prepare method locals with parameter values
-            Map<String, Object> methodLocals = new HashMap<String, Object>();
-            Map<String, String> methodLocalTypes = new HashMap<String, String>();
-
             int argCount = activeMethodArgs.size();
             int paramCount = method.parameters != null ? method.parameters.size() : 0;
+            Map<String, Object> methodLocals = new HashMap<String, Object>(Interpreter.frameCapacity(paramCount));
+            Map<String, String> methodLocalTypes = new HashMap<String, String>(Interpreter.frameCapacity(paramCount));
 
             for (int i = 0; i < paramCount; i++) {
                 Param param = method.parameters.get(i);
@@ -2395,8 +2442,9 @@ public Object visit(MethodCall node) {
             }
 
             // Setup slot values for method return
-            Map<String, Object> slotValues = new LinkedHashMap<String, Object>();
-            Map<String, String> slotTypes = new LinkedHashMap<String, String>();
+            int slotCount = method.returnSlots != null ? method.returnSlots.size() : 0;
+            Map<String, Object> slotValues = new LinkedHashMap<String, Object>(Interpreter.frameCapacity(slotCount));
+            Map<String, String> slotTypes = new LinkedHashMap<String, String>(Interpreter.frameCapacity(slotCount));
             if (method.returnSlots != null) {
                 for (Slot s : method.returnSlots) {
                     slotValues.put(s.name, null);
@@ -2404,19 +2452,16 @@ public Object visit(MethodCall node) {
                 }
             }
 
-            // Create method execution context
-            ExecutionContext methodCtx = new ExecutionContext(
+            // Create method execution context; it takes over both maps
+            ExecutionContext methodCtx = ExecutionContext.forCall(
                 invocationInstance,
                 methodLocals,
+                methodLocalTypes,
                 slotValues,
                 slotTypes,
                 typeSystem
             );
 
-            for (Map.Entry<String, String> entry : methodLocalTypes.entrySet()) {
-                methodCtx.setVariableType(entry.getKey(), entry.getValue());
-            }
-
             methodCtx.objectInstance = invocationInstance;
 
             if (method.associatedClass != null) {
@@ -3190,7 +3235,7 @@ public Object visit(ChainedComparison node) {
                 return interpreter.handleBuiltinMethod(method, node);
             }
             
-            Object result = interpreter.evalMethodCall(node, ctx.objectInstance, ctx.locals(), method);
+            Object result = interpreter.evalMethodCall(node, ctx.objectInstance, ctx.locals(), method, ctx);
             
             if (node.slotNames != null && !node.slotNames.isEmpty()) {
                 if (!(result instanceof Map)) {
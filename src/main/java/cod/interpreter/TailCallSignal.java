@@ -2,19 +2,29 @@ package cod.interpreter;
 
 import cod.interpreter.context.LambdaClosure;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * Thrown by a self call in tail position and caught by the invocation loop
+ * of the matching method or lambda, which rebinds its parameters and runs
+ * the body again. Built without a stack trace; arguments are taken as given
+ * (callers pass a freshly evaluated list) and must not be modified.
+ *
+ * Control-flow signals are never reported, so none of them records a stack
+ * trace. Break, skip and early exit carry no state at all and are thrown as
+ * their shared INSTANCE; this one carries the call and is built per throw.
+ */
 public final class TailCallSignal extends RuntimeException {
     public final String methodName;
     public final LambdaClosure lambdaClosure;
     public final List<Object> arguments;
 
     private TailCallSignal(String methodName, LambdaClosure lambdaClosure, List<Object> arguments) {
+        super(null, null, false, false);
         this.methodName = methodName;
         this.lambdaClosure = lambdaClosure;
-        this.arguments = arguments != null ? new ArrayList<Object>(arguments) : Collections.<Object>emptyList();
+        this.arguments = arguments != null ? arguments : Collections.<Object>emptyList();
     }
 
     public static TailCallSignal forMethod(String methodName, List<Object> arguments) {
@@ -1,12 +1,14 @@
 package cod.interpreter.context;
 
 import cod.ast.node.Type;
-import cod.debug.DebugSystem;
+import cod.debug.Metrics;
 import cod.error.InternalError;
 import cod.interpreter.handler.TypeHandler;
 import java.util.*;
 
 public class ExecutionContext {
+    private static final int METRIC_GET_VARIABLE = Metrics.register("executionContext.getVariable");
+    private static final int METRIC_SET_VARIABLE = Metrics.register("executionContext.setVariable");
     
     public ObjectInstance objectInstance;
     public Type currentClass;
@@ -148,6 +150,28 @@ public Map<String, Object> getLocalsMap() {
     public ExecutionContext(ObjectInstance obj, Map<String, Object> locals, 
                            Map<String, Object> slotValues, Map<String, String> slotTypes,
                            TypeHandler typeHandler) {
+        this(obj, copyLocals(locals), new HashMap<String, String>(), slotValues, slotTypes, typeHandler);
+    }
+
+    /**
+     * Frame for a method call. Unlike the constructor it takes ownership of
+     * locals and localTypes as the outermost scope instead of copying them,
+     * so the caller must not keep using either map.
+     */
+    public static ExecutionContext forCall(ObjectInstance obj, Map<String, Object> locals,
+                                           Map<String, String> localTypes,
+                                           Map<String, Object> slotValues, Map<String, String> slotTypes,
+                                           TypeHandler typeHandler) {
+        if (locals == null || localTypes == null) {
+            throw new InternalError("forCall called with null locals or localTypes");
+        }
+        return new ExecutionContext(obj, locals, localTypes, slotValues, slotTypes, typeHandler);
+    }
+
+    private ExecutionContext(ObjectInstance obj, Map<String, Object> initialLocals,
+                             Map<String, String> initialTypes,
+                             Map<String, Object> slotValues, Map<String, String> slotTypes,
+                             TypeHandler typeHandler) {
         if (typeHandler == null) {
             throw new InternalError("ExecutionContext constructed with null typeHandler");
         }
@@ -162,14 +186,7 @@ public Map<String, Object> getLocalsMap() {
         // Initialize locals
         this.localsStack = new ArrayList<Map<String, Object>>();
         this.localTypesStack = new ArrayList<Map<String, String>>();
-        
-        Map<String, Object> initialLocals = new HashMap<String, Object>();
-        if (locals != null) {
-            initialLocals.putAll(locals);
-        }
         this.localsStack.add(initialLocals);
-        
-        Map<String, String> initialTypes = new HashMap<String, String>();
         this.localTypesStack.add(initialTypes);
         
         // OPTIMIZED: Initialize slots with parallel arrays for O(1) access
@@ -182,6 +199,14 @@ public Map<String, Object> getLocalsMap() {
         registerInitialBorrowState(initialLocals);
     }
     
+    private static Map<String, Object> copyLocals(Map<String, Object> locals) {
+        Map<String, Object> copy = new HashMap<String, Object>();
+        if (locals != null) {
+            copy.putAll(locals);
+        }
+        return copy;
+    }
+    
     /**
      * Get the type handler
      */
@@ -359,7 +384,7 @@ public Map<String, Object> getLocalsMap() {
     }
     
     public Object getVariable(String name) {
-        String timer = startPerfTimer(DebugSystem.Level.TRACE, "executionContext.getVariable");
+        long metricStart = Metrics.start();
         try {
             if (name == null) return null;
             
@@ -374,34 +399,88 @@ public Map<String, Object> getLocalsMap() {
             
             return null;
         } finally {
-            stopPerfTimer(timer);
+            Metrics.stop(METRIC_GET_VARIABLE, metricStart);
         }
     }
     
     public void setVariable(String name, Object value) {
-        String timer = startPerfTimer(DebugSystem.Level.TRACE, "executionContext.setVariable");
+        long metricStart = Metrics.start();
         try {
             if (name == null) {
                 throw new InternalError("setVariable called with null name");
             }
-            
-            // Check if variable exists in any scope
-            for (int i = localsStack.size() - 1; i >= 0; i--) {
-                Map<String, Object> scope = localsStack.get(i);
-                if (scope.containsKey(name)) {
-                    Object previous = scope.put(name, value);
-                    replaceTrackedValue(previous, value);
-                    return;
-                }
-            }
-            
-            // Create in current scope
-            Map<String, Object> currentScope = localsStack.get(localsStack.size() - 1);
-            Object previous = currentScope.put(name, value);
-            replaceTrackedValue(previous, value);
+            bindVariable(name, value);
         } finally {
-            stopPerfTimer(timer);
+            Metrics.stop(METRIC_SET_VARIABLE, metricStart);
+        }
+    }
+
+    /*
+     * Indexed access for callers that remember where a name was bound (the
+     * interpreter keeps the index on the AST node). setVariable updates an
+     * existing binding rather than shadowing it, so a name is bound in at
+     * most one scope and a hit at the remembered index is the binding a full
+     * scan would find; on a miss the callers scan and remember again.
+     */
+
+    /** Value bound to name at scopeIndex; null when that scope does not bind it. */
+    public Object getVariableAt(int scopeIndex, String name) {
+        if (scopeIndex < 0 || scopeIndex >= localsStack.size()) {
+            return null;
+        }
+        return localsStack.get(scopeIndex).get(name);
+    }
+
+    /** Index of the scope binding name, trying scopeHint first; -1 when unbound. */
+    public int findVariableScope(String name, int scopeHint) {
+        if (name == null) return -1;
+        if (scopeHint >= 0 && scopeHint < localsStack.size()
+            && localsStack.get(scopeHint).containsKey(name)) {
+            return scopeHint;
         }
+        for (int i = localsStack.size() - 1; i >= 0; i--) {
+            if (localsStack.get(i).containsKey(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Same as setVariable, but rebinds at scopeHint directly when that scope
+     * already binds the name. Returns the index of the scope written.
+     */
+    public int setVariable(String name, Object value, int scopeHint) {
+        if (name == null) {
+            throw new InternalError("setVariable called with null name");
+        }
+        if (scopeHint >= 0 && scopeHint < localsStack.size()) {
+            Map<String, Object> scope = localsStack.get(scopeHint);
+            if (scope.containsKey(name)) {
+                Object previous = scope.put(name, value);
+                replaceTrackedValue(previous, value);
+                return scopeHint;
+            }
+        }
+        return bindVariable(name, value);
+    }
+
+    private int bindVariable(String name, Object value) {
+        // Check if variable exists in any scope
+        for (int i = localsStack.size() - 1; i >= 0; i--) {
+            Map<String, Object> scope = localsStack.get(i);
+            if (scope.containsKey(name)) {
+                Object previous = scope.put(name, value);
+                replaceTrackedValue(previous, value);
+                return i;
+            }
+        }
+
+        // Create in current scope
+        int current = localsStack.size() - 1;
+        Object previous = localsStack.get(current).put(name, value);
+        replaceTrackedValue(previous, value);
+        return current;
     }
 
     public int resolveVariableScopeIndex(String name) {
@@ -647,23 +726,4 @@ public boolean removeVariableFromAllScopes(String name) {
             }
         }
     }
-
-    private static boolean isTimerEnabled(DebugSystem.Level level) {
-        DebugSystem.Level current = DebugSystem.getLevel();
-        return current != DebugSystem.Level.OFF && current.getLevel() >= level.getLevel();
-    }
-
-    private static String startPerfTimer(DebugSystem.Level level, String operation) {
-        if (!isTimerEnabled(level)) {
-            return null;
-        }
-        DebugSystem.startTimer(level, operation);
-        return operation;
-    }
-
-    private static void stopPerfTimer(String timerName) {
-        if (timerName != null) {
-            DebugSystem.stopTimer(timerName);
-        }
-    }
 }
@@ -2,7 +2,9 @@ package cod.interpreter.exception;
 
 @SuppressWarnings("serial")
 public class BreakLoopException extends RuntimeException {
+    public static final BreakLoopException INSTANCE = new BreakLoopException();
+
     public BreakLoopException() {
-        super("Break loop");
+        super("Break loop", null, false, false);
     }
   }
\ No newline at end of file
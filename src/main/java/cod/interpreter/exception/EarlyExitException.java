@@ -2,7 +2,9 @@ package cod.interpreter.exception;
 
 @SuppressWarnings("serial")
 public class EarlyExitException extends RuntimeException {
+    public static final EarlyExitException INSTANCE = new EarlyExitException();
+
     public EarlyExitException() {
-      super("Early exit");
+      super("Early exit", null, false, false);
     }
   }
\ No newline at end of file
@@ -2,7 +2,9 @@ package cod.interpreter.exception;
 
 @SuppressWarnings("serial")
 public class SkipIterationException extends RuntimeException {
+    public static final SkipIterationException INSTANCE = new SkipIterationException();
+
     public SkipIterationException() {
-      super("Skip iteration");
+      super("Skip iteration", null, false, false);
     }
   }
\ No newline at end of file
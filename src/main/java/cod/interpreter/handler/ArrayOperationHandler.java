@@ -86,8 +86,17 @@ public class ArrayOperationHandler {
             if (arrayObj instanceof NaturalArray) {
                 NaturalArray natural = (NaturalArray) arrayObj;
                 long size = natural.size();
+                boolean longElements = natural.hasLongElements();
+                NaturalArray.Cursor cursor = longElements ? null : natural.cursor(0L);
                 for (long i = 0; i < size; i++) {
-                    Object currentValue = natural.get(i);
+                    Object currentValue;
+                    if (cursor != null) {
+                        currentValue = cursor.next();
+                    } else if (natural.isPackedLong(i)) {
+                        currentValue = AutoStackingNumber.fromLong(natural.getLong(i));
+                    } else {
+                        currentValue = natural.get(i);
+                    }
                     writeLoopVariable(ctx, binding, currentValue);
                     try {
                         executeLoopBody(ctx, node);
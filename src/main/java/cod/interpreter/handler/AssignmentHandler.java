@@ -382,7 +382,11 @@ private Object assignToSlot(String slotTarget, Object value, ExecutionContext ct
             
             if (target instanceof Identifier) {
                 Identifier id = (Identifier) target;
-                return assignToVariableScoped(id.name, newValue, ctx);
+                int scopeIndex = ctx.findVariableScope(id.name, id.scopeHint);
+                if (scopeIndex >= 0) {
+                    id.scopeHint = scopeIndex;
+                }
+                return assignToVariableScoped(id.name, newValue, ctx, scopeIndex);
             }
             
             throw new ProgramError("Invalid assignment target: " + 
@@ -403,15 +407,17 @@ private Object assignToSlot(String slotTarget, Object value, ExecutionContext ct
     }
     
 public Object assignToVariableScoped(String varName, Object newValue, ExecutionContext ctx) {
-    // First check all scopes for existing variable
-    for (int i = ctx.getScopeDepth() - 1; i >= 0; i--) {
-        Map<String, Object> scope = ctx.getLocalsStack().get(i);
-        if (scope.containsKey(varName)) {
-            if (NamingValidator.isAllCaps(varName)) {
-                throw new ProgramError("Cannot reassign constant '" + varName + "'");
-            }
-            return updateVariableInScope(varName, newValue, scope, i, ctx);
+    return assignToVariableScoped(varName, newValue, ctx, ctx.findVariableScope(varName, -1));
+}
+
+// scopeIndex: where varName is bound (from ExecutionContext.findVariableScope), or -1
+private Object assignToVariableScoped(String varName, Object newValue, ExecutionContext ctx, int scopeIndex) {
+    // First the scope holding an existing variable
+    if (scopeIndex >= 0) {
+        if (NamingValidator.isAllCaps(varName)) {
+            throw new ProgramError("Cannot reassign constant '" + varName + "'");
         }
+        return updateVariableInScope(varName, newValue, scopeIndex, ctx);
     }
     
     // Then check object fields
@@ -431,8 +437,7 @@ public Object assignToVariableScoped(String varName, Object newValue, ExecutionC
     throw new ProgramError("Variable '" + varName + "' not declared. Use ':=' for declaration, or declare it first.");
 }
     
-    private Object updateVariableInScope(String varName, Object newValue, 
-                                       Map<String, Object> scope, int scopeIndex, 
+    private Object updateVariableInScope(String varName, Object newValue, int scopeIndex,
                                        ExecutionContext ctx) {
         try {
             String declaredType = null;
@@ -449,7 +454,7 @@ public Object assignToVariableScoped(String varName, Object newValue, ExecutionC
                 }
             }
             
-            ctx.setVariable(varName, newValue);
+            ctx.setVariableAtScope(scopeIndex, varName, newValue);
             return newValue;
         } catch (ProgramError e) {
             throw e;
@@ -1,7 +1,7 @@
 package cod.interpreter.handler;
 
 import cod.ast.node.*;
-import cod.debug.DebugSystem;
+import cod.debug.Metrics;
 import cod.error.InternalError;
 import cod.error.ProgramError;
 import cod.math.AutoStackingNumber;
@@ -13,6 +13,7 @@ import cod.range.RangeObjects;
 import java.util.*;
 
 public class ExpressionHandler {
+    private static final int METRIC_HANDLE_BINARY_OP = Metrics.register("expression.handleBinaryOp");
     private final TypeHandler typeSystem;
     private final InterpreterVisitor dispatcher;
     
@@ -30,7 +31,7 @@ public class ExpressionHandler {
     // === Core Expression Evaluation ===
     
     public Object handleBinaryOp(BinaryOp node, ExecutionContext ctx) {
-        String timer = startPerfTimer(DebugSystem.Level.TRACE, "expression.handleBinaryOp");
+        long metricStart = Metrics.start();
         try {
             if (node == null) {
                 throw new InternalError("handleBinaryOp called with null node");
@@ -142,7 +143,7 @@ public class ExpressionHandler {
                 throw new InternalError("Binary operation failed: " + node.op, e);
             }
         } finally {
-            stopPerfTimer(timer);
+            Metrics.stop(METRIC_HANDLE_BINARY_OP, metricStart);
         }
     }
     
@@ -630,23 +631,4 @@ public Object handleChainedComparison(ChainedComparison node, ExecutionContext c
             throw new InternalError("'is' operator evaluation failed", e);
         }
     }
-
-    private static boolean isTimerEnabled(DebugSystem.Level level) {
-        DebugSystem.Level current = DebugSystem.getLevel();
-        return current != DebugSystem.Level.OFF && current.getLevel() >= level.getLevel();
-    }
-
-    private static String startPerfTimer(DebugSystem.Level level, String operation) {
-        if (!isTimerEnabled(level)) {
-            return null;
-        }
-        DebugSystem.startTimer(level, operation);
-        return operation;
-    }
-
-    private static void stopPerfTimer(String timerName) {
-        if (timerName != null) {
-            DebugSystem.stopTimer(timerName);
-        }
-    }
 }
@@ -405,8 +405,7 @@ public class LoopOptimizationHandler {
             NaturalArray arr = targetArrays.get(seq);
             for (int offset = 0; offset < maxLag; offset++) {
                 long seedIndex = seedStart + offset;
-                Object seedObj = arr.get(seedIndex);
-                AutoStackingNumber seedNum = typeSystem.toAutoStackingNumber(seedObj);
+                AutoStackingNumber seedNum = readSeed(arr, seedIndex);
                 if (seedNum == null) {
                     return new ArrayList<PatternHandler.PatternResult>();
                 }
@@ -532,8 +531,7 @@ public class LoopOptimizationHandler {
         long seedStart = recurrenceStart - order;
         for (int i = 0; i < order; i++) {
             long seedIndex = seedStart + i;
-            Object seedValue = targetArray.get(seedIndex);
-            AutoStackingNumber v = typeSystem.toAutoStackingNumber(seedValue);
+            AutoStackingNumber v = readSeed(targetArray, seedIndex);
             if (v == null) {
                 return null;
             }
@@ -804,6 +802,13 @@ public class LoopOptimizationHandler {
         return null;
     }
 
+    private AutoStackingNumber readSeed(NaturalArray arr, long index) {
+        if (arr.isPackedLong(index)) {
+            return AutoStackingNumber.fromLong(arr.getLong(index));
+        }
+        return typeSystem.toAutoStackingNumber(arr.get(index));
+    }
+
     public List<PatternHandler.PatternResult> extractMultiArraySequencePatterns(For node) {
         List<PatternHandler.PatternResult> results = new ArrayList<PatternHandler.PatternResult>();
         if (node == null || node.body == null || node.body.statements == null) {
@@ -1,7 +1,7 @@
 package cod.interpreter.handler;
 
 import cod.ast.node.*;
-import cod.debug.DebugSystem;
+import cod.debug.Metrics;
 import cod.error.InternalError;
 import cod.error.ProgramError;
 import cod.interpreter.context.ObjectInstance;
@@ -20,6 +20,36 @@ import java.util.Objects;
 import java.util.RandomAccess;
 
 public class TypeHandler {
+
+    private static final int METRIC_IS_POINTER_TYPE = Metrics.register("type.isPointerType");
+    private static final int METRIC_IS_SIZED_ARRAY_TYPE = Metrics.register("type.isSizedArrayType");
+    private static final int METRIC_GET_SIZED_ARRAY_ELEMENT_TYPE = Metrics.register("type.getSizedArrayElementType");
+    private static final int METRIC_GET_SIZED_ARRAY_LENGTH = Metrics.register("type.getSizedArrayLength");
+    private static final int METRIC_IS_NONE_VALUE = Metrics.register("type.isNoneValue");
+    private static final int METRIC_UNWRAP = Metrics.register("type.unwrap");
+    private static final int METRIC_IS_TRUTHY = Metrics.register("type.isTruthy");
+    private static final int METRIC_IS_TYPE_LITERAL = Metrics.register("type.isTypeLiteral");
+    private static final int METRIC_IS_UNSAFE_NUMERIC_TYPE = Metrics.register("type.isUnsafeNumericType");
+    private static final int METRIC_NORMALIZE_FOR_DECLARED_TYPE = Metrics.register("type.normalizeForDeclaredType");
+    private static final int METRIC_PROCESS_TYPE_LITERAL = Metrics.register("type.processTypeLiteral");
+    private static final int METRIC_NORMALIZE_TYPE_SIGNATURE = Metrics.register("type.normalizeTypeSignature");
+    private static final int METRIC_VALIDATE_WITH_NULLABLE = Metrics.register("type.validateWithNullable");
+    private static final int METRIC_IS_VALID_FOR_NULLABLE_TYPE = Metrics.register("type.isValidForNullableType");
+    private static final int METRIC_WRAP_UNION_TYPE = Metrics.register("type.wrapUnionType");
+    private static final int METRIC_TO_AUTO_STACKING_NUMBER = Metrics.register("type.toAutoStackingNumber");
+    private static final int METRIC_TO_LONG = Metrics.register("type.toLong");
+    private static final int METRIC_TO_DOUBLE = Metrics.register("type.toDouble");
+    private static final int METRIC_ADD_NUMBERS = Metrics.register("type.addNumbers");
+    private static final int METRIC_SUBTRACT_NUMBERS = Metrics.register("type.subtractNumbers");
+    private static final int METRIC_MULTIPLY_NUMBERS = Metrics.register("type.multiplyNumbers");
+    private static final int METRIC_DIVIDE_NUMBERS = Metrics.register("type.divideNumbers");
+    private static final int METRIC_MODULUS_NUMBERS = Metrics.register("type.modulusNumbers");
+    private static final int METRIC_NEGATE_NUMBER = Metrics.register("type.negateNumber");
+    private static final int METRIC_COMPARE = Metrics.register("type.compare");
+    private static final int METRIC_CONVERT_TYPE = Metrics.register("type.convertType");
+    private static final int METRIC_GET_CONCRETE_TYPE = Metrics.register("type.getConcreteType");
+    private static final int METRIC_VALIDATE = Metrics.register("type.validate");
+    private static final int METRIC_ARE_EQUAL = Metrics.register("type.areEqual");
     
     // === TypeHandler Value Class ===
     public static class Value {
@@ -135,16 +165,16 @@ public class TypeHandler {
     private final Map<String, List<String>> splitCache = new HashMap<String, List<String>>();
 
     public boolean isPointerType(String type) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.isPointerType");
+        long metricStart = Metrics.start();
         try {
             return type != null && type.startsWith("*") && type.length() > 1;
         } finally {
-            DebugSystem.stopTimer("type.isPointerType");
+            Metrics.stop(METRIC_IS_POINTER_TYPE, metricStart);
         }
     }
 
     public boolean isSizedArrayType(String type) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.isSizedArrayType");
+        long metricStart = Metrics.start();
         try {
             if (type == null) return false;
             int l = type.lastIndexOf('[');
@@ -157,22 +187,22 @@ public class TypeHandler {
             }
             return true;
         } finally {
-            DebugSystem.stopTimer("type.isSizedArrayType");
+            Metrics.stop(METRIC_IS_SIZED_ARRAY_TYPE, metricStart);
         }
     }
 
     public String getSizedArrayElementType(String type) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.getSizedArrayElementType");
+        long metricStart = Metrics.start();
         try {
             if (!isSizedArrayType(type)) return null;
             return type.substring(0, type.lastIndexOf('['));
         } finally {
-            DebugSystem.stopTimer("type.getSizedArrayElementType");
+            Metrics.stop(METRIC_GET_SIZED_ARRAY_ELEMENT_TYPE, metricStart);
         }
     }
 
     public int getSizedArrayLength(String type) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.getSizedArrayLength");
+        long metricStart = Metrics.start();
         try {
             if (!isSizedArrayType(type)) return -1;
             String sizePart = type.substring(type.lastIndexOf('[') + 1, type.length() - 1).trim();
@@ -182,13 +212,13 @@ public class TypeHandler {
                 return -1;
             }
         } finally {
-            DebugSystem.stopTimer("type.getSizedArrayLength");
+            Metrics.stop(METRIC_GET_SIZED_ARRAY_LENGTH, metricStart);
         }
     }
 
     // Helper to check if value is none
     public boolean isNoneValue(Object obj) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.isNoneValue");
+        long metricStart = Metrics.start();
         try {
             if (obj == null) return true;
             if (obj instanceof NoneLiteral) return true;
@@ -199,12 +229,12 @@ public class TypeHandler {
             }
             return false;
         } finally {
-            DebugSystem.stopTimer("type.isNoneValue");
+            Metrics.stop(METRIC_IS_NONE_VALUE, metricStart);
         }
     }
 
     public Object unwrap(Object obj) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.unwrap");
+        long metricStart = Metrics.start();
         try {
             if (obj instanceof Value) {
                 return ((Value) obj).value;
@@ -214,14 +244,14 @@ public class TypeHandler {
             }
             return obj;
         } finally {
-            DebugSystem.stopTimer("type.unwrap");
+            Metrics.stop(METRIC_UNWRAP, metricStart);
         }
     }
 
     // === TypeHandler/Value Checking ===
     
     public boolean isTruthy(Object value) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.isTruthy");
+        long metricStart = Metrics.start();
         try {
             if (value == null) return false;
             
@@ -272,12 +302,12 @@ public class TypeHandler {
                 value.getClass().getName() + " with value: " + value
             );
         } finally {
-            DebugSystem.stopTimer("type.isTruthy");
+            Metrics.stop(METRIC_IS_TRUTHY, metricStart);
         }
     }
     
     public boolean isTypeLiteral(String str) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.isTypeLiteral");
+        long metricStart = Metrics.start();
         try {
             return str.equals("int") || str.equals("float") || str.equals("text") || 
                    str.equals("bool") || str.equals("type") || str.equals("none") || 
@@ -286,12 +316,12 @@ public class TypeHandler {
                    str.equals("[]") || str.startsWith("[") || 
                    str.startsWith("(") || str.contains("|");
         } finally {
-            DebugSystem.stopTimer("type.isTypeLiteral");
+            Metrics.stop(METRIC_IS_TYPE_LITERAL, metricStart);
         }
     }
 
     public boolean isUnsafeNumericType(String type) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.isUnsafeNumericType");
+        long metricStart = Metrics.start();
         try {
             if (type == null) return false;
             for (String unsafeType : UNSAFE_NUMERIC_TYPES) {
@@ -301,12 +331,12 @@ public class TypeHandler {
             }
             return false;
         } finally {
-            DebugSystem.stopTimer("type.isUnsafeNumericType");
+            Metrics.stop(METRIC_IS_UNSAFE_NUMERIC_TYPE, metricStart);
         }
     }
 
     public Object normalizeForDeclaredType(String declaredType, Object value) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.normalizeForDeclaredType");
+        long metricStart = Metrics.start();
         try {
             if (declaredType == null) return value;
             String normalized = declaredType.trim();
@@ -316,24 +346,24 @@ public class TypeHandler {
             Object converted = convertType(value, normalized);
             return new Value(converted, normalized, normalized);
         } finally {
-            DebugSystem.stopTimer("type.normalizeForDeclaredType");
+            Metrics.stop(METRIC_NORMALIZE_FOR_DECLARED_TYPE, metricStart);
         }
     }
     
     public Object processTypeLiteral(String typeLiteral) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.processTypeLiteral");
+        long metricStart = Metrics.start();
         try {
             if (typeLiteral.equals("none")) {
                 return new NoneLiteral();
             }
             return Value.createTypeValue(typeLiteral);
         } finally {
-            DebugSystem.stopTimer("type.processTypeLiteral");
+            Metrics.stop(METRIC_PROCESS_TYPE_LITERAL, metricStart);
         }
     }
 
     private String normalizeTypeSignature(String typeSig) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.normalizeTypeSignature");
+        long metricStart = Metrics.start();
         try {
             if (typeSig == null) return null;
             String cached = normalizedTypeCache.get(typeSig);
@@ -356,7 +386,7 @@ public class TypeHandler {
             }
             return trimmed;
         } finally {
-            DebugSystem.stopTimer("type.normalizeTypeSignature");
+            Metrics.stop(METRIC_NORMALIZE_TYPE_SIGNATURE, metricStart);
         }
     }
 
@@ -370,30 +400,30 @@ public class TypeHandler {
     // === TypeHandler Validation with Special Cases ===
     
     public boolean validateTypeWithNullable(String declaredType, Object value) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.validateWithNullable");
+        long metricStart = Metrics.start();
         try {
             if (isNoneValue(value) && declaredType.contains("|none")) {
                 return true;
             }
             return validateType(declaredType, value);
         } finally {
-            DebugSystem.stopTimer("type.validateWithNullable");
+            Metrics.stop(METRIC_VALIDATE_WITH_NULLABLE, metricStart);
         }
     }
     
     public boolean isValidForNullableType(String declaredType, Object value) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.isValidForNullableType");
+        long metricStart = Metrics.start();
         try {
             return declaredType.contains("|none") && isNoneValue(value);
         } finally {
-            DebugSystem.stopTimer("type.isValidForNullableType");
+            Metrics.stop(METRIC_IS_VALID_FOR_NULLABLE_TYPE, metricStart);
         }
     }
     
     // === TypeHandler Conversion Helpers ===
     
     public Object wrapUnionType(Object value, String declaredType) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.wrapUnionType");
+        long metricStart = Metrics.start();
         try {
             if (declaredType != null && declaredType.indexOf('|') >= 0) {
                 String activeType = getConcreteType(unwrap(value));
@@ -401,14 +431,14 @@ public class TypeHandler {
             }
             return value;
         } finally {
-            DebugSystem.stopTimer("type.wrapUnionType");
+            Metrics.stop(METRIC_WRAP_UNION_TYPE, metricStart);
         }
     }
     
     // === Convert to AutoStackingNumber ===
     
     public AutoStackingNumber toAutoStackingNumber(Object o) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.toAutoStackingNumber");
+        long metricStart = Metrics.start();
         try {
             o = unwrap(o);
             
@@ -455,27 +485,27 @@ public class TypeHandler {
                 (o != null ? o.getClass().getName() + " with value " + o : "null")
             );
         } finally {
-            DebugSystem.stopTimer("type.toAutoStackingNumber");
+            Metrics.stop(METRIC_TO_AUTO_STACKING_NUMBER, metricStart);
         }
     }
     
     public long toLong(Object o) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.toLong");
+        long metricStart = Metrics.start();
         try {
             AutoStackingNumber num = toAutoStackingNumber(o);
             return num.longValue();
         } finally {
-            DebugSystem.stopTimer("type.toLong");
+            Metrics.stop(METRIC_TO_LONG, metricStart);
         }
     }
     
     public double toDouble(Object o) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.toDouble");
+        long metricStart = Metrics.start();
         try {
             AutoStackingNumber num = toAutoStackingNumber(o);
             return num.doubleValue();
         } finally {
-            DebugSystem.stopTimer("type.toDouble");
+            Metrics.stop(METRIC_TO_DOUBLE, metricStart);
         }
     }
 
@@ -517,7 +547,7 @@ public class TypeHandler {
     // === Arithmetic Operations ===
     
     public Object addNumbers(Object a, Object b) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.addNumbers");
+        long metricStart = Metrics.start();
         try {
             a = unwrap(a); 
             b = unwrap(b);
@@ -527,7 +557,7 @@ public class TypeHandler {
             }
             return addScalars(a, b);
         } finally {
-            DebugSystem.stopTimer("type.addNumbers");
+            Metrics.stop(METRIC_ADD_NUMBERS, metricStart);
         }
     }
     
@@ -554,7 +584,7 @@ public class TypeHandler {
     }
     
     public Object subtractNumbers(Object a, Object b) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.subtractNumbers");
+        long metricStart = Metrics.start();
         try {
             a = unwrap(a); 
             b = unwrap(b);
@@ -564,7 +594,7 @@ public class TypeHandler {
             }
             return subtractScalars(a, b);
         } finally {
-            DebugSystem.stopTimer("type.subtractNumbers");
+            Metrics.stop(METRIC_SUBTRACT_NUMBERS, metricStart);
         }
     }
     
@@ -586,7 +616,7 @@ public class TypeHandler {
     }
     
     public Object multiplyNumbers(Object a, Object b) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.multiplyNumbers");
+        long metricStart = Metrics.start();
         try {
             a = unwrap(a); 
             b = unwrap(b);
@@ -596,7 +626,7 @@ public class TypeHandler {
             }
             return multiplyScalars(a, b);
         } finally {
-            DebugSystem.stopTimer("type.multiplyNumbers");
+            Metrics.stop(METRIC_MULTIPLY_NUMBERS, metricStart);
         }
     }
     
@@ -987,7 +1017,7 @@ public class TypeHandler {
     }
     
     public Object divideNumbers(Object a, Object b) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.divideNumbers");
+        long metricStart = Metrics.start();
         try {
             a = unwrap(a); 
             b = unwrap(b);
@@ -997,7 +1027,7 @@ public class TypeHandler {
             }
             return divideScalars(a, b);
         } finally {
-            DebugSystem.stopTimer("type.divideNumbers");
+            Metrics.stop(METRIC_DIVIDE_NUMBERS, metricStart);
         }
     }
     
@@ -1026,7 +1056,7 @@ public class TypeHandler {
     }
     
     public Object modulusNumbers(Object a, Object b) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.modulusNumbers");
+        long metricStart = Metrics.start();
         try {
             a = unwrap(a); 
             b = unwrap(b);
@@ -1036,7 +1066,7 @@ public class TypeHandler {
             }
             return modulusScalars(a, b);
         } finally {
-            DebugSystem.stopTimer("type.modulusNumbers");
+            Metrics.stop(METRIC_MODULUS_NUMBERS, metricStart);
         }
     }
     
@@ -1062,7 +1092,7 @@ public class TypeHandler {
     }
     
     public Object negateNumber(Object a) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.negateNumber");
+        long metricStart = Metrics.start();
         try {
             a = unwrap(a);
             
@@ -1073,12 +1103,12 @@ public class TypeHandler {
             AutoStackingNumber num = toAutoStackingNumber(a);
             return num.negate();
         } finally {
-            DebugSystem.stopTimer("type.negateNumber");
+            Metrics.stop(METRIC_NEGATE_NUMBER, metricStart);
         }
     }
     
     public int compare(Object a, Object b) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.compare");
+        long metricStart = Metrics.start();
         try {
             a = unwrap(a); 
             b = unwrap(b);
@@ -1109,12 +1139,12 @@ public class TypeHandler {
             AutoStackingNumber numB = toAutoStackingNumber(b);
             return numA.compareTo(numB);
         } finally {
-            DebugSystem.stopTimer("type.compare");
+            Metrics.stop(METRIC_COMPARE, metricStart);
         }
     }
 
     public Object convertType(Object value, String targetType) {
-        DebugSystem.startTimer(DebugSystem.Level.DEBUG, "type.convertType");
+        long metricStart = Metrics.start();
         try {
             value = unwrap(value);
             
@@ -1280,7 +1310,7 @@ public class TypeHandler {
                 "), targetType=" + targetType
             );
         } finally {
-            DebugSystem.stopTimer("type.convertType");
+            Metrics.stop(METRIC_CONVERT_TYPE, metricStart);
         }
     }
 
@@ -1343,7 +1373,7 @@ public class TypeHandler {
     }
         
     public String getConcreteType(Object value) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.getConcreteType");
+        long metricStart = Metrics.start();
         try {
             if (value instanceof Value) {
                 Value tv = (Value) value;
@@ -1398,12 +1428,12 @@ public class TypeHandler {
             throw new InternalError("Unknown type for value: " + value + " (" + 
                 (value != null ? value.getClass().getName() : "null") + ")");
         } finally {
-            DebugSystem.stopTimer("type.getConcreteType");
+            Metrics.stop(METRIC_GET_CONCRETE_TYPE, metricStart);
         }
     }
 
     public boolean validateType(String typeSig, Object value) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.validate");
+        long metricStart = Metrics.start();
         try {
             if (typeSig == null) {
                 return true;
@@ -1432,7 +1462,7 @@ public class TypeHandler {
             }
             return validateTypeInternal(normalizedTypeSig, rawValue, concreteType);
         } finally {
-            DebugSystem.stopTimer("type.validate");
+            Metrics.stop(METRIC_VALIDATE, metricStart);
         }
     }
 
@@ -1447,7 +1477,7 @@ public class TypeHandler {
     }
     
     public boolean areEqual(Object a, Object b) {
-        DebugSystem.startTimer(DebugSystem.Level.TRACE, "type.areEqual");
+        long metricStart = Metrics.start();
         try {
             a = unwrap(a);
             b = unwrap(b);
@@ -1484,7 +1514,7 @@ public class TypeHandler {
             
             return a.equals(b);
         } finally {
-            DebugSystem.stopTimer("type.areEqual");
+            Metrics.stop(METRIC_ARE_EQUAL, metricStart);
         }
     }
 
@@ -820,8 +820,9 @@ public class LiteralRegistry {
                 startIndex = 1;
             }
             TypeHandler typeHandler = ctx.getTypeHandler();
+            NaturalArray.Cursor cursor = naturalArray != null ? naturalArray.cursor(startIndex) : null;
             for (int i = startIndex; i < sourceSize; i++) {
-                Object next = naturalArray != null ? naturalArray.get((long) i) : source.get(i);
+                Object next = cursor != null ? cursor.next() : source.get(i);
                 accumulator = applyOperator(typeHandler, accumulator, op, next);
             }
             return accumulator;
@@ -837,8 +838,9 @@ public class LiteralRegistry {
             startIndex = 1;
         }
         
+        NaturalArray.Cursor cursor = naturalArray != null ? naturalArray.cursor(startIndex) : null;
         for (int i = startIndex; i < sourceSize; i++) {
-            Object value = naturalArray != null ? naturalArray.get((long) i) : source.get(i);
+            Object value = cursor != null ? cursor.next() : source.get(i);
             accumulator = invokeArrayCallback(arguments.get(0), "reduce", ctx, accumulator, value, Integer.valueOf(i));
         }
         return accumulator;
@@ -1060,6 +1062,7 @@ public class LiteralRegistry {
         private long scanned;
         private final long sourceSize;
         private boolean fullyScanned;
+        private NaturalArray.Cursor scanCursor;
 
         private LazyNaturalArrayFilterView(NaturalArray source, NaturalArrayPredicate predicate) {
             this.source = source;
@@ -1116,7 +1119,10 @@ public class LiteralRegistry {
                 fullyScanned = true;
                 return;
             }
-            Object value = source.get(scanned);
+            if (scanCursor == null) {
+                scanCursor = source.cursor(scanned);
+            }
+            Object value = scanCursor.next();
             if (predicate.test(scanned, value)) {
                 acceptedSourceIndices.add(Long.valueOf(scanned));
             }
@@ -10,13 +10,46 @@ import java.util.Map;
 final class DeserializationVisitor {
     private DeserializationVisitor() {}
 
-    static Base readNode(String nodeName, Map<String, Object> values) throws IOException {
+    /**
+     * Decoded field values of one node, positional in schema order. Lookups
+     * compare the interned field-name constants by identity first.
+     */
+    static final class Fields {
+        private final String[] names;
+        private final Object[] values;
+
+        Fields(String[] names, Object[] values) {
+            this.names = names;
+            this.values = values;
+        }
+
+        boolean containsKey(String name) {
+            return indexOf(name) >= 0;
+        }
+
+        Object get(String name) {
+            int index = indexOf(name);
+            return index >= 0 ? values[index] : null;
+        }
+
+        private int indexOf(String name) {
+            for (int i = names.length - 1; i >= 0; i--) {
+                if (names[i] == name) return i;
+            }
+            for (int i = names.length - 1; i >= 0; i--) {
+                if (names[i].equals(name)) return i;
+            }
+            return -1;
+        }
+    }
+
+    static Base readNode(String nodeName, Fields values) throws IOException {
         Base node = instantiateNode(nodeName, values);
         applyNodeFields(node, values);
         return node;
     }
 
-    private static Base instantiateNode(String nodeName, Map<String, Object> values) throws IOException {
+    private static Base instantiateNode(String nodeName, Fields values) throws IOException {
         if ("Identifier".equals(nodeName)) {
             return new Identifier((String) values.get("name"));
         }
@@ -98,7 +131,7 @@ final class DeserializationVisitor {
         throw new IOException("Unknown IR node class: cod.ast.node." + nodeName);
     }
 
-    private static void applyNodeFields(Base node, Map<String, Object> values) {
+    private static void applyNodeFields(Base node, Fields values) {
         if (node instanceof Program) {
             Program n = (Program) node;
             if (values.containsKey("unit")) n.unit = (Unit) values.get("unit");
@@ -5,6 +5,7 @@ import cod.ptac.Artifact;
 import cod.ptac.Flag;
 import cod.ptac.Function;
 import cod.ptac.Instruction;
+import cod.ptac.Linker;
 import cod.ptac.Operand;
 import cod.ptac.OperandKind;
 import cod.ptac.Opcode;
@@ -25,13 +26,11 @@ final class IRArtifactCodec {
     private IRArtifactCodec() {}
 
     static void writeArtifact(DataOutput out, Artifact artifact) throws IOException {
-        IRCodec.writeHeader(out);
-        IRCodec.writeValue(out, encodeArtifact(artifact), 0);
+        IRCodec.writer(out).writeValue(encodeArtifact(artifact), 0);
     }
 
     static Artifact readArtifact(DataInput in) throws IOException {
-        IRCodec.readHeader(in);
-        Object value = IRCodec.readValue(in, 0);
+        Object value = IRCodec.reader(in).readValue(0);
         if (!(value instanceof Map)) {
             throw new IOException("IR root is not an artifact map");
         }
@@ -44,6 +43,7 @@ final class IRArtifactCodec {
         out.put("version", Integer.valueOf(artifact.version));
         out.put("unitName", artifact.unitName);
         out.put("className", artifact.className);
+        out.put("sourceHash", artifact.sourceHash);
         out.put("typeSnapshot", artifact.typeSnapshot);
         out.put("unit", encodeUnit(artifact.unit));
         return out;
@@ -119,8 +119,9 @@ final class IRArtifactCodec {
         artifact.version = readInt(map.get("version"), "version");
         artifact.unitName = asString(map.get("unitName"), "unitName");
         artifact.className = asString(map.get("className"), "className");
+        artifact.sourceHash = asString(map.get("sourceHash"), "sourceHash");
         artifact.typeSnapshot = asType(map.get("typeSnapshot"));
-        artifact.unit = decodeUnit(map.get("unit"));
+        artifact.unit = Linker.link(decodeUnit(map.get("unit")));
         return artifact;
     }
 
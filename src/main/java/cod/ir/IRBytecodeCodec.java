@@ -0,0 +1,91 @@
+package cod.ir;
+
+import cod.ptac.Artifact;
+import cod.ptac.BytecodeCompiler;
+import cod.ptac.BytecodeImage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the generated JVM class of an artifact for the .codc container.
+ * An entry is only reused when Artifact.FORMAT_VERSION, the backend version
+ * and the content hash of the serialized artifact all match.
+ */
+final class IRBytecodeCodec {
+    private static final int BYTECODE_SCHEMA_VERSION = 1;
+    private static final int MAX_CLASS_BYTES = 16 * 1024 * 1024;
+
+    private IRBytecodeCodec() {}
+
+    static byte[] encode(Artifact artifact, BytecodeImage image) throws IOException {
+        Map<String, Object> header = new LinkedHashMap<String, Object>();
+        header.put("schemaVersion", Integer.valueOf(BYTECODE_SCHEMA_VERSION));
+        header.put("formatVersion", Integer.valueOf(Artifact.FORMAT_VERSION));
+        header.put("backendVersion", Integer.valueOf(BytecodeCompiler.BACKEND_VERSION));
+        header.put("contentHash", artifact.contentHash);
+        header.put("className", image.className);
+        header.put("functions", new ArrayList<String>(image.functionNames));
+        header.put("constants", new ArrayList<Object>(Arrays.asList(image.constants())));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        IRCodec.writer(out).writeValue(header, 0);
+        out.writeInt(image.classBytes.length);
+        out.write(image.classBytes);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Returns null when the entry was generated for a different artifact or backend. */
+    static BytecodeImage decode(byte[] data, Artifact artifact) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        Object value = IRCodec.reader(in).readValue(0);
+        if (!(value instanceof Map)) {
+            throw new IOException("Bytecode entry header is not a map");
+        }
+        Map<?, ?> header = (Map<?, ?>) value;
+        if (!Integer.valueOf(BYTECODE_SCHEMA_VERSION).equals(header.get("schemaVersion"))
+            || !Integer.valueOf(Artifact.FORMAT_VERSION).equals(header.get("formatVersion"))
+            || !Integer.valueOf(BytecodeCompiler.BACKEND_VERSION).equals(header.get("backendVersion"))
+            || artifact.contentHash == null
+            || !artifact.contentHash.equals(header.get("contentHash"))) {
+            return null;
+        }
+        Object className = header.get("className");
+        Object functions = header.get("functions");
+        Object constants = header.get("constants");
+        if (!(className instanceof String) || !(functions instanceof List) || !(constants instanceof List)) {
+            throw new IOException("Malformed bytecode entry header");
+        }
+        List<String> functionNames = new ArrayList<String>();
+        for (Object name : (List<?>) functions) {
+            if (!(name instanceof String)) {
+                throw new IOException("Malformed bytecode function name: " + name);
+            }
+            functionNames.add((String) name);
+        }
+
+        int length = in.readInt();
+        if (length < 0 || length > MAX_CLASS_BYTES) {
+            throw new IOException("Invalid bytecode class length: " + length);
+        }
+        byte[] classBytes = new byte[length];
+        in.readFully(classBytes);
+        return BytecodeCompiler.restore(
+            artifact.unit,
+            (String) className,
+            functionNames,
+            ((List<?>) constants).toArray(),
+            classBytes
+        );
+    }
+}
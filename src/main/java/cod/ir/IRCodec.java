@@ -10,14 +10,23 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Tagged value encoding shared by the IR codecs. Version 2 streams carry the
+ * IRSchema version after the header, write nodes as a schema id followed by
+ * their field values, use varints for ints, longs and sizes, and write each
+ * distinct string once per stream, referring back to it by table index.
+ * Version 1 streams (class and field names per node) remain readable.
+ */
 final class IRCodec {
     static final int MAGIC = 0xAC0D1EB1;
-    static final int VERSION = 1;
+    static final int VERSION = 2;
+    private static final int LEGACY_VERSION = 1;
 
     private static final int MAX_DEPTH = 512;
     private static final int MAX_STRING_BYTES = 4 * 1024 * 1024;
@@ -35,6 +44,14 @@ final class IRCodec {
     private static final byte TAG_MAP = 8;
     private static final byte TAG_NODE = 9;
     private static final byte TAG_AUTO_STACKING = 10;
+    private static final byte TAG_FALSE = 11;
+    private static final byte TAG_TRUE = 12;
+
+    // Version 2 string references: 0 is null, 1 introduces a new table entry,
+    // n >= 2 refers to table entry n - 2.
+    private static final int STRING_NULL = 0;
+    private static final int STRING_NEW = 1;
+    private static final int STRING_TABLE_BASE = 2;
 
     private static final String NODE_PACKAGE_PREFIX = "cod.ast.node.";
     private static final Map<String, byte[]> STRING_BYTES_CACHE = new ConcurrentHashMap<String, byte[]>();
@@ -46,14 +63,32 @@ final class IRCodec {
     private static final long FNV64_OFFSET_BASIS = 0xcbf29ce484222325L;
     private static final long FNV64_PRIME = 0x100000001b3L;
 
-    private IRCodec() {}
+    private final DataOutput out;
+    private final DataInput in;
+    private final int version;
+    private final Map<String, Integer> stringIds;
+    private final List<String> strings;
+    private final List<OpenNode> openNodes;
+
+    private IRCodec(DataOutput out, DataInput in, int version) {
+        this.out = out;
+        this.in = in;
+        this.version = version;
+        this.stringIds = out != null ? new HashMap<String, Integer>() : null;
+        this.strings = in != null ? new ArrayList<String>() : null;
+        this.openNodes = out != null ? new ArrayList<OpenNode>() : null;
+    }
 
-    static void writeHeader(DataOutput out) throws IOException {
+    /** Writes the stream header and returns an encoder for the values that follow. */
+    static IRCodec writer(DataOutput out) throws IOException {
         out.writeInt(MAGIC);
         out.writeInt(VERSION);
+        writeVarLong(out, IRSchema.SCHEMA_VERSION);
+        return new IRCodec(out, null, VERSION);
     }
 
-    static void readHeader(DataInput in) throws IOException {
+    /** Reads and validates the stream header and returns a decoder for the values that follow. */
+    static IRCodec reader(DataInput in) throws IOException {
         int magic = in.readInt();
         if (magic != MAGIC) {
             throw new IOException("Invalid IR magic number: expected 0x" + Integer.toHexString(MAGIC) +
@@ -61,12 +96,19 @@ final class IRCodec {
         }
 
         int version = in.readInt();
-        if (version != VERSION) {
+        if (version == VERSION) {
+            long schemaVersion = readVarLong(in);
+            if (schemaVersion != IRSchema.SCHEMA_VERSION) {
+                throw new IOException("Unsupported IR schema version: expected " + IRSchema.SCHEMA_VERSION
+                    + ", got " + schemaVersion);
+            }
+        } else if (version != LEGACY_VERSION) {
             throw new IOException("Unsupported IR version: expected " + VERSION + ", got " + version);
         }
+        return new IRCodec(null, in, version);
     }
 
-    static void writeValue(DataOutput out, Object value, int depth) throws IOException {
+    void writeValue(Object value, int depth) throws IOException {
         ensureDepth(depth);
 
         if (value == null) {
@@ -76,25 +118,24 @@ final class IRCodec {
 
         if (value instanceof String) {
             out.writeByte(TAG_STRING);
-            writeString(out, (String) value);
+            writeString((String) value);
             return;
         }
 
         if (value instanceof Boolean) {
-            out.writeByte(TAG_BOOL);
-            out.writeBoolean(((Boolean) value).booleanValue());
+            out.writeByte(((Boolean) value).booleanValue() ? TAG_TRUE : TAG_FALSE);
             return;
         }
 
         if (value instanceof Integer) {
             out.writeByte(TAG_INT);
-            out.writeInt(((Integer) value).intValue());
+            writeVarLong(out, zigZag(((Integer) value).intValue()));
             return;
         }
 
         if (value instanceof Long) {
             out.writeByte(TAG_LONG);
-            out.writeLong(((Long) value).longValue());
+            writeVarLong(out, zigZag(((Long) value).longValue()));
             return;
         }
 
@@ -113,14 +154,14 @@ final class IRCodec {
         if (value instanceof Enum) {
             out.writeByte(TAG_ENUM);
             Enum<?> e = (Enum<?>) value;
-            writeString(out, e.getDeclaringClass().getName());
-            writeString(out, e.name());
+            writeString(e.getDeclaringClass().getName());
+            writeString(e.name());
             return;
         }
 
         if (value instanceof AutoStackingNumber) {
             out.writeByte(TAG_AUTO_STACKING);
-            writeString(out, value.toString());
+            writeString(value.toString());
             return;
         }
 
@@ -128,9 +169,9 @@ final class IRCodec {
             out.writeByte(TAG_LIST);
             List<?> list = (List<?>) value;
             ensureCollectionSize(list.size(), "list");
-            out.writeInt(list.size());
+            writeVarLong(out, list.size());
             for (Object item : list) {
-                writeValue(out, item, depth + 1);
+                writeValue(item, depth + 1);
             }
             return;
         }
@@ -139,28 +180,28 @@ final class IRCodec {
             out.writeByte(TAG_MAP);
             Map<?, ?> map = (Map<?, ?>) value;
             ensureCollectionSize(map.size(), "map");
-            out.writeInt(map.size());
+            writeVarLong(out, map.size());
             for (Map.Entry<?, ?> entry : map.entrySet()) {
                 Object key = entry.getKey();
                 if (!(key instanceof String)) {
                     throw new IOException("Only String map keys are supported in IR, got: " +
                             (key == null ? "null" : key.getClass().getName()));
                 }
-                writeString(out, (String) key);
-                writeValue(out, entry.getValue(), depth + 1);
+                writeString((String) key);
+                writeValue(entry.getValue(), depth + 1);
             }
             return;
         }
 
         if (value instanceof Base) {
-            writeNode(out, (Base) value, depth + 1);
+            writeNode((Base) value, depth + 1);
             return;
         }
 
         throw new IOException("Unsupported IR value type: " + value.getClass().getName());
     }
 
-    static Object readValue(DataInput in, int depth) throws IOException {
+    Object readValue(int depth) throws IOException {
         ensureDepth(depth);
         byte tag = in.readByte();
 
@@ -168,49 +209,65 @@ final class IRCodec {
             case TAG_NULL:
                 return null;
             case TAG_STRING:
-                return readString(in);
+                return readString();
             case TAG_BOOL:
                 return Boolean.valueOf(in.readBoolean());
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_TRUE:
+                return Boolean.TRUE;
             case TAG_INT:
-                return Integer.valueOf(in.readInt());
+                return Integer.valueOf(version == LEGACY_VERSION ? in.readInt() : (int) unZigZag(readVarLong(in)));
             case TAG_LONG:
-                return Long.valueOf(in.readLong());
+                return Long.valueOf(version == LEGACY_VERSION ? in.readLong() : unZigZag(readVarLong(in)));
             case TAG_DOUBLE:
                 return Double.valueOf(in.readDouble());
             case TAG_ENUM:
-                return readEnum(in);
+                return readEnum();
             case TAG_LIST:
-                return readList(in, depth + 1);
+                return readList(depth + 1);
             case TAG_MAP:
-                return readMap(in, depth + 1);
+                return readMap(depth + 1);
             case TAG_NODE:
-                return readNode(in, depth + 1);
+                return readNode(depth + 1);
             case TAG_AUTO_STACKING:
-                return AutoStackingNumber.valueOf(readString(in));
+                return AutoStackingNumber.valueOf(readString());
             default:
                 throw new IOException("Unknown IR tag: " + tag);
         }
     }
 
-    private static void writeNode(DataOutput out, Base node, int depth) throws IOException {
+    private void writeNode(Base node, int depth) throws IOException {
         out.writeByte(TAG_NODE);
 
         if (node instanceof ValueExpr) {
-            writeNodeStart(out, "ValueExpr", 1);
-            writeNodeField(out, "value", ((ValueExpr) node).getValue(), depth);
+            writeNodeStart("ValueExpr", 1);
+            writeNodeField("value", ((ValueExpr) node).getValue(), depth);
             return;
         }
 
         try {
-            new SerializationVisitor(out, depth).write(node);
+            new SerializationVisitor(this, depth).write(node);
         } catch (SerializationVisitor.SerializationException e) {
             throw e.io;
         }
     }
 
-    private static Base readNode(DataInput in, int depth) throws IOException {
-        String className = readString(in);
-        if (!className.startsWith(NODE_PACKAGE_PREFIX)) {
+    private Base readNode(int depth) throws IOException {
+        if (version == LEGACY_VERSION) {
+            return readLegacyNode(depth);
+        }
+        IRSchema.Node schema = IRSchema.byId(readSize("node id", MAX_COLLECTION_SIZE));
+        Object[] values = new Object[schema.fields.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readValue(depth + 1);
+        }
+        return DeserializationVisitor.readNode(schema.name, new DeserializationVisitor.Fields(schema.fields, values));
+    }
+
+    private Base readLegacyNode(int depth) throws IOException {
+        String className = readString();
+        if (className == null || !className.startsWith(NODE_PACKAGE_PREFIX)) {
             throw new IOException("Invalid IR node class: " + className);
         }
 
@@ -219,26 +276,28 @@ final class IRCodec {
             throw new IOException("Invalid IR field count: " + fieldCount + " for " + className);
         }
 
-        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        String[] names = new String[fieldCount];
+        Object[] values = new Object[fieldCount];
         for (int i = 0; i < fieldCount; i++) {
-            String fieldName = readString(in);
-            Object value = readValue(in, depth + 1);
-            values.put(fieldName, value);
+            names[i] = readString();
+            values[i] = readValue(depth + 1);
         }
 
         String simpleClassName = className.substring(NODE_PACKAGE_PREFIX.length());
-        return DeserializationVisitor.readNode(simpleClassName, values);
+        return DeserializationVisitor.readNode(simpleClassName, new DeserializationVisitor.Fields(names, values));
     }
 
-    private static Enum<?> readEnum(DataInput in) throws IOException {
-        String enumClassName = readString(in);
-        String enumName = readString(in);
+    private Enum<?> readEnum() throws IOException {
+        String enumClassName = readString();
+        String enumName = readString();
 
         if (Keyword.class.getName().equals(enumClassName)) {
             try {
                 return Keyword.valueOf(enumName);
             } catch (IllegalArgumentException e) {
                 throw new IOException("Unknown enum constant '" + enumName + "' for " + enumClassName, e);
+            } catch (NullPointerException e) {
+                throw new IOException("Missing enum constant for " + enumClassName, e);
             }
         }
 
@@ -247,59 +306,97 @@ final class IRCodec {
                 return ProgramType.valueOf(enumName);
             } catch (IllegalArgumentException e) {
                 throw new IOException("Unknown enum constant '" + enumName + "' for " + enumClassName, e);
+            } catch (NullPointerException e) {
+                throw new IOException("Missing enum constant for " + enumClassName, e);
             }
         }
 
         throw new IOException("Unknown enum class in IR: " + enumClassName);
     }
 
-    private static List<Object> readList(DataInput in, int depth) throws IOException {
-        int size = in.readInt();
-        ensureCollectionSize(size, "list");
+    private List<Object> readList(int depth) throws IOException {
+        int size = readSize("list", MAX_COLLECTION_SIZE);
         List<Object> list = new ArrayList<Object>(size);
         for (int i = 0; i < size; i++) {
-            list.add(readValue(in, depth + 1));
+            list.add(readValue(depth + 1));
         }
         return list;
     }
 
-    private static Map<String, Object> readMap(DataInput in, int depth) throws IOException {
-        int size = in.readInt();
-        ensureCollectionSize(size, "map");
+    private Map<String, Object> readMap(int depth) throws IOException {
+        int size = readSize("map", MAX_COLLECTION_SIZE);
         Map<String, Object> map = new LinkedHashMap<String, Object>(size);
         for (int i = 0; i < size; i++) {
-            String key = readString(in);
-            Object value = readValue(in, depth + 1);
+            String key = readString();
+            Object value = readValue(depth + 1);
             map.put(key, value);
         }
         return map;
     }
 
-    private static void writeString(DataOutput out, String value) throws IOException {
+    private int readSize(String kind, int limit) throws IOException {
+        long size = version == LEGACY_VERSION ? in.readInt() : readVarLong(in);
+        if (size < 0 || size > limit) {
+            throw new IOException("Invalid " + kind + " size in IR: " + size);
+        }
+        return (int) size;
+    }
+
+    private void writeString(String value) throws IOException {
         if (value == null) {
-            out.writeLong(NULL_STRING_HASH);
-            out.writeInt(-1);
+            writeVarLong(out, STRING_NULL);
+            return;
+        }
+        Integer id = stringIds.get(value);
+        if (id != null) {
+            writeVarLong(out, STRING_TABLE_BASE + id.intValue());
             return;
         }
         byte[] bytes = cachedUtf8Bytes(value);
         if (bytes.length > MAX_STRING_BYTES) {
             throw new IOException("String exceeds IR limit: " + bytes.length + " bytes");
         }
+        stringIds.put(value, Integer.valueOf(stringIds.size()));
         long hash = hash64(bytes);
+        writeVarLong(out, STRING_NEW);
         out.writeLong(hash);
-        out.writeInt(bytes.length);
+        writeVarLong(out, bytes.length);
         out.write(obfuscate(bytes, hash));
     }
 
-    private static String readString(DataInput in) throws IOException {
-        long storedHash = in.readLong();
-        int len = in.readInt();
-        if (len == -1) {
-            if (storedHash != NULL_STRING_HASH) {
-                throw new IOException("Invalid null string hash in IR: 0x" + Long.toHexString(storedHash));
+    private String readString() throws IOException {
+        if (version == LEGACY_VERSION) {
+            long storedHash = in.readLong();
+            int len = in.readInt();
+            if (len == -1) {
+                if (storedHash != NULL_STRING_HASH) {
+                    throw new IOException("Invalid null string hash in IR: 0x" + Long.toHexString(storedHash));
+                }
+                return null;
+            }
+            return readStringBytes(storedHash, len);
+        }
+
+        long ref = readVarLong(in);
+        if (ref == STRING_NULL) return null;
+        if (ref == STRING_NEW) {
+            long storedHash = in.readLong();
+            long len = readVarLong(in);
+            if (len > MAX_STRING_BYTES) {
+                throw new IOException("Invalid string length in IR: " + len);
             }
-            return null;
+            String value = readStringBytes(storedHash, (int) len);
+            strings.add(value);
+            return value;
         }
+        long index = ref - STRING_TABLE_BASE;
+        if (index >= strings.size()) {
+            throw new IOException("Invalid IR string reference: " + index);
+        }
+        return strings.get((int) index);
+    }
+
+    private String readStringBytes(long storedHash, int len) throws IOException {
         if (len < 0 || len > MAX_STRING_BYTES) {
             throw new IOException("Invalid string length in IR: " + len);
         }
@@ -314,6 +411,32 @@ final class IRCodec {
         return new String(bytes, StandardCharsets.UTF_8);
     }
 
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint in IR");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
     private static void ensureDepth(int depth) throws IOException {
         if (depth > MAX_DEPTH) {
             throw new IOException("IR structure exceeds maximum depth of " + MAX_DEPTH);
@@ -326,30 +449,42 @@ final class IRCodec {
         }
     }
 
-    private static void writeNodeFields(DataOutput out, String nodeName, int depth, String[] fieldNames, Object[] values)
-            throws IOException {
-        if (fieldNames.length != values.length) {
-            throw new IOException("IR node field name/value mismatch for " + nodeName);
+    /** Starts a node; its fields must then be written in IRSchema order. */
+    void writeNodeStart(String nodeName, int fieldCount) throws IOException {
+        IRSchema.Node schema = IRSchema.byName(nodeName);
+        if (schema.fields.length != fieldCount) {
+            throw new IOException("IR schema for " + nodeName + " has " + schema.fields.length
+                + " fields, writer supplied " + fieldCount);
         }
-        writeNodeStart(out, nodeName, fieldNames.length);
-        for (int i = 0; i < fieldNames.length; i++) {
-            writeNodeField(out, fieldNames[i], values[i], depth);
+        writeVarLong(out, schema.id);
+        if (fieldCount > 0) {
+            openNodes.add(new OpenNode(schema));
         }
     }
 
-    static void writeNodeStart(DataOutput out, String nodeName, int fieldCount) throws IOException {
-        ensureCollectionSize(fieldCount, "fields");
-        writeString(out, nodeClassName(nodeName));
-        out.writeInt(fieldCount);
+    void writeNodeField(String fieldName, Object value, int depth) throws IOException {
+        if (openNodes.isEmpty()) {
+            throw new IOException("IR field '" + fieldName + "' written outside of a node");
+        }
+        OpenNode node = openNodes.get(openNodes.size() - 1);
+        String expected = node.schema.fields[node.next];
+        if (!expected.equals(fieldName)) {
+            throw new IOException("IR schema for " + node.schema.name + " expects field '" + expected
+                + "', writer supplied '" + fieldName + "'");
+        }
+        if (++node.next == node.schema.fields.length) {
+            openNodes.remove(openNodes.size() - 1);
+        }
+        writeValue(value, depth + 1);
     }
 
-    static void writeNodeField(DataOutput out, String fieldName, Object value, int depth) throws IOException {
-        writeString(out, fieldName);
-        writeValue(out, value, depth + 1);
-    }
+    private static final class OpenNode {
+        final IRSchema.Node schema;
+        int next;
 
-    private static String nodeClassName(String nodeName) {
-        return NODE_PACKAGE_PREFIX + nodeName;
+        OpenNode(IRSchema.Node schema) {
+            this.schema = schema;
+        }
     }
 
     private static byte[] cachedUtf8Bytes(String value) {
@@ -0,0 +1,484 @@
+package cod.ir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Random-access view of a .codc container. The file stays an uncompressed zip
+ * (STORED entries), but entries are located through the central directory
+ * instead of a sequential scan, and a write appends the new record plus a
+ * fresh central directory rather than rewriting every entry. Superseded
+ * records stay in the file until they outweigh the live data, at which point
+ * the container is compacted into a new file.
+ *
+ * Writers in different processes are serialized by an exclusive lock on a
+ * sidecar "<file>.lock", held from reading the index to finishing the
+ * write; the container itself cannot carry the lock because compaction
+ * replaces it. The sidecar is left in place (and ignored by git): deleting
+ * it would let a waiting writer lock a file the next writer no longer
+ * sees. Readers take no lock: a record is checked against its CRC and a
+ * mismatch re-reads the index.
+ */
+final class IRContainer {
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int VERSION_MADE_BY = 20;
+    private static final int VERSION_NEEDED = 10;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final long MAX_OFFSET = 0xffffffffL;
+    private static final long COMPACT_MIN_WASTE = 64 * 1024;
+
+    private final File file;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private long stampLength = -1;
+    private long stampModified = -1;
+    private boolean recovered;
+
+    IRContainer(File file) {
+        this.file = file;
+    }
+
+    synchronized byte[] read(String name) throws IOException {
+        refresh();
+        Entry entry = entries.get(name);
+        if (entry == null) return null;
+        byte[] data = readData(entry);
+        if (data != null) return data;
+
+        // The file changed underneath the index (another process compacted it).
+        invalidate();
+        refresh();
+        entry = entries.get(name);
+        if (entry == null) return null;
+        data = readData(entry);
+        if (data == null) {
+            throw new IOException("Corrupt IR container entry '" + name + "' in " + file.getAbsolutePath());
+        }
+        return data;
+    }
+
+    synchronized void write(String name, byte[] data) throws IOException {
+        FileChannel lock = lockForWrite();
+        try {
+            if (!file.isFile() || recovered) {
+                Map<String, byte[]> contents = readLiveEntries();
+                contents.put(name, data);
+                rewrite(contents);
+                return;
+            }
+            append(name, data);
+            if (shouldCompact()) {
+                rewrite(readLiveEntries());
+            }
+        } finally {
+            lock.close();
+        }
+    }
+
+    synchronized void compact() throws IOException {
+        FileChannel lock = lockForWrite();
+        try {
+            if (!file.isFile()) return;
+            rewrite(readLiveEntries());
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Takes the cross-process writer lock and re-reads the index under it,
+     * since another writer may have changed the file since the last read.
+     * Closing the returned channel releases the lock.
+     */
+    private FileChannel lockForWrite() throws IOException {
+        ensureParentDirectory();
+        FileChannel channel = new RandomAccessFile(file.getAbsolutePath() + ".lock", "rw").getChannel();
+        try {
+            channel.lock();
+            invalidate();
+            refresh();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    private void ensureParentDirectory() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create IR container directory: " + parent.getAbsolutePath());
+        }
+    }
+
+    private void invalidate() {
+        stampLength = -1;
+        stampModified = -1;
+    }
+
+    private void refresh() throws IOException {
+        if (!file.isFile()) {
+            entries.clear();
+            recovered = false;
+            invalidate();
+            return;
+        }
+        long length = file.length();
+        long modified = file.lastModified();
+        if (length == stampLength && modified == stampModified) return;
+
+        entries.clear();
+        recovered = false;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            try {
+                readCentralDirectory(in, length);
+            } catch (IOException e) {
+                // A torn append leaves no readable central directory; rebuild the
+                // index from the records themselves and compact on the next write.
+                entries.clear();
+                scanRecords(in, length);
+                recovered = true;
+            }
+        } finally {
+            in.close();
+        }
+        stampLength = length;
+        stampModified = modified;
+    }
+
+    private void readCentralDirectory(RandomAccessFile in, long length) throws IOException {
+        int tailSize = (int) Math.min(length, END_SIZE + MAX_COMMENT_SIZE);
+        byte[] tail = new byte[tailSize];
+        in.seek(length - tailSize);
+        in.readFully(tail);
+
+        int end = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (le32(tail, i) == END_SIG) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new IOException("Missing end of central directory");
+        }
+        int count = le16(tail, end + 10);
+        long directorySize = le32(tail, end + 12) & MAX_OFFSET;
+        long directoryOffset = le32(tail, end + 16) & MAX_OFFSET;
+        if (count == 0xffff || directoryOffset == MAX_OFFSET) {
+            throw new IOException("ZIP64 containers are not supported");
+        }
+        if (directoryOffset + directorySize > length) {
+            throw new IOException("Central directory outside of container");
+        }
+
+        byte[] directory = new byte[(int) directorySize];
+        in.seek(directoryOffset);
+        in.readFully(directory);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > directory.length || le32(directory, pos) != CENTRAL_HEADER_SIG) {
+                throw new IOException("Malformed central directory");
+            }
+            int method = le16(directory, pos + 10);
+            int dosTime = le32(directory, pos + 12);
+            int crc = le32(directory, pos + 16);
+            long compressedSize = le32(directory, pos + 20) & MAX_OFFSET;
+            long size = le32(directory, pos + 24) & MAX_OFFSET;
+            int nameLength = le16(directory, pos + 28);
+            int extraLength = le16(directory, pos + 30);
+            int commentLength = le16(directory, pos + 32);
+            long headerOffset = le32(directory, pos + 42) & MAX_OFFSET;
+            if (pos + CENTRAL_HEADER_SIZE + nameLength > directory.length) {
+                throw new IOException("Malformed central directory");
+            }
+            String name = new String(directory, pos + CENTRAL_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            if (name.endsWith("/")) continue;
+            if (method != 0 || compressedSize != size || size > Integer.MAX_VALUE) {
+                throw new IOException("Unsupported container entry (only STORED is allowed): " + name);
+            }
+            entries.put(name, new Entry(name, headerOffset, (int) size, crc, dosTime));
+        }
+    }
+
+    /** Walks the records front to back; later records for a name win. */
+    private void scanRecords(RandomAccessFile in, long length) throws IOException {
+        byte[] header = new byte[CENTRAL_HEADER_SIZE];
+        long pos = 0;
+        while (pos + 4 <= length) {
+            in.seek(pos);
+            in.readFully(header, 0, 4);
+            int signature = le32(header, 0);
+            if (signature == LOCAL_HEADER_SIG) {
+                if (pos + LOCAL_HEADER_SIZE > length) break;
+                in.readFully(header, 4, LOCAL_HEADER_SIZE - 4);
+                int method = le16(header, 8);
+                int dosTime = le32(header, 10);
+                int crc = le32(header, 14);
+                long size = le32(header, 22) & MAX_OFFSET;
+                int nameLength = le16(header, 26);
+                int extraLength = le16(header, 28);
+                long next = pos + LOCAL_HEADER_SIZE + nameLength + extraLength + size;
+                if (method != 0 || next > length) break;
+                byte[] nameBytes = new byte[nameLength];
+                in.readFully(nameBytes);
+                String name = new String(nameBytes, StandardCharsets.UTF_8);
+                if (!name.endsWith("/")) {
+                    entries.put(name, new Entry(name, pos, (int) size, crc, dosTime));
+                }
+                pos = next;
+            } else if (signature == CENTRAL_HEADER_SIG) {
+                if (pos + CENTRAL_HEADER_SIZE > length) break;
+                in.readFully(header, 4, CENTRAL_HEADER_SIZE - 4);
+                pos += CENTRAL_HEADER_SIZE + le16(header, 28) + le16(header, 30) + le16(header, 32);
+            } else if (signature == END_SIG) {
+                if (pos + END_SIZE > length) break;
+                in.readFully(header, 4, END_SIZE - 4);
+                pos += END_SIZE + le16(header, 20);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /** Returns null when the record no longer matches the index. */
+    private byte[] readData(Entry entry) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] header = new byte[LOCAL_HEADER_SIZE];
+            in.seek(entry.headerOffset);
+            in.readFully(header);
+            if (le32(header, 0) != LOCAL_HEADER_SIG) return null;
+            in.seek(entry.headerOffset + LOCAL_HEADER_SIZE + le16(header, 26) + le16(header, 28));
+            byte[] data = new byte[entry.size];
+            in.readFully(data);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            return (int) crc.getValue() == entry.crc ? data : null;
+        } catch (EOFException e) {
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+
+    private Map<String, byte[]> readLiveEntries() throws IOException {
+        Map<String, byte[]> contents = new LinkedHashMap<String, byte[]>();
+        if (!file.isFile()) return contents;
+        for (Entry entry : entries.values()) {
+            byte[] data = readData(entry);
+            if (data != null) {
+                contents.put(entry.name, data);
+            }
+        }
+        return contents;
+    }
+
+    private void append(String name, byte[] data) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            long offset = out.length();
+            ByteArrayOutputStream record = new ByteArrayOutputStream(LOCAL_HEADER_SIZE + name.length() + data.length + 256);
+            Entry entry = writeRecord(record, name, data, offset, dosTime(System.currentTimeMillis()));
+            entries.put(name, entry);
+            writeCentralDirectory(record, offset + LOCAL_HEADER_SIZE + entry.nameBytes().length + data.length);
+            // The previous end record stays intact until the new one is complete.
+            out.seek(offset);
+            out.write(record.toByteArray());
+        } catch (IOException e) {
+            invalidate();
+            throw e;
+        } finally {
+            out.close();
+        }
+        stampLength = file.length();
+        stampModified = file.lastModified();
+    }
+
+    private boolean shouldCompact() {
+        long live = END_SIZE;
+        for (Entry entry : entries.values()) {
+            int nameLength = entry.nameBytes().length;
+            live += LOCAL_HEADER_SIZE + CENTRAL_HEADER_SIZE + 2L * nameLength + entry.size;
+        }
+        long waste = stampLength - live;
+        return waste > COMPACT_MIN_WASTE && waste > live;
+    }
+
+    private void rewrite(Map<String, byte[]> contents) throws IOException {
+        ensureParentDirectory();
+        // Same directory, so the move below stays a rename
+        File temp = File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+        entries.clear();
+        invalidate();
+        OutputStream out = null;
+        boolean moved = false;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int dosTime = dosTime(System.currentTimeMillis());
+            for (Map.Entry<String, byte[]> e : contents.entrySet()) {
+                entries.put(e.getKey(), writeRecord(bytes, e.getKey(), e.getValue(), bytes.size(), dosTime));
+            }
+            writeCentralDirectory(bytes, bytes.size());
+            out = new FileOutputStream(temp);
+            bytes.writeTo(out);
+            out.close();
+            out = null;
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {}
+            }
+            if (!moved && temp.exists()) {
+                try {
+                    Files.delete(temp.toPath());
+                } catch (IOException ignored) {}
+            }
+            if (!moved) {
+                entries.clear();
+            }
+        }
+        recovered = false;
+        stampLength = file.length();
+        stampModified = file.lastModified();
+    }
+
+    private static Entry writeRecord(ByteArrayOutputStream out, String name, byte[] data, long offset, int dosTime)
+        throws IOException {
+        if (offset > MAX_OFFSET) {
+            throw new IOException("IR container exceeds the 4 GiB zip limit");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        Entry entry = new Entry(name, offset, data.length, (int) crc.getValue(), dosTime);
+        byte[] nameBytes = entry.nameBytes();
+        writeLe32(out, LOCAL_HEADER_SIG);
+        writeLe16(out, VERSION_NEEDED);
+        writeLe16(out, FLAG_UTF8);
+        writeLe16(out, 0);
+        writeLe32(out, dosTime);
+        writeLe32(out, entry.crc);
+        writeLe32(out, data.length);
+        writeLe32(out, data.length);
+        writeLe16(out, nameBytes.length);
+        writeLe16(out, 0);
+        out.write(nameBytes);
+        out.write(data);
+        return entry;
+    }
+
+    private void writeCentralDirectory(ByteArrayOutputStream out, long directoryOffset) throws IOException {
+        if (entries.size() > 0xfffe || directoryOffset > MAX_OFFSET) {
+            throw new IOException("IR container exceeds zip limits");
+        }
+        int start = out.size();
+        for (Entry entry : entries.values()) {
+            byte[] nameBytes = entry.nameBytes();
+            writeLe32(out, CENTRAL_HEADER_SIG);
+            writeLe16(out, VERSION_MADE_BY);
+            writeLe16(out, VERSION_NEEDED);
+            writeLe16(out, FLAG_UTF8);
+            writeLe16(out, 0);
+            writeLe32(out, entry.dosTime);
+            writeLe32(out, entry.crc);
+            writeLe32(out, entry.size);
+            writeLe32(out, entry.size);
+            writeLe16(out, nameBytes.length);
+            writeLe16(out, 0);
+            writeLe16(out, 0);
+            writeLe16(out, 0);
+            writeLe16(out, 0);
+            writeLe32(out, 0);
+            writeLe32(out, (int) entry.headerOffset);
+            out.write(nameBytes);
+        }
+        int directorySize = out.size() - start;
+        writeLe32(out, END_SIG);
+        writeLe16(out, 0);
+        writeLe16(out, 0);
+        writeLe16(out, entries.size());
+        writeLe16(out, entries.size());
+        writeLe32(out, directorySize);
+        writeLe32(out, (int) directoryOffset);
+        writeLe16(out, 0);
+    }
+
+    private static int dosTime(long millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25
+            | (calendar.get(Calendar.MONTH) + 1) << 21
+            | calendar.get(Calendar.DAY_OF_MONTH) << 16
+            | calendar.get(Calendar.HOUR_OF_DAY) << 11
+            | calendar.get(Calendar.MINUTE) << 5
+            | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private static int le16(byte[] bytes, int at) {
+        return (bytes[at] & 0xff) | (bytes[at + 1] & 0xff) << 8;
+    }
+
+    private static int le32(byte[] bytes, int at) {
+        return le16(bytes, at) | le16(bytes, at + 2) << 16;
+    }
+
+    private static void writeLe16(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+    }
+
+    private static void writeLe32(ByteArrayOutputStream out, int value) {
+        writeLe16(out, value);
+        writeLe16(out, value >>> 16);
+    }
+
+    private static final class Entry {
+        final String name;
+        final long headerOffset;
+        final int size;
+        final int crc;
+        final int dosTime;
+
+        Entry(String name, long headerOffset, int size, int crc, int dosTime) {
+            this.name = name;
+            this.headerOffset = headerOffset;
+            this.size = size;
+            this.crc = crc;
+            this.dosTime = dosTime;
+        }
+
+        byte[] nameBytes() {
+            return name.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -2,40 +2,32 @@ package cod.ir;
 
 import cod.ast.node.Type;
 import cod.ptac.Artifact;
+import cod.ptac.BytecodeCompiler;
+import cod.ptac.BytecodeImage;
 import cod.ptac.Compiler;
 import cod.ptac.Unit;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
-import java.util.zip.CRC32;
 
 public class IRManager {
     private static final String BIN_DIR = "bin";
     private static final String IR_EXT = ".codb";
+    private static final String BYTECODE_EXT = ".codj";
     private static final String CONTAINER_EXT = ".codc";
     private static final String PROJECT_CONTAINER_NAME = "project";
     private static final String PROJECT_INDEX_FILE_NAME = "HOOK.toml";
-    private static final int BUFFER_SIZE = 8192;
-    private static final Map<String, Object> CONTAINER_LOCKS = new ConcurrentHashMap<String, Object>();
+    private static final Map<String, IRContainer> CONTAINERS = new ConcurrentHashMap<String, IRContainer>();
 
     private final String projectRoot;
     private final IRWriter writer;
@@ -97,6 +89,7 @@ public class IRManager {
         }
         try {
             Artifact artifact = compiler.compile(unit, type);
+            artifact.sourceHash = sourceHash(type);
             writeArtifactToContainer(unit, artifact.className, artifact);
             putCache(unit, type.name, type);
             putArtifactCache(unit, type.name, artifact);
@@ -136,6 +129,27 @@ public class IRManager {
         }
     }
 
+    /**
+     * The artifact for a type as it is now: compiled again when the stored one
+     * was built from other source or has no source hash. Null when no current
+     * artifact can be produced.
+     */
+    public Artifact loadCurrentArtifact(String unit, Type type) {
+        if (unit == null || type == null || type.name == null) {
+            return null;
+        }
+        String sourceHash = sourceHash(type);
+        if (sourceHash == null) {
+            return null;
+        }
+        Artifact artifact = loadArtifact(unit, type.name);
+        if (artifact == null || !sourceHash.equals(artifact.sourceHash)) {
+            save(unit, type);
+            artifact = loadArtifact(unit, type.name);
+        }
+        return artifact != null && sourceHash.equals(artifact.sourceHash) ? artifact : null;
+    }
+
     public Unit loadCodPTACUnit(String unit, String className) {
         Artifact artifact = loadArtifact(unit, className);
         return artifact != null ? artifact.unit : null;
@@ -152,6 +166,46 @@ public class IRManager {
         } catch (IOException ignored) {}
     }
 
+    /**
+     * Attaches the JVM class for an artifact's unit, reusing the blob cached in
+     * the container when it was generated from the same artifact bytes.
+     */
+    public BytecodeImage loadBytecode(String unit, Artifact artifact) {
+        if (unit == null || artifact == null || artifact.unit == null || artifact.className == null) {
+            return null;
+        }
+        if (artifact.unit.bytecode != null) {
+            return artifact.unit.bytecode;
+        }
+
+        String entryName = getBytecodeEntryName(unit, artifact.className);
+        if (artifact.contentHash != null) {
+            try {
+                byte[] data = readContainerEntry(unit, entryName);
+                if (data != null) {
+                    BytecodeImage image = IRBytecodeCodec.decode(data, artifact);
+                    if (image != null) return image;
+                }
+            } catch (IOException ignored) {}
+        }
+
+        BytecodeImage image = BytecodeCompiler.compile(artifact.unit);
+        if (image != null && artifact.contentHash != null) {
+            try {
+                writeContainerEntry(unit, entryName, IRBytecodeCodec.encode(artifact, image));
+            } catch (IOException ignored) {}
+        }
+        return image;
+    }
+
+    /** Rewrites the project container without superseded entries. */
+    public void compactContainer(String unit) throws IOException {
+        if (unit == null) return;
+        File container = getContainerFile(unit);
+        if (!container.isFile()) return;
+        getContainer(container).compact();
+    }
+
     public void clearCache() {
         cache.clear();
         artifactCache.clear();
@@ -223,6 +277,10 @@ public class IRManager {
         return toUnitPath(unit) + "/" + className + IR_EXT;
     }
 
+    private String getBytecodeEntryName(String unit, String className) {
+        return toUnitPath(unit) + "/" + className + BYTECODE_EXT;
+    }
+
     public static String toUnitPath(String unit) {
         if (unit == null) return "";
         return unit.replace('.', '/');
@@ -235,12 +293,18 @@ public class IRManager {
     private Artifact readArtifactFromContainer(String unit, String className) throws IOException {
         byte[] data = readContainerEntry(unit, getContainerEntryName(unit, className));
         if (data == null) return null;
-        return readArtifactFromBytes(data);
+        Artifact artifact = readArtifactFromBytes(data);
+        if (artifact != null) {
+            artifact.contentHash = contentHash(data);
+        }
+        return artifact;
     }
 
     private void writeArtifactToContainer(String unit, String className, Artifact artifact) throws IOException {
         if (unit == null || className == null || artifact == null) return;
-        writeContainerEntry(unit, getContainerEntryName(unit, className), writeArtifactToBytes(artifact));
+        byte[] data = writeArtifactToBytes(artifact);
+        writeContainerEntry(unit, getContainerEntryName(unit, className), data);
+        artifact.contentHash = contentHash(data);
     }
 
     private byte[] readContainerEntry(String unit, String entryName) throws IOException {
@@ -249,24 +313,7 @@ public class IRManager {
         if (!container.exists() || !container.isFile()) {
             return null;
         }
-
-        ZipInputStream in = null;
-        try {
-            in = new ZipInputStream(new BufferedInputStream(new FileInputStream(container)));
-            ZipEntry entry;
-            while ((entry = in.getNextEntry()) != null) {
-                if (!entry.isDirectory() && entryName.equals(entry.getName())) {
-                    return readAllBytes(in);
-                }
-            }
-            return null;
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException ignored) {}
-            }
-        }
+        return getContainer(container).read(entryName);
     }
 
     private void writeContainerEntry(String unit, String entryName, byte[] entryData) throws IOException {
@@ -277,83 +324,18 @@ public class IRManager {
         if (parent != null && !parent.exists() && !parent.mkdirs()) {
             throw new IOException("Failed to create IR container directory: " + parent.getAbsolutePath());
         }
-
-        Object containerLock = getContainerLock(container);
-        synchronized (containerLock) {
-            Map<String, byte[]> entries = readContainerEntries(container);
-            entries.put(entryName, entryData);
-
-            File temp = new File(container.getAbsolutePath() + ".tmp");
-            ZipOutputStream out = null;
-            boolean moved = false;
-            try {
-                out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
-                out.setLevel(0);
-                for (Map.Entry<String, byte[]> e : entries.entrySet()) {
-                    byte[] value = e.getValue();
-                    CRC32 crc = new CRC32();
-                    crc.update(value);
-                    ZipEntry zipEntry = new ZipEntry(e.getKey());
-                    // .codc is intentionally an uncompressed zip container (level 0, STORED entries).
-                    zipEntry.setMethod(ZipEntry.STORED);
-                    zipEntry.setSize(value.length);
-                    zipEntry.setCompressedSize(value.length);
-                    zipEntry.setCrc(crc.getValue());
-                    out.putNextEntry(zipEntry);
-                    out.write(value);
-                    out.closeEntry();
-                }
-                out.finish();
-                Files.move(temp.toPath(), container.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                moved = true;
-            } finally {
-                if (out != null) {
-                    try {
-                        out.close();
-                    } catch (IOException ignored) {}
-                }
-                if (!moved && temp.exists()) {
-                    try {
-                        Files.delete(temp.toPath());
-                    } catch (IOException ignored) {}
-                }
-            }
-        }
+        getContainer(container).write(entryName, entryData);
     }
 
-    private Object getContainerLock(File container) {
+    private IRContainer getContainer(File container) {
         String key = container.getAbsolutePath();
-        Object lock = CONTAINER_LOCKS.get(key);
-        if (lock != null) return lock;
-        Object created = new Object();
-        Object existing = CONTAINER_LOCKS.putIfAbsent(key, created);
+        IRContainer existing = CONTAINERS.get(key);
+        if (existing != null) return existing;
+        IRContainer created = new IRContainer(container);
+        existing = CONTAINERS.putIfAbsent(key, created);
         return existing != null ? existing : created;
     }
 
-    private Map<String, byte[]> readContainerEntries(File container) throws IOException {
-        Map<String, byte[]> entries = new LinkedHashMap<>();
-        if (container == null || !container.exists() || !container.isFile()) {
-            return entries;
-        }
-
-        ZipInputStream in = null;
-        try {
-            in = new ZipInputStream(new BufferedInputStream(new FileInputStream(container)));
-            ZipEntry entry;
-            while ((entry = in.getNextEntry()) != null) {
-                if (entry.isDirectory()) continue;
-                entries.put(entry.getName(), readAllBytes(in));
-            }
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException ignored) {}
-            }
-        }
-        return entries;
-    }
-
     private byte[] writeArtifactToBytes(Artifact artifact) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         DataOutputStream out = null;
@@ -386,13 +368,27 @@ public class IRManager {
         }
     }
 
-    private byte[] readAllBytes(InputStream in) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int read;
-        while ((read = in.read(buffer)) >= 0) {
-            out.write(buffer, 0, read);
+    private static String sourceHash(Type type) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            IRCodec.writer(new DataOutputStream(baos)).writeValue(type, 0);
+            return contentHash(baos.toByteArray());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String contentHash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return null;
         }
-        return out.toByteArray();
     }
 }
@@ -0,0 +1,112 @@
+package cod.ir;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Node type ids and field order for the compact IR encoding. A node is
+ * written as its id followed by its field values in the order listed here,
+ * so neither class nor field names appear in the stream. Ids are positions in
+ * NODES: append new node types at the end, and bump SCHEMA_VERSION whenever
+ * an existing row changes.
+ */
+final class IRSchema {
+    static final int SCHEMA_VERSION = 1;
+
+    private static final String[][] NODES = {
+        {"Program", "unit", "programType"},
+        {"Unit", "name", "imports", "policies", "types", "mainClassName", "resolvedImports"},
+        {"Use", "imports"},
+        {"Type", "name", "visibility", "extendName", "fields", "constructor", "methods", "statements", "constructors", "implementedPolicies", "cachedAncestorPolicies", "viralPoliciesValidated"},
+        {"Field", "name", "type", "visibility", "value"},
+        {"Method", "methodName", "associatedClass", "visibility", "returnSlots", "parameters", "body", "isBuiltin", "isPolicyMethod"},
+        {"Param", "name", "type", "defaultValue", "hasDefaultValue", "typeInferred", "isLambdaParameter", "isTupleDestructuring", "tupleElements"},
+        {"Constructor", "parameters", "body"},
+        {"ConstructorCall", "className", "arguments", "argNames"},
+        {"Policy", "name", "visibility", "methods", "sourceUnit", "composedPolicies"},
+        {"PolicyMethod", "methodName", "parameters", "returnSlots"},
+        {"Block", "statements"},
+        {"Assignment", "left", "right", "isDeclaration"},
+        {"Var", "name", "value", "explicitType"},
+        {"StmtIf", "condition", "thenBlock", "elseBlock"},
+        {"ExprIf", "condition", "thenExpr", "elseExpr"},
+        {"For", "iterator", "range", "arraySource", "body"},
+        {"Skip"},
+        {"Break"},
+        {"Range", "step", "start", "end"},
+        {"VoidReturn"},
+        {"Tuple", "elements"},
+        {"ReturnSlotAssignment", "variableNames", "methodCall", "lambda"},
+        {"SlotDeclaration", "slotNames"},
+        {"SlotAssignment", "slotName", "value"},
+        {"MultipleSlotAssignment", "assignments"},
+        {"BinaryOp", "left", "op", "right"},
+        {"Unary", "op", "operand"},
+        {"TypeCast", "targetType", "expression"},
+        {"MethodCall", "name", "qualifiedName", "arguments", "slotNames", "argNames", "isSuperCall", "isGlobal", "target", "isSingleSlotCall", "isSelfCall", "selfCallLevel", "selfCallLevelConstantName"},
+        {"Array", "elements", "elementType"},
+        {"IndexAccess", "array", "index"},
+        {"RangeIndex", "step", "start", "end"},
+        {"MultiRangeIndex", "ranges"},
+        {"EqualityChain", "left", "operator", "isAllChain", "chainArguments"},
+        {"BooleanChain", "isAll", "expressions"},
+        {"Slot", "name", "type"},
+        {"Lambda", "parameters", "returnSlots", "body", "expressionBody", "inferParameters"},
+        {"Identifier", "name"},
+        {"IntLiteral", "value"},
+        {"FloatLiteral", "value"},
+        {"TextLiteral", "value", "isInterpolated"},
+        {"BoolLiteral", "value"},
+        {"NoneLiteral"},
+        {"This", "className"},
+        {"Super"},
+        {"ChainedComparison", "expressions", "operators"},
+        {"PropertyAccess", "left", "right"},
+        {"ArgumentList", "arguments"},
+        {"ValueExpr", "value"}
+    };
+
+    private static final Node[] BY_ID = new Node[NODES.length];
+    private static final Map<String, Node> BY_NAME = new HashMap<String, Node>();
+
+    static {
+        for (int id = 0; id < NODES.length; id++) {
+            String[] row = NODES[id];
+            String[] fields = new String[row.length - 1];
+            System.arraycopy(row, 1, fields, 0, fields.length);
+            Node node = new Node(id, row[0], fields);
+            BY_ID[id] = node;
+            BY_NAME.put(node.name, node);
+        }
+    }
+
+    private IRSchema() {}
+
+    static Node byId(int id) throws IOException {
+        if (id < 0 || id >= BY_ID.length) {
+            throw new IOException("Unknown IR node id: " + id);
+        }
+        return BY_ID[id];
+    }
+
+    static Node byName(String name) throws IOException {
+        Node node = BY_NAME.get(name);
+        if (node == null) {
+            throw new IOException("IR node has no schema entry: " + name);
+        }
+        return node;
+    }
+
+    static final class Node {
+        final int id;
+        final String name;
+        final String[] fields;
+
+        Node(int id, String name, String[] fields) {
+            this.id = id;
+            this.name = name;
+            this.fields = fields;
+        }
+    }
+}
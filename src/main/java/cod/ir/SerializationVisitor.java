@@ -3,17 +3,16 @@ package cod.ir;
 import cod.ast.VisitorImpl;
 import cod.ast.node.*;
 
-import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 final class SerializationVisitor implements VisitorImpl<Void> {
-    private final DataOutput out;
+    private final IRCodec codec;
     private final int depth;
 
-    SerializationVisitor(DataOutput out, int depth) {
-        this.out = out;
+    SerializationVisitor(IRCodec codec, int depth) {
+        this.codec = codec;
         this.depth = depth;
     }
 
@@ -23,7 +22,7 @@ final class SerializationVisitor implements VisitorImpl<Void> {
 
     private void writeNodeStart(String nodeName, int fieldCount) {
         try {
-            IRCodec.writeNodeStart(out, nodeName, fieldCount);
+            codec.writeNodeStart(nodeName, fieldCount);
         } catch (IOException e) {
             throw new SerializationException(e);
         }
@@ -31,7 +30,7 @@ final class SerializationVisitor implements VisitorImpl<Void> {
 
     private void writeNodeField(String fieldName, Object value) {
         try {
-            IRCodec.writeNodeField(out, fieldName, value, depth);
+            codec.writeNodeField(fieldName, value, depth);
         } catch (IOException e) {
             throw new SerializationException(e);
         }
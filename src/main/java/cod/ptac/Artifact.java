@@ -12,6 +12,13 @@ public final class Artifact {
     public Unit unit;
     public Type typeSnapshot;
 
+    // Hash of the serialized type the artifact was compiled from; an
+    // artifact whose hash differs from the current source is stale.
+    public String sourceHash;
+
+    // Filled in by IRManager from the serialized bytes; keys cached bytecode.
+    public String contentHash;
+
     public boolean hasExecutableUnit() {
         return unit != null && unit.functions != null && !unit.functions.isEmpty();
     }
@@ -0,0 +1,506 @@
+package cod.ptac;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles the core subset of a linked CodP-TAC unit (moves, arithmetic,
+ * comparisons, static branches, slots and calls between compiled functions)
+ * into one JVM class. Functions outside that subset, and functions calling
+ * them, stay with the Executor and its interpreter fallback.
+ *
+ * Compiled code cannot call back into the Executor, so a function calling
+ * out or any other builtin is never compiled, nor is one that returns
+ * through slots without SLOT_RET. In practice that leaves leaf arithmetic
+ * helpers; an entry that prints still takes the Executor's whole-program
+ * fallback, and programs run no faster than in compile-execute mode.
+ */
+public final class BytecodeCompiler {
+    /** Bumped whenever generated code changes shape; part of the cached class key. */
+    public static final int BACKEND_VERSION = 1;
+
+    private static final String PACKAGE = "cod/ptac/gen/";
+    private static final String BASE = "cod/ptac/CompiledUnit";
+    private static final String RUNTIME = "cod/ptac/CompiledRuntime";
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String BINARY_OP = "(" + OBJECT + OBJECT + ")" + OBJECT;
+    // HotSpot leaves methods above 8000 bytes of bytecode to its interpreter
+    // (-XX:-DontCompileHugeMethods), where they would run slower than the
+    // Executor, so functions emitting more are left to it instead.
+    private static final int MAX_METHOD_BYTES = 8000;
+    private static final int MAX_PARAMETERS = 200;
+
+    private BytecodeCompiler() {}
+
+    /** Compiles the unit once; the image is cached on the unit. */
+    public static BytecodeImage compile(Unit unit) {
+        if (unit == null) return null;
+        if (unit.bytecode != null) return unit.bytecode;
+        Linker.ensureLinked(unit);
+        Map<String, Function> functionIndex = indexFunctions(unit);
+        Set<Function> rejected = new HashSet<Function>();
+        while (true) {
+            List<Function> selected = selectCompilable(unit, functionIndex, rejected);
+            try {
+                unit.bytecode = emit(unit, selected, functionIndex);
+                return unit.bytecode;
+            } catch (CodeTooLarge e) {
+                rejected.add(e.function);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the image of a unit from a previously generated class, skipping
+     * code generation. Returns null if a listed function no longer exists or
+     * function names are ambiguous.
+     */
+    public static BytecodeImage restore(
+        Unit unit,
+        String className,
+        List<String> functionNames,
+        Object[] constants,
+        byte[] classBytes
+    ) {
+        if (unit == null || functionNames == null || constants == null || classBytes == null) return null;
+        Linker.ensureLinked(unit);
+        Map<String, Function> functionIndex = indexFunctions(unit);
+        if (functionIndex.size() != namedFunctionCount(unit)) return null;
+        List<Function> selected = new ArrayList<Function>(functionNames.size());
+        for (String name : functionNames) {
+            Function function = functionIndex.get(name);
+            if (function == null) return null;
+            selected.add(function);
+        }
+        resetCompiledIndexes(unit);
+        for (int i = 0; i < selected.size(); i++) {
+            selected.get(i).compiledIndex = i;
+        }
+        unit.bytecode = new BytecodeImage(
+            className,
+            classBytes,
+            new ArrayList<String>(functionNames),
+            constants
+        );
+        return unit.bytecode;
+    }
+
+    private static void resetCompiledIndexes(Unit unit) {
+        if (unit.functions == null) return;
+        for (Function function : unit.functions) {
+            if (function != null) function.compiledIndex = -1;
+        }
+    }
+
+    private static int namedFunctionCount(Unit unit) {
+        int count = 0;
+        if (unit.functions == null) return count;
+        for (Function function : unit.functions) {
+            if (function != null && function.name != null) count++;
+        }
+        return count;
+    }
+
+    private static Map<String, Function> indexFunctions(Unit unit) {
+        Map<String, Function> functions = new HashMap<String, Function>();
+        if (unit.functions == null) return functions;
+        for (Function function : unit.functions) {
+            if (function != null && function.name != null) {
+                functions.put(function.name, function);
+            }
+        }
+        return functions;
+    }
+
+    /**
+     * Functions whose instructions are all compilable, minus (repeatedly)
+     * those that call a function which is not.
+     */
+    private static List<Function> selectCompilable(
+        Unit unit,
+        Map<String, Function> functionIndex,
+        Set<Function> rejected
+    ) {
+        List<Function> selected = new ArrayList<Function>();
+        if (unit.functions == null) return selected;
+        for (Function function : unit.functions) {
+            if (function != null && !rejected.contains(function) && isCompilable(function, functionIndex)) {
+                selected.add(function);
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Set<Function> present = new HashSet<Function>(selected);
+            for (int i = selected.size() - 1; i >= 0; i--) {
+                if (!callsOnly(selected.get(i), present, functionIndex)) {
+                    selected.remove(i);
+                    changed = true;
+                }
+            }
+        }
+        return selected;
+    }
+
+    private static boolean isCompilable(Function function, Map<String, Function> functionIndex) {
+        if (function.instructions == null || Executor.returnsThroughSlots(function)) return false;
+        int arity = function.parameters != null ? function.parameters.size() : 0;
+        if (arity > MAX_PARAMETERS) return false;
+        for (int i = 0; i < arity; i++) {
+            if (function.parameterSlots[i] != i) return false;
+        }
+        for (int pc = 0; pc < function.instructions.size(); pc++) {
+            Instruction inst = function.instructions.get(pc);
+            if (inst == null) continue;
+            switch (inst.opcode) {
+                case ASSIGN:
+                case ADD:
+                case SUB:
+                case MUL:
+                case DIV:
+                case MOD:
+                case EQ:
+                case NE:
+                case GT:
+                case LT:
+                case GTE:
+                case LTE:
+                case NOP:
+                case LAZY_COMMIT:
+                case SLOT_DIV:
+                case SLOT_SET:
+                case SLOT_GET:
+                case SLOT_RET:
+                case RETURN:
+                    break;
+                case BRANCH:
+                case BRANCH_IF:
+                    if (function.jumpTargets[pc] < 0) return false;
+                    break;
+                case CALL:
+                    if (callTarget(inst, functionIndex) == null) return false;
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean callsOnly(Function function, Set<Function> present, Map<String, Function> functionIndex) {
+        for (Instruction inst : function.instructions) {
+            if (inst != null && inst.opcode == Opcode.CALL && !present.contains(callTarget(inst, functionIndex))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Function callTarget(Instruction inst, Map<String, Function> functionIndex) {
+        if (inst.operands == null || inst.operands.isEmpty()) return null;
+        Operand target = inst.operands.get(0);
+        if (target == null || target.kind != OperandKind.FUNCTION) return null;
+        return functionIndex.get(String.valueOf(target.value));
+    }
+
+    private static BytecodeImage emit(Unit unit, List<Function> selected, Map<String, Function> functionIndex) {
+        resetCompiledIndexes(unit);
+        String className = PACKAGE + "Unit_" + sanitize(unit.className);
+        ClassFileWriter writer = new ClassFileWriter(className, BASE);
+        Map<Function, Integer> indexes = new HashMap<Function, Integer>();
+        for (int i = 0; i < selected.size(); i++) {
+            indexes.put(selected.get(i), Integer.valueOf(i));
+        }
+        Constants constants = new Constants();
+
+        emitConstructor(writer);
+        emitDispatch(writer, selected);
+        for (int i = 0; i < selected.size(); i++) {
+            emitFunction(writer, selected.get(i), i, indexes, constants, functionIndex);
+        }
+
+        byte[] classBytes = writer.toByteArray();
+        List<String> functionNames = new ArrayList<String>(selected.size());
+        for (int i = 0; i < selected.size(); i++) {
+            selected.get(i).compiledIndex = i;
+            functionNames.add(selected.get(i).name);
+        }
+        return new BytecodeImage(
+            className.replace('/', '.'),
+            classBytes,
+            functionNames,
+            constants.values.toArray()
+        );
+    }
+
+    private static void emitConstructor(ClassFileWriter writer) {
+        ClassFileWriter.Code code = writer.newCode();
+        code.aload(0);
+        code.aload(1);
+        code.aload(2);
+        code.invoke(ClassFileWriter.INVOKESPECIAL, BASE, "<init>", "([" + OBJECT + "Ljava/util/Map;)V");
+        code.op(ClassFileWriter.RETURN);
+        writer.addMethod(
+            ClassFileWriter.ACC_PUBLIC,
+            "<init>",
+            "([" + OBJECT + "Ljava/util/Map;)V",
+            code,
+            3,
+            3
+        );
+    }
+
+    /** invoke(int, Object[]): tableswitch on the function index, arguments read from the frame. */
+    private static void emitDispatch(ClassFileWriter writer, List<Function> selected) {
+        ClassFileWriter.Code code = writer.newCode();
+        int maxArity = 0;
+        code.iload(1);
+        if (!selected.isEmpty()) {
+            int switchAt = code.position();
+            code.op(ClassFileWriter.TABLESWITCH);
+            code.align();
+            int defaultAt = code.position();
+            code.u4(0);
+            code.u4(0);
+            code.u4(selected.size() - 1);
+            int[] caseAt = new int[selected.size()];
+            for (int i = 0; i < caseAt.length; i++) {
+                caseAt[i] = code.position();
+                code.u4(0);
+            }
+            for (int i = 0; i < caseAt.length; i++) {
+                Function function = selected.get(i);
+                int arity = arity(function);
+                maxArity = Math.max(maxArity, arity);
+                code.patchInt(caseAt[i], code.position() - switchAt);
+                code.aload(0);
+                for (int j = 0; j < arity; j++) {
+                    code.aload(2);
+                    code.iconst(j);
+                    code.op(ClassFileWriter.AALOAD);
+                }
+                code.invoke(ClassFileWriter.INVOKEVIRTUAL, writer.className(), methodName(i), descriptor(arity));
+                code.op(ClassFileWriter.ARETURN);
+            }
+            code.patchInt(defaultAt, code.position() - switchAt);
+        } else {
+            code.op(ClassFileWriter.POP);
+        }
+        code.op(ClassFileWriter.ACONST_NULL);
+        code.op(ClassFileWriter.ARETURN);
+        writer.addMethod(
+            ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL,
+            "invoke",
+            "(I[" + OBJECT + ")" + OBJECT,
+            code,
+            maxArity + 3,
+            3
+        );
+    }
+
+    private static void emitFunction(
+        ClassFileWriter writer,
+        Function function,
+        int index,
+        Map<Function, Integer> indexes,
+        Constants constants,
+        Map<String, Function> functionIndex
+    ) {
+        ClassFileWriter.Code code = writer.newCode();
+        int arity = arity(function);
+        int registerCount = Math.max(function.registerCount, arity);
+        // Locals are register slot + 1 (local 0 is this); clear the non-parameter ones.
+        for (int slot = arity; slot < registerCount; slot++) {
+            code.op(ClassFileWriter.ACONST_NULL);
+            code.astore(slot + 1);
+        }
+
+        List<Instruction> instructions = function.instructions;
+        int[] offsets = new int[instructions.size()];
+        List<int[]> branches = new ArrayList<int[]>();
+        int maxCallArity = 0;
+        for (int pc = 0; pc < instructions.size(); pc++) {
+            offsets[pc] = code.position();
+            Instruction inst = instructions.get(pc);
+            if (inst == null) continue;
+            switch (inst.opcode) {
+                case ASSIGN:
+                    load(code, inst, 0, constants);
+                    store(code, inst);
+                    break;
+                case ADD:
+                case SUB:
+                case MUL:
+                case DIV:
+                case MOD:
+                case EQ:
+                case NE:
+                case GT:
+                case LT:
+                case GTE:
+                case LTE:
+                    load(code, inst, 0, constants);
+                    load(code, inst, 1, constants);
+                    code.invoke(
+                        ClassFileWriter.INVOKESTATIC,
+                        RUNTIME,
+                        inst.opcode.name().toLowerCase(),
+                        BINARY_OP
+                    );
+                    store(code, inst);
+                    break;
+                case BRANCH:
+                    branches.add(new int[] {code.branch(ClassFileWriter.GOTO), function.jumpTargets[pc]});
+                    break;
+                case BRANCH_IF:
+                    load(code, inst, 0, constants);
+                    code.invoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "truthy", "(" + OBJECT + ")Z");
+                    branches.add(new int[] {code.branch(ClassFileWriter.IFNE), function.jumpTargets[pc]});
+                    break;
+                case SLOT_SET:
+                    code.aload(0);
+                    load(code, inst, 0, constants);
+                    load(code, inst, 1, constants);
+                    code.invoke(ClassFileWriter.INVOKEVIRTUAL, BASE, "slotSet", BINARY_OP);
+                    store(code, inst);
+                    break;
+                case SLOT_GET:
+                    code.aload(0);
+                    load(code, inst, 0, constants);
+                    code.invoke(ClassFileWriter.INVOKEVIRTUAL, BASE, "slotGet", "(" + OBJECT + ")" + OBJECT);
+                    store(code, inst);
+                    break;
+                case SLOT_RET:
+                    code.aload(0);
+                    code.invoke(ClassFileWriter.INVOKEVIRTUAL, BASE, "slotReturn", "()" + OBJECT);
+                    code.op(ClassFileWriter.ARETURN);
+                    break;
+                case RETURN:
+                    load(code, inst, 0, constants);
+                    code.op(ClassFileWriter.ARETURN);
+                    break;
+                case CALL: {
+                    Function target = callTarget(inst, functionIndex);
+                    int targetArity = arity(target);
+                    maxCallArity = Math.max(maxCallArity, targetArity);
+                    code.aload(0);
+                    for (int j = 0; j < targetArity; j++) {
+                        load(code, inst, j + 1, constants);
+                    }
+                    code.invoke(
+                        ClassFileWriter.INVOKEVIRTUAL,
+                        writer.className(),
+                        methodName(indexes.get(target).intValue()),
+                        descriptor(targetArity)
+                    );
+                    store(code, inst);
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        code.op(ClassFileWriter.ACONST_NULL);
+        code.op(ClassFileWriter.ARETURN);
+
+        for (int[] branch : branches) {
+            if (!code.patchBranch(branch[0], offsets[branch[1]])) {
+                throw new CodeTooLarge(function);
+            }
+        }
+        if (code.position() > MAX_METHOD_BYTES) {
+            throw new CodeTooLarge(function);
+        }
+        writer.addMethod(
+            ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL,
+            methodName(index),
+            descriptor(arity),
+            code,
+            Math.max(5, maxCallArity + 4),
+            registerCount + 1
+        );
+    }
+
+    private static void load(ClassFileWriter.Code code, Instruction inst, int index, Constants constants) {
+        Operand operand = inst.operands != null && index < inst.operands.size() ? inst.operands.get(index) : null;
+        if (operand == null) {
+            code.op(ClassFileWriter.ACONST_NULL);
+        } else if (operand.kind == OperandKind.REGISTER) {
+            if (operand.slot >= 0) {
+                code.aload(operand.slot + 1);
+            } else {
+                code.op(ClassFileWriter.ACONST_NULL);
+            }
+        } else if (operand.value == null) {
+            code.op(ClassFileWriter.ACONST_NULL);
+        } else {
+            code.aload(0);
+            code.getField(BASE, "constants", "[" + OBJECT);
+            code.iconst(constants.indexOf(operand.value));
+            code.op(ClassFileWriter.AALOAD);
+        }
+    }
+
+    private static void store(ClassFileWriter.Code code, Instruction inst) {
+        if (inst.destSlot >= 0) {
+            code.astore(inst.destSlot + 1);
+        } else {
+            code.op(ClassFileWriter.POP);
+        }
+    }
+
+    private static int arity(Function function) {
+        return function.parameters != null ? function.parameters.size() : 0;
+    }
+
+    private static String methodName(int index) {
+        return "f" + index;
+    }
+
+    private static String descriptor(int arity) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < arity; i++) {
+            sb.append(OBJECT);
+        }
+        return sb.append(')').append(OBJECT).toString();
+    }
+
+    private static String sanitize(String name) {
+        if (name == null || name.isEmpty()) return "anonymous";
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sb.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    private static final class Constants {
+        final List<Object> values = new ArrayList<Object>();
+        private final Map<Object, Integer> indexes = new IdentityHashMap<Object, Integer>();
+
+        int indexOf(Object value) {
+            Integer existing = indexes.get(value);
+            if (existing != null) return existing.intValue();
+            int index = values.size();
+            values.add(value);
+            indexes.put(value, Integer.valueOf(index));
+            return index;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class CodeTooLarge extends RuntimeException {
+        final transient Function function;
+
+        CodeTooLarge(Function function) {
+            super(null, null, false, false);
+            this.function = function;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package cod.ptac;
+
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A unit compiled to a JVM class: the class-file bytes plus the constant pool
+ * the generated methods index into. The class is defined lazily, in its own
+ * loader, the first time the image is instantiated.
+ */
+public final class BytecodeImage {
+    public final String className;
+    public final byte[] classBytes;
+    public final int functionCount;
+    /** Compiled functions in compiledIndex order. */
+    public final List<String> functionNames;
+    final Object[] constants;
+    private Constructor<? extends CompiledUnit> constructor;
+
+    BytecodeImage(String className, byte[] classBytes, List<String> functionNames, Object[] constants) {
+        this.className = className;
+        this.classBytes = classBytes;
+        this.functionCount = functionNames.size();
+        this.functionNames = Collections.unmodifiableList(functionNames);
+        this.constants = constants;
+    }
+
+    public Object[] constants() {
+        return constants.clone();
+    }
+
+    /** Returns a CompiledUnit sharing the caller's slot map, or null if nothing was compiled. */
+    public CompiledUnit instantiate(Map<String, Object> slots) {
+        if (functionCount == 0) return null;
+        try {
+            return constructor().newInstance(constants, slots);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot instantiate compiled unit " + className, e);
+        }
+    }
+
+    private synchronized Constructor<? extends CompiledUnit> constructor() throws ReflectiveOperationException {
+        if (constructor == null) {
+            Loader loader = new Loader(CompiledUnit.class.getClassLoader());
+            Class<? extends CompiledUnit> type = loader.define(className, classBytes).asSubclass(CompiledUnit.class);
+            constructor = type.getConstructor(Object[].class, Map.class);
+        }
+        return constructor;
+    }
+
+    private static final class Loader extends ClassLoader {
+        Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package cod.ptac;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal class-file writer for the bytecode backend. Classes are emitted as
+ * version 49 so the verifier infers frames itself and no StackMapTable has to
+ * be computed; the backend only keeps Object references in locals.
+ */
+final class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ASTORE = 0x3a;
+    static final int POP = 0x57;
+    static final int IFNE = 0x9a;
+    static final int GOTO = 0xa7;
+    static final int TABLESWITCH = 0xaa;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int WIDE = 0xc4;
+
+    private static final int CLASS_VERSION = 49;
+    private static final int TAG_UTF8 = 1;
+    private static final int TAG_INTEGER = 3;
+    private static final int TAG_CLASS = 7;
+    private static final int TAG_FIELDREF = 9;
+    private static final int TAG_METHODREF = 10;
+    private static final int TAG_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private final String className;
+    private final String superName;
+    private final List<byte[]> methods = new ArrayList<byte[]>();
+
+    ClassFileWriter(String className, String superName) {
+        this.className = className;
+        this.superName = superName;
+    }
+
+    String className() {
+        return className;
+    }
+
+    Code newCode() {
+        return new Code();
+    }
+
+    void addMethod(int access, String name, String descriptor, Code code, int maxStack, int maxLocals) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code.bytes, 0, code.length);
+            out.writeShort(0);
+            out.writeShort(0);
+            methods.add(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    byte[] toByteArray() {
+        try {
+            int thisIndex = classRef(className);
+            int superIndex = classRef(superName);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int utf8(String value) {
+        Integer existing = poolIndex.get("U" + value);
+        if (existing != null) return existing.intValue();
+        try {
+            pool.writeByte(TAG_UTF8);
+            pool.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register("U" + value);
+    }
+
+    private int integer(int value) {
+        Integer existing = poolIndex.get("I" + value);
+        if (existing != null) return existing.intValue();
+        try {
+            pool.writeByte(TAG_INTEGER);
+            pool.writeInt(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register("I" + value);
+    }
+
+    private int classRef(String internalName) {
+        Integer existing = poolIndex.get("C" + internalName);
+        if (existing != null) return existing.intValue();
+        int name = utf8(internalName);
+        try {
+            pool.writeByte(TAG_CLASS);
+            pool.writeShort(name);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register("C" + internalName);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + ":" + descriptor;
+        Integer existing = poolIndex.get(key);
+        if (existing != null) return existing.intValue();
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        try {
+            pool.writeByte(TAG_NAME_AND_TYPE);
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register(key);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        String key = (tag == TAG_FIELDREF ? "F" : "M") + owner + "." + name + ":" + descriptor;
+        Integer existing = poolIndex.get(key);
+        if (existing != null) return existing.intValue();
+        int ownerIndex = classRef(owner);
+        int nameAndTypeIndex = nameAndType(name, descriptor);
+        try {
+            pool.writeByte(tag);
+            pool.writeShort(ownerIndex);
+            pool.writeShort(nameAndTypeIndex);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register(key);
+    }
+
+    private int register(String key) {
+        int index = poolCount++;
+        poolIndex.put(key, Integer.valueOf(index));
+        return index;
+    }
+
+    /** Growable code buffer with helpers for the instructions the backend emits. */
+    final class Code {
+        private byte[] bytes = new byte[256];
+        private int length;
+
+        int position() {
+            return length;
+        }
+
+        void op(int opcode) {
+            u1(opcode);
+        }
+
+        void u1(int value) {
+            ensure(1);
+            bytes[length++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        void aload(int local) {
+            localOp(ALOAD, 0x2a, local);
+        }
+
+        void astore(int local) {
+            localOp(ASTORE, 0x4b, local);
+        }
+
+        void iload(int local) {
+            localOp(ILOAD, 0x1a, local);
+        }
+
+        void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(value);
+            } else {
+                op(LDC_W);
+                u2(integer(value));
+            }
+        }
+
+        void getField(String owner, String name, String descriptor) {
+            op(GETFIELD);
+            u2(memberRef(TAG_FIELDREF, owner, name, descriptor));
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            op(opcode);
+            u2(memberRef(TAG_METHODREF, owner, name, descriptor));
+        }
+
+        /** Emits a 16-bit branch and returns its position for patchBranch. */
+        int branch(int opcode) {
+            int at = length;
+            op(opcode);
+            u2(0);
+            return at;
+        }
+
+        boolean patchBranch(int at, int target) {
+            int offset = target - at;
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) return false;
+            bytes[at + 1] = (byte) (offset >>> 8);
+            bytes[at + 2] = (byte) offset;
+            return true;
+        }
+
+        void patchInt(int at, int value) {
+            bytes[at] = (byte) (value >>> 24);
+            bytes[at + 1] = (byte) (value >>> 16);
+            bytes[at + 2] = (byte) (value >>> 8);
+            bytes[at + 3] = (byte) value;
+        }
+
+        /** Pads to the 4-byte boundary a tableswitch operand block requires. */
+        void align() {
+            while (length % 4 != 0) {
+                u1(0);
+            }
+        }
+
+        private void localOp(int opcode, int shortForm, int local) {
+            if (local <= 3) {
+                op(shortForm + local);
+            } else if (local <= 0xff) {
+                op(opcode);
+                u1(local);
+            } else {
+                op(WIDE);
+                op(opcode);
+                u2(local);
+            }
+        }
+
+        private void ensure(int extra) {
+            if (length + extra <= bytes.length) return;
+            byte[] grown = new byte[Math.max(bytes.length * 2, length + extra)];
+            System.arraycopy(bytes, 0, grown, 0, length);
+            bytes = grown;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package cod.ptac;
+
+/**
+ * Value operations called from generated bytecode. Long operands take an
+ * inline fast path; everything else defers to the Executor's semantics so
+ * compiled and interpreted functions always agree.
+ */
+public final class CompiledRuntime {
+    private CompiledRuntime() {}
+
+    public static Object add(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long x = ((Long) a).longValue();
+            long y = ((Long) b).longValue();
+            long r = x + y;
+            if (((x ^ r) & (y ^ r)) >= 0L) return Long.valueOf(r);
+        }
+        return Executor.evaluateMath(Opcode.ADD, a, b);
+    }
+
+    public static Object sub(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long x = ((Long) a).longValue();
+            long y = ((Long) b).longValue();
+            long r = x - y;
+            if (((x ^ y) & (x ^ r)) >= 0L) return Long.valueOf(r);
+        }
+        return Executor.evaluateMath(Opcode.SUB, a, b);
+    }
+
+    public static Object mul(Object a, Object b) {
+        return Executor.evaluateMath(Opcode.MUL, a, b);
+    }
+
+    public static Object div(Object a, Object b) {
+        return Executor.evaluateMath(Opcode.DIV, a, b);
+    }
+
+    public static Object mod(Object a, Object b) {
+        return Executor.evaluateMath(Opcode.MOD, a, b);
+    }
+
+    public static Object eq(Object a, Object b) {
+        return compare(Opcode.EQ, a, b);
+    }
+
+    public static Object ne(Object a, Object b) {
+        return compare(Opcode.NE, a, b);
+    }
+
+    public static Object gt(Object a, Object b) {
+        return compare(Opcode.GT, a, b);
+    }
+
+    public static Object lt(Object a, Object b) {
+        return compare(Opcode.LT, a, b);
+    }
+
+    public static Object gte(Object a, Object b) {
+        return compare(Opcode.GTE, a, b);
+    }
+
+    public static Object lte(Object a, Object b) {
+        return compare(Opcode.LTE, a, b);
+    }
+
+    public static boolean truthy(Object value) {
+        if (value instanceof Boolean) return ((Boolean) value).booleanValue();
+        return Executor.isTruthy(value);
+    }
+
+    private static Object compare(Opcode opcode, Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            long x = ((Long) a).longValue();
+            long y = ((Long) b).longValue();
+            switch (opcode) {
+                case EQ: return Boolean.valueOf(x == y);
+                case NE: return Boolean.valueOf(x != y);
+                case GT: return Boolean.valueOf(x > y);
+                case LT: return Boolean.valueOf(x < y);
+                case GTE: return Boolean.valueOf(x >= y);
+                case LTE: return Boolean.valueOf(x <= y);
+                default: break;
+            }
+        }
+        return Executor.evaluateCompare(opcode, a, b);
+    }
+}
@@ -0,0 +1,34 @@
+package cod.ptac;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class of the classes generated by BytecodeCompiler. Every compiled
+ * function becomes a method of the subclass; invoke dispatches to it by the
+ * function's compiledIndex, reading arguments from an Executor frame.
+ */
+public abstract class CompiledUnit {
+    protected final Object[] constants;
+    private final Map<String, Object> slots;
+
+    protected CompiledUnit(Object[] constants, Map<String, Object> slots) {
+        this.constants = constants;
+        this.slots = slots;
+    }
+
+    public abstract Object invoke(int function, Object[] frame);
+
+    protected final Object slotSet(Object name, Object value) {
+        slots.put(String.valueOf(name), value);
+        return value;
+    }
+
+    protected final Object slotGet(Object name) {
+        return slots.get(String.valueOf(name));
+    }
+
+    protected final Object slotReturn() {
+        return new HashMap<String, Object>(slots);
+    }
+}
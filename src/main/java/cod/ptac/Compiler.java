@@ -21,7 +21,7 @@ public final class Compiler {
         artifact.unitName = unitName;
         artifact.className = type != null ? type.name : null;
         artifact.typeSnapshot = type;
-        artifact.unit = optimizer.optimize(lowerer.lower(unitName, type));
+        artifact.unit = Linker.link(optimizer.optimize(lowerer.lower(unitName, type)));
         return artifact;
     }
 }
@@ -1,13 +1,18 @@
 package cod.ptac;
 
+import cod.error.InternalError;
 import cod.error.ProgramError;
 import cod.interpreter.Interpreter;
+import cod.interpreter.context.ObjectInstance;
+import cod.ast.node.Method;
 import cod.ast.node.Program;
 
 import java.math.BigInteger;
-import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -17,130 +22,85 @@ import java.util.Set;
 public final class Executor {
     private final Options options;
     private static final Object FALLBACK_SENTINEL = new Object();
+    private static final Object END = new Object();
+    private static final int RETURNED = -1;
+    private static final int FELL_BACK = -2;
+    private static final EnumSet<Opcode> INTERPRETED_OPCODES = EnumSet.of(
+        Opcode.SCAN,
+        Opcode.ZIP,
+        Opcode.WHERE,
+        Opcode.LAZY_SLICE,
+        Opcode.ANCESTOR,
+        Opcode.SELF,
+        Opcode.TAIL_CALL,
+        Opcode.CLOSURE,
+        Opcode.FORMULA_SEQ,
+        Opcode.FORMULA_COND,
+        Opcode.FORMULA_RECUR,
+        Opcode.FORMULA_FUSE
+    );
 
     private static final class RuntimeState {
         int fallbackCount;
+        int interpretedCalls;
+        String fallbackReason;
+        ObjectInstance fallbackInstance;
+        CompiledUnit compiled;
+        Object returnValue;
         final Map<Object, Object> memory = new HashMap<Object, Object>();
         final Map<String, Object> slots = new HashMap<String, Object>();
     }
 
-    private static final class FastRegisterMap extends AbstractMap<String, Object> {
-        private final Map<String, Integer> indexByName = new HashMap<String, Integer>();
-        private final Object[] values;
-        private final Map<String, Object> overflow = new HashMap<String, Object>();
-
-        FastRegisterMap(Function function) {
-            int index = 0;
-            if (function != null && function.parameters != null) {
-                for (String parameter : function.parameters) {
-                    if (parameter != null && !indexByName.containsKey(parameter)) {
-                        indexByName.put(parameter, Integer.valueOf(index++));
-                    }
-                }
-            }
-            if (function != null && function.instructions != null) {
-                for (Instruction instruction : function.instructions) {
-                    if (instruction == null) continue;
-                    if (instruction.dest != null && !indexByName.containsKey(instruction.dest)) {
-                        indexByName.put(instruction.dest, Integer.valueOf(index++));
-                    }
-                    if (instruction.operands == null) continue;
-                    for (Operand operand : instruction.operands) {
-                        if (operand == null) continue;
-                        if (operand.kind == OperandKind.REGISTER && operand.value instanceof String) {
-                            String name = (String) operand.value;
-                            if (!indexByName.containsKey(name)) {
-                                indexByName.put(name, Integer.valueOf(index++));
-                            }
-                        }
-                    }
-                }
-            }
-            this.values = new Object[index];
-        }
-
-        @Override
-        public Object get(Object key) {
-            if (!(key instanceof String)) return null;
-            String name = (String) key;
-            Integer index = indexByName.get(name);
-            if (index != null) {
-                return values[index.intValue()];
-            }
-            return overflow.get(name);
-        }
-
-        @Override
-        public boolean containsKey(Object key) {
-            if (!(key instanceof String)) return false;
-            String name = (String) key;
-            return indexByName.containsKey(name) || overflow.containsKey(name);
-        }
-
-        @Override
-        public Object put(String key, Object value) {
-            if (key == null) return null;
-            Integer index = indexByName.get(key);
-            if (index != null) {
-                int idx = index.intValue();
-                Object previous = values[idx];
-                values[idx] = value;
-                return previous;
-            }
-            return overflow.put(key, value);
-        }
-
-        @Override
-        public Set<Entry<String, Object>> entrySet() {
-            Set<Entry<String, Object>> entries = new HashSet<Entry<String, Object>>();
-            for (Map.Entry<String, Integer> item : indexByName.entrySet()) {
-                int idx = item.getValue().intValue();
-                entries.add(new AbstractMap.SimpleEntry<String, Object>(item.getKey(), values[idx]));
-            }
-            entries.addAll(overflow.entrySet());
-            return entries;
-        }
-    }
-
+    /**
+     * Inclusive arithmetic range. Bounds that fit in a long use the primitive
+     * fields; only ranges with wider bounds pay for BigInteger arithmetic.
+     */
     private static final class Range {
-        final BigInteger start;
-        final BigInteger end;
-        final BigInteger step;
-
-        Range(BigInteger start, BigInteger end, BigInteger step) {
+        final boolean wide;
+        final long start;
+        final long end;
+        final long step;
+        final BigInteger bigStart;
+        final BigInteger bigEnd;
+        final BigInteger bigStep;
+
+        private Range(long start, long end, long step) {
+            this.wide = false;
             this.start = start;
             this.end = end;
             this.step = step;
+            this.bigStart = null;
+            this.bigEnd = null;
+            this.bigStep = null;
         }
-    }
 
-    private static final class ExecutionResult {
-        final Object value;
-        final Integer nextPc;
-        final boolean returned;
-        final boolean fallback;
-
-        ExecutionResult(Object value, Integer nextPc, boolean returned, boolean fallback) {
-            this.value = value;
-            this.nextPc = nextPc;
-            this.returned = returned;
-            this.fallback = fallback;
+        private Range(BigInteger start, BigInteger end, BigInteger step) {
+            this.wide = true;
+            this.start = 0L;
+            this.end = 0L;
+            this.step = 0L;
+            this.bigStart = start;
+            this.bigEnd = end;
+            this.bigStep = step;
         }
 
-        static ExecutionResult normal(Object value) {
-            return new ExecutionResult(value, null, false, false);
+        static Range of(BigInteger start, BigInteger end, BigInteger step) {
+            if (start.bitLength() < 64 && end.bitLength() < 64 && step.bitLength() < 64) {
+                return new Range(start.longValue(), end.longValue(), step.longValue());
+            }
+            return new Range(start, end, step);
         }
 
-        static ExecutionResult jump(int nextPc) {
-            return new ExecutionResult(null, Integer.valueOf(nextPc), false, false);
+        BigInteger startBig() {
+            return wide ? bigStart : BigInteger.valueOf(start);
         }
 
-        static ExecutionResult returned(Object value) {
-            return new ExecutionResult(value, null, true, false);
+        BigInteger endBig() {
+            return wide ? bigEnd : BigInteger.valueOf(end);
         }
 
-        static ExecutionResult fallback() {
-            return new ExecutionResult(null, null, false, true);
+        BigInteger stepBig() {
+            return wide ? bigStep : BigInteger.valueOf(step);
         }
     }
 
@@ -155,423 +115,618 @@ public final class Executor {
         RuntimeState state = new RuntimeState();
 
         if (artifact.unit == null || artifact.unit.functions == null || artifact.unit.functions.isEmpty()) {
-            return fallback(artifact, fallbackInterpreter, "No executable CodP-TAC unit in artifact", state);
+            return runProgramFallback(artifact, fallbackInterpreter, "No executable CodP-TAC unit in artifact", state);
         }
 
+        Linker.ensureLinked(artifact.unit);
+        if (options.isBytecodeEnabled()) {
+            state.compiled = BytecodeCompiler.compile(artifact.unit).instantiate(state.slots);
+        }
         Map<String, Function> functionIndex = indexFunctions(artifact.unit);
         Function entry = findEntry(artifact.unit, functionIndex);
         if (entry == null) {
-            return fallback(artifact, fallbackInterpreter, "No entry function found in CodP-TAC unit", state);
+            return runProgramFallback(artifact, fallbackInterpreter, "No entry function found in CodP-TAC unit", state);
+        }
+        // The entry function owns program setup, so it falls back to a
+        // whole-program run; other functions are handed over one at a time
+        // unless a later fallback could rerun them.
+        String reason = interpretedReason(entry, functionIndex);
+        if (reason == null) {
+            reason = programFallbackReason(entry, functionIndex, artifact, fallbackInterpreter);
+        }
+        if (reason != null) {
+            return runProgramFallback(artifact, fallbackInterpreter, reason, state);
         }
         Object result = executeFunction(
             artifact.unit,
             entry,
-            new ArrayList<Object>(),
+            newFrame(entry),
             fallbackInterpreter,
             artifact,
             functionIndex,
             state
         );
-        return result == FALLBACK_SENTINEL ? null : result;
+        if (result != FALLBACK_SENTINEL) {
+            return result;
+        }
+        if (state.interpretedCalls > 0) {
+            throw new InternalError("CodP-TAC fell back after handing calls to the interpreter: "
+                + state.fallbackReason);
+        }
+        return runProgramFallback(artifact, fallbackInterpreter, state.fallbackReason, state);
     }
 
     private Object executeFunction(
         Unit unit,
         Function function,
-        List<Object> args,
+        Object[] registers,
         Interpreter fallbackInterpreter,
         Artifact artifact,
         Map<String, Function> functionIndex,
         RuntimeState state
     ) {
-        Map<String, Object> registers = new FastRegisterMap(function);
-        if (function.parameters != null) {
-            for (int i = 0; i < function.parameters.size(); i++) {
-                Object arg = i < args.size() ? args.get(i) : null;
-                registers.put(function.parameters.get(i), arg);
-            }
+        if (state.compiled != null && function.compiledIndex >= 0) {
+            return state.compiled.invoke(function.compiledIndex, registers);
         }
-
-        if (function.instructions == null) return null;
-        Map<String, Integer> labels = indexLabels(function);
+        List<Instruction> instructions = function.instructions;
+        if (instructions == null) return null;
+        int size = instructions.size();
         int pc = 0;
-        while (pc < function.instructions.size()) {
-            Instruction inst = function.instructions.get(pc);
+        while (pc < size) {
+            Instruction inst = instructions.get(pc);
             if (inst == null) {
                 pc++;
                 continue;
             }
-            ExecutionResult result = runInstruction(
+            pc = runInstruction(
                 unit,
                 function,
                 inst,
                 registers,
                 fallbackInterpreter,
                 artifact,
-                labels,
                 pc,
                 functionIndex,
                 state
             );
-            if (result.fallback) {
+            if (pc == FELL_BACK) {
                 return FALLBACK_SENTINEL;
             }
-            if (result.returned) {
-                return result.value;
-            }
-            if (result.nextPc != null) {
-                pc = result.nextPc.intValue();
-            } else {
-                pc++;
+            if (pc == RETURNED) {
+                Object value = state.returnValue;
+                state.returnValue = null;
+                return value;
             }
         }
         return null;
     }
 
-    private ExecutionResult runInstruction(
+    /**
+     * Runs one instruction and returns the next PC, or RETURNED / FELL_BACK.
+     * A returned value is handed back through RuntimeState.returnValue so the
+     * dispatch loop does not allocate a result per instruction.
+     */
+    private int runInstruction(
         Unit unit,
         Function currentFunction,
         Instruction inst,
-        Map<String, Object> registers,
+        Object[] registers,
         Interpreter fallbackInterpreter,
         Artifact artifact,
-        Map<String, Integer> labels,
         int currentPc,
         Map<String, Function> functionIndex,
         RuntimeState state
     ) {
-        if (inst.opcode == Opcode.ASSIGN) {
-            Object value = operandValue(inst.operands, 0, registers);
-            registers.put(inst.dest, value);
-            return ExecutionResult.normal(value);
-        }
-
-        if (isMath(inst.opcode)) {
-            Object left = operandValue(inst.operands, 0, registers);
-            Object right = operandValue(inst.operands, 1, registers);
-            Object out = evaluateMath(inst.opcode, left, right);
-            if (inst.dest != null) registers.put(inst.dest, out);
-            return ExecutionResult.normal(out);
-        }
-
-        if (isCompare(inst.opcode)) {
-            Object left = operandValue(inst.operands, 0, registers);
-            Object right = operandValue(inst.operands, 1, registers);
-            Boolean out = evaluateCompare(inst.opcode, left, right);
-            if (inst.dest != null) registers.put(inst.dest, out);
-            return ExecutionResult.normal(out);
-        }
-
-        if (inst.opcode == Opcode.RANGE
-            || inst.opcode == Opcode.RANGE_Q
-            || inst.opcode == Opcode.RANGE_S
-            || inst.opcode == Opcode.RANGE_L
-            || inst.opcode == Opcode.RANGE_LS) {
-            Object start = operandValue(inst.operands, 0, registers);
-            Object end = operandValue(inst.operands, 1, registers);
-            if (!isNumericLike(start) || !isNumericLike(end)) {
-                Object fallback = fallback(
-                    artifact,
-                    fallbackInterpreter,
-                    "Non-numeric range bounds are not yet natively executed",
-                    state
-                );
-                if (fallback == FALLBACK_SENTINEL) return ExecutionResult.fallback();
+        int nextPc = currentPc + 1;
+        switch (inst.opcode) {
+            case ASSIGN:
+                store(registers, inst, operandValue(inst.operands, 0, registers));
+                return nextPc;
+
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
+            case MOD: {
+                Object left = operandValue(inst.operands, 0, registers);
+                Object right = operandValue(inst.operands, 1, registers);
+                store(registers, inst, evaluateMath(inst.opcode, left, right));
+                return nextPc;
             }
-            Object stepVal = inst.operands != null && inst.operands.size() > 2
-                ? operandValue(inst.operands, 2, registers)
-                : 1;
-            Range range = new Range(toBigInt(start), toBigInt(end), toBigInt(stepVal));
-            if (inst.dest != null) registers.put(inst.dest, range);
-            return ExecutionResult.normal(range);
-        }
 
-        if (inst.opcode == Opcode.TAKE) {
-            Range source = asRange(operandValue(inst.operands, 0, registers));
-            BigInteger n = toBigInt(operandValue(inst.operands, 1, registers));
-            List<BigInteger> out = take(source, n);
-            if (inst.dest != null) registers.put(inst.dest, out);
-            return ExecutionResult.normal(out);
-        }
+            case EQ:
+            case NE:
+            case GT:
+            case LT:
+            case GTE:
+            case LTE: {
+                Object left = operandValue(inst.operands, 0, registers);
+                Object right = operandValue(inst.operands, 1, registers);
+                store(registers, inst, evaluateCompare(inst.opcode, left, right));
+                return nextPc;
+            }
 
-        if (inst.opcode == Opcode.NOP) {
-            return ExecutionResult.normal(null);
-        }
+            case RANGE:
+            case RANGE_Q:
+            case RANGE_S:
+            case RANGE_L:
+            case RANGE_LS: {
+                Object start = operandValue(inst.operands, 0, registers);
+                Object end = operandValue(inst.operands, 1, registers);
+                if (!isNumericLike(start) || !isNumericLike(end)) {
+                    return fallbackPc("Non-numeric range bounds are not yet natively executed", state);
+                }
+                Object stepVal = inst.operands != null && inst.operands.size() > 2
+                    ? operandValue(inst.operands, 2, registers)
+                    : 1;
+                store(registers, inst, Range.of(toBigInt(start), toBigInt(end), toBigInt(stepVal)));
+                return nextPc;
+            }
 
-        if (inst.opcode == Opcode.BRANCH) {
-            String label = asLabel(operandValue(inst.operands, 0, registers));
-            Integer jumpTarget = label != null ? labels.get(label) : null;
-            if (jumpTarget == null) {
-                Object fallback = fallback(
-                    artifact,
-                    fallbackInterpreter,
-                    "Unknown branch label: " + label,
-                    state
-                );
-                if (fallback == FALLBACK_SENTINEL) return ExecutionResult.fallback();
+            case TAKE: {
+                Range source = asRange(operandValue(inst.operands, 0, registers));
+                BigInteger n = toBigInt(operandValue(inst.operands, 1, registers));
+                store(registers, inst, take(source, n));
+                return nextPc;
             }
-            return ExecutionResult.jump(jumpTarget.intValue());
-        }
-
-        if (inst.opcode == Opcode.BRANCH_IF) {
-            Object condition = operandValue(inst.operands, 0, registers);
-            if (isTruthy(condition)) {
-                String label = asLabel(operandValue(inst.operands, 1, registers));
-                Integer jumpTarget = label != null ? labels.get(label) : null;
-                if (jumpTarget == null) {
-                    Object fallback = fallback(
-                        artifact,
-                        fallbackInterpreter,
-                        "Unknown branch-if label: " + label,
-                        state
-                    );
-                    if (fallback == FALLBACK_SENTINEL) return ExecutionResult.fallback();
+
+            case NOP:
+            case LAZY_COMMIT:
+            case SLOT_DIV:
+                return nextPc;
+
+            case BRANCH: {
+                int jumpTarget = jumpTarget(currentFunction, currentPc, inst, 0, registers);
+                if (jumpTarget < 0) {
+                    String label = asLabel(operandValue(inst.operands, 0, registers));
+                    return fallbackPc("Unknown branch label: " + label, state);
                 }
-                return ExecutionResult.jump(jumpTarget.intValue());
+                return jumpTarget;
             }
-            return ExecutionResult.normal(null);
-        }
 
-        if (inst.opcode == Opcode.LAZY_GET) {
-            Object source = operandValue(inst.operands, 0, registers);
-            BigInteger index = toBigInt(operandValue(inst.operands, 1, registers));
-            Object out = lazyGet(source, index);
-            if (inst.dest != null) registers.put(inst.dest, out);
-            return ExecutionResult.normal(out);
-        }
-
-        if (inst.opcode == Opcode.LAZY_SET) {
-            Object source = operandValue(inst.operands, 0, registers);
-            BigInteger index = toBigInt(operandValue(inst.operands, 1, registers));
-            Object value = operandValue(inst.operands, 2, registers);
-            Object out = lazySet(source, index, value);
-            if (out == FALLBACK_SENTINEL) {
-                return ExecutionResult.fallback();
+            case BRANCH_IF: {
+                Object condition = operandValue(inst.operands, 0, registers);
+                if (!isTruthy(condition)) {
+                    return nextPc;
+                }
+                int jumpTarget = jumpTarget(currentFunction, currentPc, inst, 1, registers);
+                if (jumpTarget < 0) {
+                    String label = asLabel(operandValue(inst.operands, 1, registers));
+                    return fallbackPc("Unknown branch-if label: " + label, state);
+                }
+                return jumpTarget;
             }
-            return ExecutionResult.normal(out);
-        }
 
-        if (inst.opcode == Opcode.LAZY_SIZE) {
-            Object source = operandValue(inst.operands, 0, registers);
-            Object out = lazySize(source);
-            if (inst.dest != null) registers.put(inst.dest, out);
-            return ExecutionResult.normal(out);
-        }
+            case LAZY_GET: {
+                Object source = operandValue(inst.operands, 0, registers);
+                Object index = operandValue(inst.operands, 1, registers);
+                store(registers, inst, lazyGet(source, index));
+                return nextPc;
+            }
 
-        if (inst.opcode == Opcode.LAZY_COMMIT) {
-            return ExecutionResult.normal(null);
-        }
+            case LAZY_SET: {
+                Object source = operandValue(inst.operands, 0, registers);
+                Object index = operandValue(inst.operands, 1, registers);
+                Object value = operandValue(inst.operands, 2, registers);
+                Object out = lazySet(source, index, value);
+                if (out == FALLBACK_SENTINEL) {
+                    return fallbackPc("LAZY_SET target is not a list", state);
+                }
+                return nextPc;
+            }
 
-        if (inst.opcode == Opcode.MAP) {
-            Object mapped = runMap(
-                unit,
-                inst,
-                registers,
-                fallbackInterpreter,
-                artifact,
-                functionIndex,
-                state
-            );
-            if (mapped == FALLBACK_SENTINEL) {
-                return ExecutionResult.fallback();
+            case LAZY_SIZE: {
+                Object source = operandValue(inst.operands, 0, registers);
+                store(registers, inst, lazySize(source));
+                return nextPc;
             }
-            if (inst.dest != null) registers.put(inst.dest, mapped);
-            return ExecutionResult.normal(mapped);
-        }
 
-        if (inst.opcode == Opcode.FILTER) {
-            Object filtered = runFilter(
-                unit,
-                inst,
-                registers,
-                fallbackInterpreter,
-                artifact,
-                functionIndex,
-                state
-            );
-            if (filtered == FALLBACK_SENTINEL) {
-                return ExecutionResult.fallback();
+            case MAP:
+            case FILTER:
+            case REDUCE:
+            case FILTER_MAP:
+            case FILTER_MAP_REDUCE: {
+                Object out;
+                if (inst.opcode == Opcode.MAP) {
+                    out = runMap(unit, inst, registers, fallbackInterpreter, artifact, functionIndex, state);
+                } else if (inst.opcode == Opcode.FILTER) {
+                    out = runFilter(unit, inst, registers, fallbackInterpreter, artifact, functionIndex, state);
+                } else if (inst.opcode == Opcode.REDUCE) {
+                    out = runReduce(unit, inst, registers, fallbackInterpreter, artifact, functionIndex, state);
+                } else if (inst.opcode == Opcode.FILTER_MAP_REDUCE) {
+                    out = runFilterMapReduce(unit, inst, registers, fallbackInterpreter, artifact, functionIndex, state);
+                } else {
+                    out = runFilterMap(unit, inst, registers, fallbackInterpreter, artifact, functionIndex, state);
+                }
+                if (out == FALLBACK_SENTINEL) {
+                    return FELL_BACK;
+                }
+                store(registers, inst, out);
+                return nextPc;
             }
-            if (inst.dest != null) registers.put(inst.dest, filtered);
-            return ExecutionResult.normal(filtered);
-        }
 
-        if (inst.opcode == Opcode.REDUCE) {
-            Object reduced = runReduce(
-                unit,
-                inst,
-                registers,
-                fallbackInterpreter,
-                artifact,
-                functionIndex,
-                state
-            );
-            if (reduced == FALLBACK_SENTINEL) {
-                return ExecutionResult.fallback();
+            case SLOT_SET: {
+                String slotName = String.valueOf(operandValue(inst.operands, 0, registers));
+                Object value = operandValue(inst.operands, 1, registers);
+                state.slots.put(slotName, value);
+                store(registers, inst, value);
+                return nextPc;
             }
-            if (inst.dest != null) registers.put(inst.dest, reduced);
-            return ExecutionResult.normal(reduced);
-        }
 
-        if (inst.opcode == Opcode.FILTER_MAP) {
-            Object filteredMapped = runFilterMap(
-                unit,
-                inst,
-                registers,
-                fallbackInterpreter,
-                artifact,
-                functionIndex,
-                state
-            );
-            if (filteredMapped == FALLBACK_SENTINEL) {
-                return ExecutionResult.fallback();
+            case SLOT_GET: {
+                String slotName = String.valueOf(operandValue(inst.operands, 0, registers));
+                store(registers, inst, state.slots.get(slotName));
+                return nextPc;
             }
-            if (inst.dest != null) registers.put(inst.dest, filteredMapped);
-            return ExecutionResult.normal(filteredMapped);
-        }
-
-        if (inst.opcode == Opcode.SLOT_SET) {
-            String slotName = String.valueOf(operandValue(inst.operands, 0, registers));
-            Object value = operandValue(inst.operands, 1, registers);
-            state.slots.put(slotName, value);
-            if (inst.dest != null) registers.put(inst.dest, value);
-            return ExecutionResult.normal(value);
-        }
-
-        if (inst.opcode == Opcode.SLOT_GET) {
-            String slotName = String.valueOf(operandValue(inst.operands, 0, registers));
-            Object value = state.slots.get(slotName);
-            if (inst.dest != null) registers.put(inst.dest, value);
-            return ExecutionResult.normal(value);
-        }
-
-        if (inst.opcode == Opcode.SLOT_UNPACK) {
-            Object source = operandValue(inst.operands, 0, registers);
-            if (source instanceof Map) {
-                @SuppressWarnings("unchecked")
-                Map<Object, Object> sourceMap = (Map<Object, Object>) source;
-                for (Map.Entry<Object, Object> entry : sourceMap.entrySet()) {
-                    if (entry.getKey() instanceof String) {
-                        String key = (String) entry.getKey();
-                        state.slots.put(key, entry.getValue());
-                        registers.put(key, entry.getValue());
+
+            case SLOT_UNPACK: {
+                Object source = operandValue(inst.operands, 0, registers);
+                if (source instanceof Map) {
+                    @SuppressWarnings("unchecked")
+                    Map<Object, Object> sourceMap = (Map<Object, Object>) source;
+                    for (Map.Entry<Object, Object> entry : sourceMap.entrySet()) {
+                        if (entry.getKey() instanceof String) {
+                            String key = (String) entry.getKey();
+                            state.slots.put(key, entry.getValue());
+                            Integer slot = currentFunction.registerSlots.get(key);
+                            if (slot != null) {
+                                registers[slot.intValue()] = entry.getValue();
+                            }
+                        }
                     }
                 }
+                return nextPc;
             }
-            return ExecutionResult.normal(source);
-        }
-
-        if (inst.opcode == Opcode.SLOT_RET) {
-            return ExecutionResult.returned(new HashMap<String, Object>(state.slots));
-        }
 
-        if (inst.opcode == Opcode.SLOT_DIV) {
-            return ExecutionResult.normal(null);
-        }
+            case SLOT_RET:
+                state.returnValue = new HashMap<String, Object>(state.slots);
+                return RETURNED;
 
-        if (inst.opcode == Opcode.STORE) {
-            Object address = operandValue(inst.operands, 0, registers);
-            Object value = operandValue(inst.operands, 1, registers);
-            state.memory.put(address, value);
-            if (inst.dest != null) registers.put(inst.dest, value);
-            return ExecutionResult.normal(value);
-        }
-
-        if (inst.opcode == Opcode.LOAD) {
-            Object address = operandValue(inst.operands, 0, registers);
-            Object value = state.memory.get(address);
-            if (inst.dest != null) registers.put(inst.dest, value);
-            return ExecutionResult.normal(value);
-        }
+            case STORE: {
+                Object address = operandValue(inst.operands, 0, registers);
+                Object value = operandValue(inst.operands, 1, registers);
+                state.memory.put(address, value);
+                store(registers, inst, value);
+                return nextPc;
+            }
 
-        if (inst.opcode == Opcode.FILTER
-            || inst.opcode == Opcode.SCAN
-            || inst.opcode == Opcode.ZIP
-            || inst.opcode == Opcode.WHERE
-            || inst.opcode == Opcode.FILTER_MAP_REDUCE
-            || inst.opcode == Opcode.LAZY_SLICE
-            || inst.opcode == Opcode.ANCESTOR
-            || inst.opcode == Opcode.SELF
-            || inst.opcode == Opcode.TAIL_CALL
-            || inst.opcode == Opcode.CLOSURE
-            || inst.opcode == Opcode.FORMULA_SEQ
-            || inst.opcode == Opcode.FORMULA_COND
-            || inst.opcode == Opcode.FORMULA_RECUR
-            || inst.opcode == Opcode.FORMULA_FUSE) {
-            Object fallback = fallback(
-                artifact,
-                fallbackInterpreter,
-                "Opcode not yet natively executed: " + inst.opcode,
-                state
-            );
-            if (fallback == FALLBACK_SENTINEL) return ExecutionResult.fallback();
-        }
+            case LOAD: {
+                Object address = operandValue(inst.operands, 0, registers);
+                store(registers, inst, state.memory.get(address));
+                return nextPc;
+            }
 
-        if (inst.opcode == Opcode.CALL) {
-            String functionName = String.valueOf(operandValue(inst.operands, 0, registers));
-            Function target = findFunction(functionIndex, functionName);
-            if (target == null) {
-                Object fallback = fallback(
-                    artifact,
+            case SCAN:
+            case ZIP:
+            case WHERE:
+            case LAZY_SLICE:
+            case ANCESTOR:
+            case SELF:
+            case TAIL_CALL:
+            case CLOSURE:
+            case FORMULA_SEQ:
+            case FORMULA_COND:
+            case FORMULA_RECUR:
+            case FORMULA_FUSE:
+                return fallbackPc("Opcode not yet natively executed: " + inst.opcode, state);
+
+            case CALL: {
+                String functionName = String.valueOf(operandValue(inst.operands, 0, registers));
+                Function target = findFunction(functionIndex, functionName);
+                if (target == null) {
+                    return fallbackPc("Unknown function: " + functionName, state);
+                }
+                String reason = interpretedReason(target, functionIndex);
+                if (reason != null) {
+                    fallback(reason, state);
+                    Object handed = interpretFunction(target, inst, registers, fallbackInterpreter, artifact, state);
+                    if (handed == FALLBACK_SENTINEL) {
+                        return FELL_BACK;
+                    }
+                    store(registers, inst, handed);
+                    return nextPc;
+                }
+                Object[] frame = newFrame(target);
+                for (int i = 1; i < inst.operands.size(); i++) {
+                    bindArgument(target, frame, i - 1, operandValue(inst.operands, i, registers));
+                }
+                Object result = executeFunction(
+                    unit,
+                    target,
+                    frame,
                     fallbackInterpreter,
-                    "Unknown function: " + functionName,
+                    artifact,
+                    functionIndex,
                     state
                 );
-                if (fallback == FALLBACK_SENTINEL) return ExecutionResult.fallback();
-            }
-            List<Object> args = new ArrayList<Object>();
-            for (int i = 1; i < inst.operands.size(); i++) {
-                args.add(operandValue(inst.operands, i, registers));
-            }
-            Object result = executeFunction(
-                unit,
-                target,
-                args,
-                fallbackInterpreter,
-                artifact,
-                functionIndex,
-                state
-            );
-            if (result == FALLBACK_SENTINEL) {
-                return ExecutionResult.fallback();
+                if (result == FALLBACK_SENTINEL) {
+                    return FELL_BACK;
+                }
+                store(registers, inst, result);
+                return nextPc;
             }
-            if (inst.dest != null) registers.put(inst.dest, result);
-            return ExecutionResult.normal(result);
-        }
 
-        if (inst.opcode == Opcode.RETURN) {
-            return ExecutionResult.returned(operandValue(inst.operands, 0, registers));
+            case RETURN:
+                state.returnValue = operandValue(inst.operands, 0, registers);
+                return RETURNED;
+
+            default:
+                return nextPc;
         }
+    }
 
-        return ExecutionResult.normal(null);
+    private int fallbackPc(String reason, RuntimeState state) {
+        fallback(reason, state);
+        return FELL_BACK;
     }
 
-    private Object fallback(
+    /**
+     * Records why native execution stopped. The caller unwinds with
+     * FALLBACK_SENTINEL to the entry, which reruns the whole program.
+     */
+    private Object fallback(String reason, RuntimeState state) {
+        state.fallbackCount++;
+        state.fallbackReason = reason;
+        if (!options.isFallbackEnabled()) {
+            throw new ProgramError("CodP-TAC execution failed without fallback: " + reason);
+        }
+        return FALLBACK_SENTINEL;
+    }
+
+    private Object runProgramFallback(
         Artifact artifact,
         Interpreter fallbackInterpreter,
         String reason,
         RuntimeState state
     ) {
-        if (state != null) {
-            state.fallbackCount++;
-        }
-        if (!options.isFallbackEnabled()) {
-            throw new ProgramError("CodP-TAC execution failed without fallback: " + reason);
-        }
+        fallback(reason, state);
         if (fallbackInterpreter != null) {
             Program currentProgram = fallbackInterpreter.getCurrentProgram();
             if (currentProgram != null) {
                 fallbackInterpreter.run(currentProgram);
-                return FALLBACK_SENTINEL;
+                return null;
             }
             if (artifact != null && artifact.typeSnapshot != null) {
                 fallbackInterpreter.runType(artifact.typeSnapshot);
-                return FALLBACK_SENTINEL;
+                return null;
             }
         }
         throw new ProgramError("CodP-TAC fallback unavailable: " + reason);
     }
 
+    /**
+     * Runs one function through the interpreter with the arguments of the
+     * CALL instruction, so its result flows back into the calling frame.
+     * Lambda blocks have no AST method and cannot be handed over on their own.
+     */
+    private Object interpretFunction(
+        Function target,
+        Instruction call,
+        Object[] registers,
+        Interpreter fallbackInterpreter,
+        Artifact artifact,
+        RuntimeState state
+    ) {
+        Method method = findMethod(artifact, target);
+        if (fallbackInterpreter == null || method == null) {
+            return FALLBACK_SENTINEL;
+        }
+        List<Object> arguments = new ArrayList<Object>(call.operands.size());
+        for (int i = 1; i < call.operands.size(); i++) {
+            arguments.add(operandValue(call.operands, i, registers));
+        }
+        if (state.fallbackInstance == null) {
+            state.fallbackInstance = new ObjectInstance(artifact.typeSnapshot);
+        }
+        state.interpretedCalls++;
+        Object result = fallbackInterpreter.invokeMethod(method, state.fallbackInstance, arguments);
+        // A single return slot is the call's value, as at an interpreted call site
+        if (result instanceof Map && method.returnSlots != null && method.returnSlots.size() == 1) {
+            return ((Map<?, ?>) result).get(method.returnSlots.get(0).name);
+        }
+        return result;
+    }
+
+    private Method findMethod(Artifact artifact, Function function) {
+        if (artifact == null || artifact.typeSnapshot == null || artifact.typeSnapshot.methods == null) return null;
+        if (function == null || function.lambdaBlock || function.name == null) return null;
+        int parameterCount = function.parameters != null ? function.parameters.size() : 0;
+        for (Method method : artifact.typeSnapshot.methods) {
+            if (method == null || method.isBuiltin || !function.name.equals(method.methodName)) continue;
+            int methodParameters = method.parameters != null ? method.parameters.size() : 0;
+            if (methodParameters == parameterCount) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Why a function cannot run natively, or null when every instruction is
+     * supported. Cached on the function. Callees reached through CALL are
+     * checked when they are called; pipeline lambdas are checked with the
+     * function that uses them.
+     */
+    private String interpretedReason(Function function, Map<String, Function> functionIndex) {
+        if (function.nativeChecked) {
+            return function.interpretedReason;
+        }
+        function.nativeChecked = true;
+        function.interpretedReason = null;
+        String reason = null;
+        if (function.instructions != null) {
+            for (Instruction inst : function.instructions) {
+                reason = interpretedReason(inst, functionIndex);
+                if (reason != null) break;
+            }
+        }
+        if (reason == null && returnsThroughSlots(function)) {
+            reason = "Slot returns are not yet natively executed: " + function.name;
+        }
+        function.interpretedReason = reason;
+        return reason;
+    }
+
+    /**
+     * Whether a function sets return slots without a SLOT_RET. The Lowerer
+     * ends such functions with RETURN null, so running them natively would
+     * hand their caller none instead of the slot value.
+     */
+    static boolean returnsThroughSlots(Function function) {
+        if (function.instructions == null) return false;
+        boolean setsSlots = false;
+        for (Instruction inst : function.instructions) {
+            if (inst == null) continue;
+            if (inst.opcode == Opcode.SLOT_RET) return false;
+            if (inst.opcode == Opcode.SLOT_SET) setsSlots = true;
+        }
+        return setsSlots;
+    }
+
+    private String interpretedReason(Instruction inst, Map<String, Function> functionIndex) {
+        if (inst == null || inst.operands == null) return null;
+        if (INTERPRETED_OPCODES.contains(inst.opcode)) {
+            return "Opcode not yet natively executed: " + inst.opcode;
+        }
+        switch (inst.opcode) {
+            case CALL: {
+                if (inst.operands.isEmpty()) return null;
+                Operand target = inst.operands.get(0);
+                if (target.kind == OperandKind.FUNCTION && findFunction(functionIndex, String.valueOf(target.value)) == null) {
+                    return "Unknown function: " + target.value;
+                }
+                return null;
+            }
+            case MAP:
+            case FILTER:
+            case REDUCE:
+            case FILTER_MAP:
+            case FILTER_MAP_REDUCE:
+                for (int i = 1; i < inst.operands.size(); i++) {
+                    Operand operand = inst.operands.get(i);
+                    if (operand.kind != OperandKind.FUNCTION) continue;
+                    Function lambda = findFunction(functionIndex, String.valueOf(operand.value));
+                    if (lambda == null) {
+                        return inst.opcode + " function not found: " + operand.value;
+                    }
+                    String reason = interpretedReason(lambda, functionIndex);
+                    if (reason != null) return reason;
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Why an entry that compiles must still run as a whole program: it can
+     * reach a function that is handed to the interpreter, and native code it
+     * reaches can still fall back at run time. That fallback reruns the whole
+     * program and would repeat the hand-off. Null when the two cannot meet.
+     */
+    private String programFallbackReason(
+        Function entry,
+        Map<String, Function> functionIndex,
+        Artifact artifact,
+        Interpreter fallbackInterpreter
+    ) {
+        String handedOff = null;
+        String runtimeReason = null;
+        Set<Function> seen = new HashSet<Function>();
+        Deque<Function> pending = new ArrayDeque<Function>();
+        seen.add(entry);
+        pending.push(entry);
+        while (!pending.isEmpty()) {
+            Function function = pending.pop();
+            if (function.instructions == null) continue;
+            for (int pc = 0; pc < function.instructions.size(); pc++) {
+                Instruction inst = function.instructions.get(pc);
+                if (inst == null || inst.operands == null) continue;
+                if (runtimeReason == null) {
+                    runtimeReason = runtimeFallbackReason(function, pc, inst);
+                }
+                List<Function> callees = calleesOf(inst, functionIndex);
+                for (Function callee : callees) {
+                    if (inst.opcode == Opcode.CALL && interpretedReason(callee, functionIndex) != null) {
+                        if (handedOff == null) handedOff = callee.name;
+                        if (runtimeReason == null && (fallbackInterpreter == null || findMethod(artifact, callee) == null)) {
+                            runtimeReason = "No interpreted method for " + callee.name;
+                        }
+                    } else if (seen.add(callee)) {
+                        pending.push(callee);
+                    }
+                }
+            }
+            if (handedOff != null && runtimeReason != null) {
+                return "CodP-TAC entry reaches interpreted function " + handedOff
+                    + " but may fall back at run time: " + runtimeReason;
+            }
+        }
+        return null;
+    }
+
+    /** Functions an instruction may run; every function when the target is computed. */
+    private List<Function> calleesOf(Instruction inst, Map<String, Function> functionIndex) {
+        int first;
+        int last;
+        if (inst.opcode == Opcode.CALL) {
+            first = 0;
+            last = Math.min(1, inst.operands.size());
+        } else if (inst.opcode == Opcode.MAP || inst.opcode == Opcode.FILTER || inst.opcode == Opcode.REDUCE
+            || inst.opcode == Opcode.FILTER_MAP || inst.opcode == Opcode.FILTER_MAP_REDUCE) {
+            first = 1;
+            last = inst.operands.size();
+        } else {
+            return Collections.emptyList();
+        }
+        List<Function> callees = new ArrayList<Function>();
+        for (int i = first; i < last; i++) {
+            Operand operand = inst.operands.get(i);
+            if (operand == null) continue;
+            if (operand.kind == OperandKind.REGISTER) {
+                return new ArrayList<Function>(functionIndex.values());
+            }
+            Function callee = findFunction(functionIndex, String.valueOf(operand.value));
+            if (callee != null) callees.add(callee);
+        }
+        return callees;
+    }
+
+    /** Why a natively run instruction might fall back depending on its operands, or null. */
+    private String runtimeFallbackReason(Function function, int pc, Instruction inst) {
+        switch (inst.opcode) {
+            case RANGE:
+            case RANGE_Q:
+            case RANGE_S:
+            case RANGE_L:
+            case RANGE_LS:
+                for (int i = 0; i < 2 && i < inst.operands.size(); i++) {
+                    Operand bound = inst.operands.get(i);
+                    if (bound == null || bound.kind == OperandKind.REGISTER || !isNumericLike(bound.value)) {
+                        return "Range bounds may be non-numeric";
+                    }
+                }
+                return null;
+            case BRANCH:
+            case BRANCH_IF:
+                return function.jumpTargets[pc] < 0 ? "Branch label computed at run time" : null;
+            case LAZY_SET:
+                return "LAZY_SET target may not be a list";
+            case MAP:
+            case FILTER:
+            case REDUCE:
+            case FILTER_MAP:
+            case FILTER_MAP_REDUCE:
+                return inst.opcode + " source may not be a sequence";
+            case CALL:
+                return !inst.operands.isEmpty() && inst.operands.get(0) != null
+                    && inst.operands.get(0).kind == OperandKind.REGISTER
+                    ? "Call target computed at run time" : null;
+            default:
+                return null;
+        }
+    }
+
     private Function findEntry(Unit unit, Map<String, Function> functionIndex) {
         if (unit.entryFunction != null) {
             Function explicit = findFunction(functionIndex, unit.entryFunction);
@@ -597,53 +752,54 @@ public final class Executor {
         return functionIndex.get(name);
     }
 
-    private Object operandValue(List<Operand> operands, int index, Map<String, Object> registers) {
+    private Object[] newFrame(Function function) {
+        return new Object[function.registerCount];
+    }
+
+    private void bindArgument(Function function, Object[] frame, int index, Object value) {
+        if (function.parameterSlots == null || index >= function.parameterSlots.length) return;
+        int slot = function.parameterSlots[index];
+        if (slot >= 0) {
+            frame[slot] = value;
+        }
+    }
+
+    private void store(Object[] registers, Instruction inst, Object value) {
+        if (inst.destSlot >= 0) {
+            registers[inst.destSlot] = value;
+        }
+    }
+
+    private Object operandValue(List<Operand> operands, int index, Object[] registers) {
         if (operands == null || index >= operands.size()) return null;
         Operand operand = operands.get(index);
         if (operand == null) return null;
-        if (operand.kind == OperandKind.REGISTER && operand.value instanceof String) {
-            return registers.get(operand.value);
+        if (operand.kind == OperandKind.REGISTER) {
+            return operand.slot >= 0 ? registers[operand.slot] : null;
         }
         return operand.value;
     }
 
-    private Map<String, Integer> indexLabels(Function function) {
-        if (function == null || function.instructions == null || function.instructions.isEmpty()) {
-            return Collections.emptyMap();
-        }
-        Map<String, Integer> labels = new HashMap<String, Integer>();
-        for (int i = 0; i < function.instructions.size(); i++) {
-            Instruction inst = function.instructions.get(i);
-            if (inst == null) continue;
-            if (inst.opcode == Opcode.NOP && inst.dest != null) {
-                labels.put(inst.dest, Integer.valueOf(i));
-            }
-        }
-        return labels;
+    private int jumpTarget(
+        Function function,
+        int pc,
+        Instruction inst,
+        int labelOperand,
+        Object[] registers
+    ) {
+        int target = function.jumpTargets[pc];
+        if (target >= 0) return target;
+        // Labels computed into a register are resolved against the link-time label table.
+        String label = asLabel(operandValue(inst.operands, labelOperand, registers));
+        Integer resolved = label != null ? function.labels.get(label) : null;
+        return resolved != null ? resolved.intValue() : -1;
     }
 
     private String asLabel(Object value) {
         return value == null ? null : String.valueOf(value);
     }
 
-    private boolean isMath(Opcode opcode) {
-        return opcode == Opcode.ADD
-            || opcode == Opcode.SUB
-            || opcode == Opcode.MUL
-            || opcode == Opcode.DIV
-            || opcode == Opcode.MOD;
-    }
-
-    private boolean isCompare(Opcode opcode) {
-        return opcode == Opcode.EQ
-            || opcode == Opcode.NE
-            || opcode == Opcode.GT
-            || opcode == Opcode.LT
-            || opcode == Opcode.GTE
-            || opcode == Opcode.LTE;
-    }
-
-    private Object evaluateMath(Opcode opcode, Object a, Object b) {
+    static Object evaluateMath(Opcode opcode, Object a, Object b) {
         if (isFloatingLike(a) || isFloatingLike(b)) {
             double left = toDouble(a);
             double right = toDouble(b);
@@ -711,7 +867,7 @@ public final class Executor {
         return BigInteger.ZERO;
     }
 
-    private Boolean evaluateCompare(Opcode opcode, Object a, Object b) {
+    static Boolean evaluateCompare(Opcode opcode, Object a, Object b) {
         if (isFloatingLike(a) || isFloatingLike(b)) {
             double left = toDouble(a);
             double right = toDouble(b);
@@ -748,239 +904,417 @@ public final class Executor {
         return false;
     }
 
+    /**
+     * Pull-based element source for the pipeline opcodes. next() yields the
+     * following element, END once exhausted, or FALLBACK_SENTINEL when a stage
+     * lambda could not be executed natively.
+     */
+    private interface Cursor {
+        Object next();
+    }
+
+    private static final class ListCursor implements Cursor {
+        private final List<?> list;
+        private int index;
+
+        ListCursor(List<?> list) {
+            this.list = list;
+        }
+
+        @Override
+        public Object next() {
+            return index < list.size() ? list.get(index++) : END;
+        }
+    }
+
+    private final class LongRangeCursor implements Cursor {
+        private final long end;
+        private final long step;
+        private long current;
+        private boolean exhausted;
+
+        LongRangeCursor(Range range) {
+            this.end = range.end;
+            this.step = range.step;
+            this.current = range.start;
+            this.exhausted = step == 0L;
+        }
+
+        @Override
+        public Object next() {
+            if (exhausted || (step > 0L ? current > end : current < end)) {
+                return END;
+            }
+            long value = current;
+            if (willOverflowAdd(current, step)) {
+                exhausted = true;
+            } else {
+                current += step;
+            }
+            return Long.valueOf(value);
+        }
+    }
+
+    private static final class BigRangeCursor implements Cursor {
+        private final BigInteger end;
+        private final BigInteger step;
+        private BigInteger current;
+
+        BigRangeCursor(Range range) {
+            this.end = range.bigEnd;
+            this.step = range.bigStep;
+            this.current = range.bigStart;
+        }
+
+        @Override
+        public Object next() {
+            if (step.signum() == 0) return END;
+            if (step.signum() > 0 ? current.compareTo(end) > 0 : current.compareTo(end) < 0) {
+                return END;
+            }
+            BigInteger value = current;
+            current = current.add(step);
+            return value;
+        }
+    }
+
+    /**
+     * A MAP / FILTER / FILTER_MAP stage marked LAZY by the optimizer. Its only
+     * consumer is the next pipeline instruction, which pulls elements through
+     * it instead of receiving a materialized list.
+     */
+    private static final class Pipeline {
+        final Object source;
+        final Function predicate;
+        final Function mapper;
+
+        Pipeline(Object source, Function predicate, Function mapper) {
+            this.source = source;
+            this.predicate = predicate;
+            this.mapper = mapper;
+        }
+    }
+
+    private final class StageCursor implements Cursor {
+        private final Cursor source;
+        private final Function predicate;
+        private final Function mapper;
+        private final Unit unit;
+        private final Interpreter fallbackInterpreter;
+        private final Artifact artifact;
+        private final Map<String, Function> functionIndex;
+        private final RuntimeState state;
+
+        StageCursor(
+            Cursor source,
+            Function predicate,
+            Function mapper,
+            Unit unit,
+            Interpreter fallbackInterpreter,
+            Artifact artifact,
+            Map<String, Function> functionIndex,
+            RuntimeState state
+        ) {
+            this.source = source;
+            this.predicate = predicate;
+            this.mapper = mapper;
+            this.unit = unit;
+            this.fallbackInterpreter = fallbackInterpreter;
+            this.artifact = artifact;
+            this.functionIndex = functionIndex;
+            this.state = state;
+        }
+
+        @Override
+        public Object next() {
+            while (true) {
+                Object element = source.next();
+                if (element == END || element == FALLBACK_SENTINEL) {
+                    return element;
+                }
+                if (predicate != null) {
+                    Object keep = invokeLambda(
+                        unit, predicate, element, null, fallbackInterpreter, artifact, functionIndex, state
+                    );
+                    if (keep == FALLBACK_SENTINEL) {
+                        return FALLBACK_SENTINEL;
+                    }
+                    if (!isTruthy(keep)) {
+                        continue;
+                    }
+                }
+                if (mapper == null) {
+                    return element;
+                }
+                return invokeLambda(
+                    unit, mapper, element, null, fallbackInterpreter, artifact, functionIndex, state
+                );
+            }
+        }
+    }
+
     private Range asRange(Object value) {
         if (value instanceof Range) return (Range) value;
-        return new Range(BigInteger.ZERO, BigInteger.ZERO, BigInteger.ONE);
+        return Range.of(BigInteger.ZERO, BigInteger.ZERO, BigInteger.ONE);
     }
 
-    private List<Object> asSequence(Object value) {
+    private boolean isSequence(Object value) {
+        return value instanceof List || value instanceof Range || value instanceof Pipeline;
+    }
+
+    private Cursor openCursor(
+        Object value,
+        Unit unit,
+        Interpreter fallbackInterpreter,
+        Artifact artifact,
+        Map<String, Function> functionIndex,
+        RuntimeState state
+    ) {
         if (value instanceof List) {
-            @SuppressWarnings("unchecked")
-            List<Object> list = (List<Object>) value;
-            return list;
+            return new ListCursor((List<?>) value);
         }
         if (value instanceof Range) {
-            return materializeRange((Range) value);
+            Range range = (Range) value;
+            return range.wide ? new BigRangeCursor(range) : new LongRangeCursor(range);
+        }
+        if (value instanceof Pipeline) {
+            Pipeline pipeline = (Pipeline) value;
+            return new StageCursor(
+                openCursor(pipeline.source, unit, fallbackInterpreter, artifact, functionIndex, state),
+                pipeline.predicate,
+                pipeline.mapper,
+                unit,
+                fallbackInterpreter,
+                artifact,
+                functionIndex,
+                state
+            );
         }
         return null;
     }
 
-    private List<Object> materializeRange(Range range) {
+    private Object invokeLambda(
+        Unit unit,
+        Function lambda,
+        Object first,
+        Object second,
+        Interpreter fallbackInterpreter,
+        Artifact artifact,
+        Map<String, Function> functionIndex,
+        RuntimeState state
+    ) {
+        Object[] frame = newFrame(lambda);
+        bindArgument(lambda, frame, 0, first);
+        bindArgument(lambda, frame, 1, second);
+        return executeFunction(unit, lambda, frame, fallbackInterpreter, artifact, functionIndex, state);
+    }
+
+    /**
+     * Runs a MAP / FILTER / FILTER_MAP stage. LAZY stages hand a Pipeline to
+     * their single consumer; all others are drained into a list.
+     */
+    private Object runStage(
+        Unit unit,
+        Instruction inst,
+        Object source,
+        Function predicate,
+        Function mapper,
+        Interpreter fallbackInterpreter,
+        Artifact artifact,
+        Map<String, Function> functionIndex,
+        RuntimeState state
+    ) {
+        if (inst.flags.contains(Flag.LAZY)) {
+            return new Pipeline(source, predicate, mapper);
+        }
+        Cursor cursor = new StageCursor(
+            openCursor(source, unit, fallbackInterpreter, artifact, functionIndex, state),
+            predicate,
+            mapper,
+            unit,
+            fallbackInterpreter,
+            artifact,
+            functionIndex,
+            state
+        );
         List<Object> out = new ArrayList<Object>();
-        if (range == null || range.step == null || range.step.equals(BigInteger.ZERO)) return out;
-        BigInteger current = range.start;
-        BigInteger step = range.step;
         while (true) {
-            if (step.compareTo(BigInteger.ZERO) >= 0) {
-                if (current.compareTo(range.end) > 0) break;
-            } else {
-                if (current.compareTo(range.end) < 0) break;
+            Object element = cursor.next();
+            if (element == END) {
+                return out;
             }
-            out.add(current);
-            current = current.add(step);
+            if (element == FALLBACK_SENTINEL) {
+                return FALLBACK_SENTINEL;
+            }
+            out.add(element);
         }
-        return out;
     }
 
     private Object runMap(
         Unit unit,
         Instruction inst,
-        Map<String, Object> registers,
+        Object[] registers,
         Interpreter fallbackInterpreter,
         Artifact artifact,
         Map<String, Function> functionIndex,
         RuntimeState state
     ) {
-        List<Object> source = asSequence(operandValue(inst.operands, 0, registers));
-        if (source == null) {
-            return fallback(artifact, fallbackInterpreter, "MAP source is not a sequence", state);
+        Object source = operandValue(inst.operands, 0, registers);
+        if (!isSequence(source)) {
+            return fallback("MAP source is not a sequence", state);
         }
         String mapperName = String.valueOf(operandValue(inst.operands, 1, registers));
         Function mapper = findFunction(functionIndex, mapperName);
         if (mapper == null) {
-            return fallback(artifact, fallbackInterpreter, "MAP function not found: " + mapperName, state);
-        }
-        List<Object> out = new ArrayList<Object>(source.size());
-        for (int i = 0; i < source.size(); i++) {
-            Object element = source.get(i);
-            List<Object> args = new ArrayList<Object>();
-            args.add(element);
-            Object mapped = executeFunction(
-                unit,
-                mapper,
-                args,
-                fallbackInterpreter,
-                artifact,
-                functionIndex,
-                state
-            );
-            if (mapped == FALLBACK_SENTINEL) {
-                return FALLBACK_SENTINEL;
-            }
-            out.add(mapped);
+            return fallback("MAP function not found: " + mapperName, state);
         }
-        return out;
+        return runStage(unit, inst, source, null, mapper, fallbackInterpreter, artifact, functionIndex, state);
     }
 
     private Object runFilter(
         Unit unit,
         Instruction inst,
-        Map<String, Object> registers,
+        Object[] registers,
         Interpreter fallbackInterpreter,
         Artifact artifact,
         Map<String, Function> functionIndex,
         RuntimeState state
     ) {
-        List<Object> source = asSequence(operandValue(inst.operands, 0, registers));
-        if (source == null) {
-            return fallback(artifact, fallbackInterpreter, "FILTER source is not a sequence", state);
+        Object source = operandValue(inst.operands, 0, registers);
+        if (!isSequence(source)) {
+            return fallback("FILTER source is not a sequence", state);
         }
         String predicateName = String.valueOf(operandValue(inst.operands, 1, registers));
         Function predicate = findFunction(functionIndex, predicateName);
         if (predicate == null) {
-            return fallback(
-                artifact,
-                fallbackInterpreter,
-                "FILTER function not found: " + predicateName,
-                state
-            );
+            return fallback("FILTER function not found: " + predicateName, state);
         }
-        List<Object> out = new ArrayList<Object>();
-        for (int i = 0; i < source.size(); i++) {
-            Object element = source.get(i);
-            List<Object> args = new ArrayList<Object>();
-            args.add(element);
-            Object keep = executeFunction(
-                unit,
-                predicate,
-                args,
-                fallbackInterpreter,
-                artifact,
-                functionIndex,
-                state
-            );
-            if (keep == FALLBACK_SENTINEL) {
-                return FALLBACK_SENTINEL;
-            }
-            if (isTruthy(keep)) {
-                out.add(element);
-            }
-        }
-        return out;
+        return runStage(unit, inst, source, predicate, null, fallbackInterpreter, artifact, functionIndex, state);
     }
 
-    private Object runReduce(
+    private Object runFilterMap(
         Unit unit,
         Instruction inst,
-        Map<String, Object> registers,
+        Object[] registers,
         Interpreter fallbackInterpreter,
         Artifact artifact,
         Map<String, Function> functionIndex,
         RuntimeState state
     ) {
-        List<Object> source = asSequence(operandValue(inst.operands, 0, registers));
-        if (source == null) {
-            return fallback(artifact, fallbackInterpreter, "REDUCE source is not a sequence", state);
+        Object source = operandValue(inst.operands, 0, registers);
+        if (!isSequence(source)) {
+            return fallback("FILTER_MAP source is not a sequence", state);
         }
-        if (source.isEmpty()) {
-            return null;
-        }
-        String reducerName = String.valueOf(operandValue(inst.operands, 1, registers));
-        Function reducer = findFunction(functionIndex, reducerName);
-        if (reducer == null) {
+        String predicateName = String.valueOf(operandValue(inst.operands, 1, registers));
+        String mapperName = String.valueOf(operandValue(inst.operands, 2, registers));
+        Function predicate = findFunction(functionIndex, predicateName);
+        Function mapper = findFunction(functionIndex, mapperName);
+        if (predicate == null || mapper == null) {
             return fallback(
-                artifact,
-                fallbackInterpreter,
-                "REDUCE function not found: " + reducerName,
+                "FILTER_MAP function not found: predicate=" + predicateName + ", mapper=" + mapperName,
                 state
             );
         }
-        Object accumulator = source.get(0);
-        for (int i = 1; i < source.size(); i++) {
-            List<Object> args = new ArrayList<Object>();
-            args.add(accumulator);
-            args.add(source.get(i));
-            Object reduced = executeFunction(
-                unit,
-                reducer,
-                args,
-                fallbackInterpreter,
-                artifact,
-                functionIndex,
-                state
-            );
-            if (reduced == FALLBACK_SENTINEL) {
-                return FALLBACK_SENTINEL;
-            }
-            accumulator = reduced;
+        return runStage(unit, inst, source, predicate, mapper, fallbackInterpreter, artifact, functionIndex, state);
+    }
+
+    private Object runReduce(
+        Unit unit,
+        Instruction inst,
+        Object[] registers,
+        Interpreter fallbackInterpreter,
+        Artifact artifact,
+        Map<String, Function> functionIndex,
+        RuntimeState state
+    ) {
+        Object source = operandValue(inst.operands, 0, registers);
+        if (!isSequence(source)) {
+            return fallback("REDUCE source is not a sequence", state);
         }
-        return accumulator;
+        String reducerName = String.valueOf(operandValue(inst.operands, 1, registers));
+        Cursor cursor = openCursor(source, unit, fallbackInterpreter, artifact, functionIndex, state);
+        return fold(unit, cursor, reducerName, "REDUCE", fallbackInterpreter, artifact, functionIndex, state);
     }
 
-    private Object runFilterMap(
+    private Object runFilterMapReduce(
         Unit unit,
         Instruction inst,
-        Map<String, Object> registers,
+        Object[] registers,
         Interpreter fallbackInterpreter,
         Artifact artifact,
         Map<String, Function> functionIndex,
         RuntimeState state
     ) {
-        List<Object> source = asSequence(operandValue(inst.operands, 0, registers));
-        if (source == null) {
-            return fallback(artifact, fallbackInterpreter, "FILTER_MAP source is not a sequence", state);
+        Object source = operandValue(inst.operands, 0, registers);
+        if (!isSequence(source)) {
+            return fallback("FILTER_MAP_REDUCE source is not a sequence", state);
         }
         String predicateName = String.valueOf(operandValue(inst.operands, 1, registers));
         String mapperName = String.valueOf(operandValue(inst.operands, 2, registers));
+        String reducerName = String.valueOf(operandValue(inst.operands, 3, registers));
         Function predicate = findFunction(functionIndex, predicateName);
         Function mapper = findFunction(functionIndex, mapperName);
         if (predicate == null || mapper == null) {
             return fallback(
-                artifact,
-                fallbackInterpreter,
-                "FILTER_MAP function not found: predicate=" + predicateName + ", mapper=" + mapperName,
+                "FILTER_MAP_REDUCE function not found: predicate=" + predicateName + ", mapper=" + mapperName,
                 state
             );
         }
-        List<Object> out = new ArrayList<Object>();
-        for (int i = 0; i < source.size(); i++) {
-            Object element = source.get(i);
-            List<Object> predicateArgs = new ArrayList<Object>();
-            predicateArgs.add(element);
-            Object keep = executeFunction(
-                unit,
-                predicate,
-                predicateArgs,
-                fallbackInterpreter,
-                artifact,
-                functionIndex,
+        Cursor cursor = new StageCursor(
+            openCursor(source, unit, fallbackInterpreter, artifact, functionIndex, state),
+            predicate,
+            mapper,
+            unit,
+            fallbackInterpreter,
+            artifact,
+            functionIndex,
+            state
+        );
+        return fold(unit, cursor, reducerName, "FILTER_MAP_REDUCE", fallbackInterpreter, artifact, functionIndex, state);
+    }
+
+    private Object fold(
+        Unit unit,
+        Cursor cursor,
+        String reducerName,
+        String opName,
+        Interpreter fallbackInterpreter,
+        Artifact artifact,
+        Map<String, Function> functionIndex,
+        RuntimeState state
+    ) {
+        Object accumulator = cursor.next();
+        if (accumulator == END) {
+            return null;
+        }
+        if (accumulator == FALLBACK_SENTINEL) {
+            return FALLBACK_SENTINEL;
+        }
+        Function reducer = findFunction(functionIndex, reducerName);
+        if (reducer == null) {
+            return fallback(opName + " function not found: " + reducerName,
                 state
             );
-            if (keep == FALLBACK_SENTINEL) {
+        }
+        while (true) {
+            Object element = cursor.next();
+            if (element == END) {
+                return accumulator;
+            }
+            if (element == FALLBACK_SENTINEL) {
                 return FALLBACK_SENTINEL;
             }
-            if (isTruthy(keep)) {
-                List<Object> mapperArgs = new ArrayList<Object>();
-                mapperArgs.add(element);
-                Object mapped = executeFunction(
-                    unit,
-                    mapper,
-                    mapperArgs,
-                    fallbackInterpreter,
-                    artifact,
-                    functionIndex,
-                    state
-                );
-                if (mapped == FALLBACK_SENTINEL) {
-                    return FALLBACK_SENTINEL;
-                }
-                out.add(mapped);
+            Object reduced = invokeLambda(
+                unit, reducer, accumulator, element, fallbackInterpreter, artifact, functionIndex, state
+            );
+            if (reduced == FALLBACK_SENTINEL) {
+                return FALLBACK_SENTINEL;
             }
+            accumulator = reduced;
         }
-        return out;
     }
 
-    private Object lazyGet(Object source, BigInteger index) {
+    private Object lazyGet(Object source, Object index) {
         if (source instanceof List) {
             @SuppressWarnings("unchecked")
             List<Object> list = (List<Object>) source;
@@ -989,14 +1323,21 @@ public final class Executor {
         }
         if (source instanceof Range) {
             Range range = (Range) source;
+            if (!range.wide && fitsLong(index)) {
+                long size = longRangeSize(range);
+                if (size >= 0L) {
+                    long normalized = normalizeRangeIndex(size, toLong(index));
+                    return Long.valueOf(range.start + range.step * normalized);
+                }
+            }
             BigInteger size = rangeSize(range);
-            BigInteger normalized = normalizeRangeIndex(size, index);
-            return range.start.add(range.step.multiply(normalized));
+            BigInteger normalized = normalizeRangeIndex(size, toBigInt(index));
+            return range.startBig().add(range.stepBig().multiply(normalized));
         }
         return null;
     }
 
-    private Object lazySet(Object source, BigInteger index, Object value) {
+    private Object lazySet(Object source, Object index, Object value) {
         if (source instanceof List) {
             @SuppressWarnings("unchecked")
             List<Object> list = (List<Object>) source;
@@ -1012,7 +1353,16 @@ public final class Executor {
             return Integer.valueOf(((List<?>) source).size());
         }
         if (source instanceof Range) {
-            BigInteger size = rangeSize((Range) source);
+            Range range = (Range) source;
+            if (!range.wide) {
+                long size = longRangeSize(range);
+                if (size >= 0L) {
+                    return size <= Integer.MAX_VALUE
+                        ? (Object) Integer.valueOf((int) size)
+                        : (Object) Long.valueOf(size);
+                }
+            }
+            BigInteger size = rangeSize(range);
             if (size.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) <= 0) {
                 return Integer.valueOf(size.intValue());
             }
@@ -1021,8 +1371,8 @@ public final class Executor {
         return Integer.valueOf(0);
     }
 
-    private int normalizeListIndex(int size, BigInteger index) {
-        int idx = index.intValue();
+    private int normalizeListIndex(int size, Object index) {
+        int idx = (int) toLong(index);
         if (idx < 0) {
             idx = size + idx;
         }
@@ -1032,6 +1382,14 @@ public final class Executor {
         return idx;
     }
 
+    private long normalizeRangeIndex(long size, long index) {
+        long idx = index < 0L ? size + index : index;
+        if (idx < 0L || idx >= size) {
+            throw new ProgramError("Index: " + idx + ", Size: " + size);
+        }
+        return idx;
+    }
+
     private BigInteger normalizeRangeIndex(BigInteger size, BigInteger index) {
         BigInteger idx = index;
         if (idx.compareTo(BigInteger.ZERO) < 0) {
@@ -1043,22 +1401,46 @@ public final class Executor {
         return idx;
     }
 
+    /**
+     * Element count of a long-backed range, or -1 when the count itself does
+     * not fit in a long and the BigInteger path has to take over.
+     */
+    private long longRangeSize(Range range) {
+        long step = range.step;
+        if (step == 0L) return 0L;
+        boolean increasing = step > 0L;
+        if (increasing && range.start > range.end) return 0L;
+        if (!increasing && range.start < range.end) return 0L;
+
+        long low = increasing ? range.start : range.end;
+        long high = increasing ? range.end : range.start;
+        if (step == Long.MIN_VALUE || willOverflowSub(high, low)) return -1L;
+        long steps = (high - low) / Math.abs(step);
+        return steps == Long.MAX_VALUE ? -1L : steps + 1L;
+    }
+
     private BigInteger rangeSize(Range range) {
-        if (range == null || range.step == null || range.step.equals(BigInteger.ZERO)) {
+        if (range == null) {
+            return BigInteger.ZERO;
+        }
+        BigInteger start = range.startBig();
+        BigInteger end = range.endBig();
+        BigInteger step = range.stepBig();
+        if (step.signum() == 0) {
             return BigInteger.ZERO;
         }
-        boolean increasing = range.step.compareTo(BigInteger.ZERO) > 0;
-        if (increasing && range.start.compareTo(range.end) > 0) return BigInteger.ZERO;
-        if (!increasing && range.start.compareTo(range.end) < 0) return BigInteger.ZERO;
+        boolean increasing = step.signum() > 0;
+        if (increasing && start.compareTo(end) > 0) return BigInteger.ZERO;
+        if (!increasing && start.compareTo(end) < 0) return BigInteger.ZERO;
 
         BigInteger distance = increasing
-            ? range.end.subtract(range.start)
-            : range.start.subtract(range.end);
-        BigInteger stride = range.step.abs();
+            ? end.subtract(start)
+            : start.subtract(end);
+        BigInteger stride = step.abs();
         return distance.divide(stride).add(BigInteger.ONE);
     }
 
-    private boolean isTruthy(Object value) {
+    static boolean isTruthy(Object value) {
         if (value == null) return false;
         if (value instanceof Boolean) return ((Boolean) value).booleanValue();
         if (value instanceof Number) return ((Number) value).doubleValue() != 0.0d;
@@ -1081,23 +1463,43 @@ public final class Executor {
         }
     }
 
-    private List<BigInteger> take(Range range, BigInteger n) {
-        List<BigInteger> out = new ArrayList<BigInteger>();
+    private List<Object> take(Range range, BigInteger n) {
+        List<Object> out = new ArrayList<Object>();
         if (range == null || n == null || n.compareTo(BigInteger.ZERO) <= 0) return out;
 
-        BigInteger current = range.start;
+        if (!range.wide) {
+            long remaining = n.bitLength() < 64 ? n.longValue() : Long.MAX_VALUE;
+            long current = range.start;
+            while (remaining > 0L) {
+                if (range.step >= 0L && current > range.end) break;
+                if (range.step < 0L && current < range.end) break;
+                out.add(Long.valueOf(current));
+                if (willOverflowAdd(current, range.step)) break;
+                current += range.step;
+                remaining--;
+            }
+            return out;
+        }
+
+        BigInteger current = range.bigStart;
         BigInteger remaining = n;
         while (remaining.compareTo(BigInteger.ZERO) > 0) {
-            if (range.step.compareTo(BigInteger.ZERO) >= 0 && current.compareTo(range.end) > 0) break;
-            if (range.step.compareTo(BigInteger.ZERO) < 0 && current.compareTo(range.end) < 0) break;
+            if (range.bigStep.compareTo(BigInteger.ZERO) >= 0 && current.compareTo(range.bigEnd) > 0) break;
+            if (range.bigStep.compareTo(BigInteger.ZERO) < 0 && current.compareTo(range.bigEnd) < 0) break;
             out.add(current);
-            current = current.add(range.step);
+            current = current.add(range.bigStep);
             remaining = remaining.subtract(BigInteger.ONE);
         }
         return out;
     }
 
-    private BigInteger toBigInt(Object value) {
+    private boolean fitsLong(Object value) {
+        if (value instanceof BigInteger) return ((BigInteger) value).bitLength() < 64;
+        if (value == null || value instanceof Number) return true;
+        return isLongLike(value);
+    }
+
+    private static BigInteger toBigInt(Object value) {
         if (value == null) return BigInteger.ZERO;
         if (value instanceof BigInteger) return (BigInteger) value;
         if (value instanceof Number) return BigInteger.valueOf(((Number) value).longValue());
@@ -1108,7 +1510,7 @@ public final class Executor {
         }
     }
 
-    private boolean isFloatingLike(Object value) {
+    private static boolean isFloatingLike(Object value) {
         if (value instanceof Float || value instanceof Double) return true;
         if (value instanceof Number) return false;
         if (value == null) return false;
@@ -1116,7 +1518,7 @@ public final class Executor {
         return text.indexOf('.') >= 0 || text.indexOf('e') >= 0 || text.indexOf('E') >= 0;
     }
 
-    private boolean isLongLike(Object value) {
+    private static boolean isLongLike(Object value) {
         if (value == null) return false;
         if (value instanceof Float || value instanceof Double) return false;
         if (value instanceof Number || value instanceof BigInteger) return true;
@@ -1128,7 +1530,7 @@ public final class Executor {
         }
     }
 
-    private long toLong(Object value) {
+    private static long toLong(Object value) {
         if (value == null) return 0L;
         if (value instanceof Number) return ((Number) value).longValue();
         if (value instanceof BigInteger) return ((BigInteger) value).longValue();
@@ -1139,7 +1541,7 @@ public final class Executor {
         }
     }
 
-    private double toDouble(Object value) {
+    private static double toDouble(Object value) {
         if (value == null) return 0.0d;
         if (value instanceof Number) return ((Number) value).doubleValue();
         try {
@@ -1149,15 +1551,15 @@ public final class Executor {
         }
     }
 
-    private boolean willOverflowAdd(long a, long b) {
+    private static boolean willOverflowAdd(long a, long b) {
         return (b > 0L && a > Long.MAX_VALUE - b) || (b < 0L && a < Long.MIN_VALUE - b);
     }
 
-    private boolean willOverflowSub(long a, long b) {
+    private static boolean willOverflowSub(long a, long b) {
         return (b < 0L && a > Long.MAX_VALUE + b) || (b > 0L && a < Long.MIN_VALUE + b);
     }
 
-    private boolean willOverflowMul(long a, long b) {
+    private static boolean willOverflowMul(long a, long b) {
         if (a == 0L || b == 0L) return false;
         if (a == Long.MIN_VALUE && b == -1L) return true;
         if (b == Long.MIN_VALUE && a == -1L) return true;
@@ -2,6 +2,7 @@ package cod.ptac;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public final class Function {
     public String name;
@@ -9,4 +10,18 @@ public final class Function {
     public List<Instruction> instructions = new ArrayList<Instruction>();
     public boolean lambdaBlock;
     public int closureLevel;
+
+    // Filled in by Linker; not part of the serialized artifact.
+    public Map<String, Integer> registerSlots;
+    public int[] parameterSlots;
+    public int registerCount;
+    public Map<String, Integer> labels;
+    public int[] jumpTargets;
+
+    // Filled in by Executor the first time the function is reached.
+    public boolean nativeChecked;
+    public String interpretedReason;
+
+    // Filled in by BytecodeCompiler; -1 when the function is not compiled.
+    public int compiledIndex = -1;
 }
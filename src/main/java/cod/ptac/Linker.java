@@ -0,0 +1,148 @@
+package cod.ptac;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves symbolic register names into per-function slot numbers and branch
+ * labels into instruction indexes, so the Executor can address its register
+ * file by array index and jump without label lookups. Runs once when an
+ * Artifact is compiled or decoded; linking an already linked unit recomputes
+ * the same layout from the register and label names.
+ */
+public final class Linker {
+    private Linker() {}
+
+    public static Unit link(Unit unit) {
+        if (unit == null || unit.functions == null) return unit;
+        unit.bytecode = null;
+        for (Function function : unit.functions) {
+            if (function != null) {
+                link(function);
+            }
+        }
+        return unit;
+    }
+
+    public static Unit ensureLinked(Unit unit) {
+        if (unit == null || unit.functions == null) return unit;
+        for (Function function : unit.functions) {
+            if (function != null && !isLinked(function)) {
+                link(function);
+            }
+        }
+        return unit;
+    }
+
+    public static boolean isLinked(Function function) {
+        return function != null && function.registerSlots != null;
+    }
+
+    public static void link(Function function) {
+        if (function == null) return;
+        Map<String, Integer> slots = new HashMap<String, Integer>();
+
+        List<String> parameters = function.parameters;
+        int parameterCount = parameters != null ? parameters.size() : 0;
+        int[] parameterSlots = new int[parameterCount];
+        for (int i = 0; i < parameterCount; i++) {
+            parameterSlots[i] = slotFor(parameters.get(i), slots);
+        }
+
+        if (function.instructions != null) {
+            List<Instruction> rewritten = new ArrayList<Instruction>(function.instructions.size());
+            for (Instruction inst : function.instructions) {
+                rewritten.add(linkInstruction(inst, slots));
+            }
+            function.instructions = rewritten;
+        }
+
+        Map<String, Integer> labels = indexLabels(function.instructions);
+        function.labels = labels;
+        function.jumpTargets = resolveJumpTargets(function.instructions, labels);
+        function.parameterSlots = parameterSlots;
+        function.registerCount = slots.size();
+        function.registerSlots = slots;
+        function.nativeChecked = false;
+        function.compiledIndex = -1;
+    }
+
+    private static Map<String, Integer> indexLabels(List<Instruction> instructions) {
+        Map<String, Integer> labels = new HashMap<String, Integer>();
+        if (instructions == null) return labels;
+        for (int i = 0; i < instructions.size(); i++) {
+            Instruction inst = instructions.get(i);
+            if (inst == null) continue;
+            if (inst.opcode == Opcode.NOP && inst.dest != null) {
+                labels.put(inst.dest, Integer.valueOf(i));
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * Jump target per instruction index, or -1 when the instruction is not a
+     * branch or its label is only known at run time.
+     */
+    private static int[] resolveJumpTargets(List<Instruction> instructions, Map<String, Integer> labels) {
+        int size = instructions != null ? instructions.size() : 0;
+        int[] targets = new int[size];
+        for (int i = 0; i < size; i++) {
+            targets[i] = -1;
+            Instruction inst = instructions.get(i);
+            if (inst == null || inst.operands == null) continue;
+            int labelIndex;
+            if (inst.opcode == Opcode.BRANCH) {
+                labelIndex = 0;
+            } else if (inst.opcode == Opcode.BRANCH_IF) {
+                labelIndex = 1;
+            } else {
+                continue;
+            }
+            if (labelIndex >= inst.operands.size()) continue;
+            Operand label = inst.operands.get(labelIndex);
+            if (label == null || label.kind == OperandKind.REGISTER || label.value == null) continue;
+            Integer target = labels.get(String.valueOf(label.value));
+            if (target != null) {
+                targets[i] = target.intValue();
+            }
+        }
+        return targets;
+    }
+
+    private static Instruction linkInstruction(Instruction inst, Map<String, Integer> slots) {
+        if (inst == null) return null;
+        List<Operand> operands = null;
+        if (inst.operands != null) {
+            operands = new ArrayList<Operand>(inst.operands.size());
+            for (Operand operand : inst.operands) {
+                operands.add(linkOperand(operand, slots));
+            }
+        }
+        // Label definitions (NOP with a dest) name a position, not a register.
+        int destSlot = inst.dest != null && inst.opcode != Opcode.NOP
+            ? slotFor(inst.dest, slots)
+            : -1;
+        return new Instruction(inst.opcode, inst.dest, destSlot, operands, inst.flags);
+    }
+
+    private static Operand linkOperand(Operand operand, Map<String, Integer> slots) {
+        if (operand == null) return null;
+        if (operand.kind != OperandKind.REGISTER || !(operand.value instanceof String)) {
+            return operand;
+        }
+        String name = (String) operand.value;
+        return Operand.register(name, slotFor(name, slots));
+    }
+
+    private static int slotFor(String name, Map<String, Integer> slots) {
+        if (name == null) return -1;
+        Integer existing = slots.get(name);
+        if (existing != null) return existing.intValue();
+        int slot = slots.size();
+        slots.put(name, Integer.valueOf(slot));
+        return slot;
+    }
+}
@@ -4,16 +4,26 @@ package cod.ptac;
 public final class Operand {
     public final OperandKind kind;
     public final Object value;
+    public final int slot;
 
     private Operand(OperandKind kind, Object value) {
+        this(kind, value, -1);
+    }
+
+    private Operand(OperandKind kind, Object value, int slot) {
         this.kind = kind;
         this.value = value;
+        this.slot = slot;
     }
 
     public static Operand register(String name) {
         return new Operand(OperandKind.REGISTER, name);
     }
 
+    public static Operand register(String name, int slot) {
+        return new Operand(OperandKind.REGISTER, name, slot);
+    }
+
     public static Operand immediate(Object value) {
         return new Operand(OperandKind.IMMEDIATE, value);
     }
@@ -18,6 +18,7 @@ public final class Optimizer {
         this.passes.add(new RangePropagation());
         this.passes.add(new ConstantFolding());
         this.passes.add(new DeadTempElimination());
+        this.passes.add(new PipelineStreaming());
         this.passes.add(new PatternLowering(enableOptionalLowering));
     }
 
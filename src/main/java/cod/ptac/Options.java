@@ -4,7 +4,8 @@ public final class Options {
     public enum Mode {
         INTERPRETER,
         COMPILE_ONLY,
-        COMPILE_EXECUTE
+        COMPILE_EXECUTE,
+        COMPILE_BYTECODE
     }
 
     private final Mode mode;
@@ -34,16 +35,24 @@ public final class Options {
         return new Options(Mode.COMPILE_EXECUTE, fallback);
     }
 
+    public static Options compileBytecodeWithFallback(boolean fallback) {
+        return new Options(Mode.COMPILE_BYTECODE, fallback);
+    }
+
     public Mode getMode() {
         return mode;
     }
 
     public boolean isCompileEnabled() {
-        return mode == Mode.COMPILE_ONLY || mode == Mode.COMPILE_EXECUTE;
+        return mode == Mode.COMPILE_ONLY || mode == Mode.COMPILE_EXECUTE || mode == Mode.COMPILE_BYTECODE;
     }
 
     public boolean isCompileExecuteEnabled() {
-        return mode == Mode.COMPILE_EXECUTE;
+        return mode == Mode.COMPILE_EXECUTE || mode == Mode.COMPILE_BYTECODE;
+    }
+
+    public boolean isBytecodeEnabled() {
+        return mode == Mode.COMPILE_BYTECODE;
     }
 
     public boolean isFallbackEnabled() {
@@ -58,6 +67,11 @@ public final class Options {
         if ("compile_execute".equals(normalized) || "compile-execute".equals(normalized)) {
             return Mode.COMPILE_EXECUTE;
         }
+        if ("bytecode".equals(normalized)
+            || "compile_bytecode".equals(normalized)
+            || "compile-bytecode".equals(normalized)) {
+            return Mode.COMPILE_BYTECODE;
+        }
         return Mode.COMPILE_EXECUTE;
     }
 
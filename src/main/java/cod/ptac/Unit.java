@@ -8,4 +8,7 @@ public final class Unit {
     public String className;
     public String entryFunction;
     public List<Function> functions = new ArrayList<Function>();
+
+    // Filled in by BytecodeCompiler; not part of the serialized artifact.
+    public BytecodeImage bytecode;
 }
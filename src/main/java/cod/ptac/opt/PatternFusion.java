@@ -3,7 +3,9 @@ package cod.ptac.opt;
 import cod.ptac.*;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public final class PatternFusion implements Optimization {
     @Override
@@ -31,10 +33,37 @@ public final class PatternFusion implements Optimization {
 
                 rewritten.add(current);
             }
-            function.instructions = rewritten;
+            function.instructions = fuseReductions(rewritten);
         }
     }
 
+    /**
+     * FILTER_MAP whose result only feeds the following REDUCE becomes a single
+     * FILTER_MAP_REDUCE, so no intermediate list is built.
+     */
+    private List<Instruction> fuseReductions(List<Instruction> instructions) {
+        Map<String, Integer> reads = countRegisterReads(instructions);
+        List<Instruction> rewritten = new ArrayList<Instruction>();
+        for (int i = 0; i < instructions.size(); i++) {
+            Instruction current = instructions.get(i);
+            Instruction next = i + 1 < instructions.size() ? instructions.get(i + 1) : null;
+
+            if (canFuseFilterMapReduce(current, next, reads)) {
+                List<Operand> fusedOps = new ArrayList<Operand>();
+                fusedOps.add(current.operands.get(0)); // source
+                fusedOps.add(current.operands.get(1)); // filter lambda
+                fusedOps.add(current.operands.get(2)); // map lambda
+                fusedOps.add(next.operands.get(1));    // reduce lambda
+                rewritten.add(new Instruction(Opcode.FILTER_MAP_REDUCE, next.dest, fusedOps, next.flags));
+                i++;
+                continue;
+            }
+
+            rewritten.add(current);
+        }
+        return rewritten;
+    }
+
     private boolean canFuseFilterMap(Instruction filter, Instruction map) {
         if (filter == null || map == null) return false;
         if (filter.opcode != Opcode.FILTER) return false;
@@ -44,4 +73,34 @@ public final class PatternFusion implements Optimization {
         Operand mapSource = map.operands.get(0);
         return mapSource.kind == OperandKind.REGISTER && filter.dest.equals(mapSource.value);
     }
+
+    private boolean canFuseFilterMapReduce(Instruction filterMap, Instruction reduce, Map<String, Integer> reads) {
+        if (filterMap == null || reduce == null) return false;
+        if (filterMap.opcode != Opcode.FILTER_MAP) return false;
+        if (reduce.opcode != Opcode.REDUCE) return false;
+        if (filterMap.dest == null) return false;
+        if (filterMap.operands == null || filterMap.operands.size() < 3) return false;
+        if (reduce.operands == null || reduce.operands.size() < 2) return false;
+        Operand reduceSource = reduce.operands.get(0);
+        if (reduceSource.kind != OperandKind.REGISTER || !filterMap.dest.equals(reduceSource.value)) {
+            return false;
+        }
+        Integer count = reads.get(filterMap.dest);
+        return count != null && count.intValue() == 1;
+    }
+
+    static Map<String, Integer> countRegisterReads(List<Instruction> instructions) {
+        Map<String, Integer> reads = new HashMap<String, Integer>();
+        for (Instruction inst : instructions) {
+            if (inst == null || inst.operands == null) continue;
+            for (Operand operand : inst.operands) {
+                if (operand != null && operand.kind == OperandKind.REGISTER && operand.value instanceof String) {
+                    String name = (String) operand.value;
+                    Integer count = reads.get(name);
+                    reads.put(name, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+                }
+            }
+        }
+        return reads;
+    }
 }
@@ -0,0 +1,59 @@
+package cod.ptac.opt;
+
+import cod.ptac.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Marks MAP / FILTER / FILTER_MAP stages LAZY when their result is consumed
+ * exactly once, as the source of the very next pipeline instruction. The
+ * Executor then pulls elements through the stage instead of materializing
+ * an intermediate list.
+ */
+public final class PipelineStreaming implements Optimization {
+    @Override
+    public void apply(Unit unit) {
+        if (unit == null || unit.functions == null) return;
+
+        for (Function function : unit.functions) {
+            if (function == null || function.instructions == null) continue;
+            Map<String, Integer> reads = PatternFusion.countRegisterReads(function.instructions);
+            List<Instruction> rewritten = new ArrayList<Instruction>();
+            for (int i = 0; i < function.instructions.size(); i++) {
+                Instruction current = function.instructions.get(i);
+                Instruction next = i + 1 < function.instructions.size()
+                    ? function.instructions.get(i + 1) : null;
+                if (canStream(current, next, reads)) {
+                    current = current.withFlag(Flag.LAZY);
+                }
+                rewritten.add(current);
+            }
+            function.instructions = rewritten;
+        }
+    }
+
+    private boolean canStream(Instruction stage, Instruction consumer, Map<String, Integer> reads) {
+        if (stage == null || consumer == null || stage.dest == null) return false;
+        if (!isStage(stage.opcode)) return false;
+        if (!isStage(consumer.opcode)
+            && consumer.opcode != Opcode.REDUCE
+            && consumer.opcode != Opcode.FILTER_MAP_REDUCE) {
+            return false;
+        }
+        if (consumer.operands == null || consumer.operands.isEmpty()) return false;
+        Operand source = consumer.operands.get(0);
+        if (source == null || source.kind != OperandKind.REGISTER || !stage.dest.equals(source.value)) {
+            return false;
+        }
+        Integer count = reads.get(stage.dest);
+        return count != null && count.intValue() == 1;
+    }
+
+    private boolean isStage(Opcode opcode) {
+        return opcode == Opcode.MAP
+            || opcode == Opcode.FILTER
+            || opcode == Opcode.FILTER_MAP;
+    }
+}
@@ -75,6 +75,9 @@ public class ArrayTracker {
         public int pendingUpdatesCount;
         public int cacheHits;
         public int cacheMisses;
+        public long memoHits;
+        public long memoMisses;
+        public long memoEvictions;
         public int formulaApplications;
         public Set<Integer> arrayIds;
         public boolean wasOptimized;
@@ -92,6 +95,9 @@ public class ArrayTracker {
             this.pendingUpdatesCount = 0;
             this.cacheHits = 0;
             this.cacheMisses = 0;
+            this.memoHits = 0;
+            this.memoMisses = 0;
+            this.memoEvictions = 0;
             this.formulaApplications = 0;
             this.arrayIds = new HashSet<Integer>();
             this.wasOptimized = false;
@@ -111,11 +117,11 @@ public class ArrayTracker {
         public String toString() {
             return String.format(
                 "LoopStats[id=%d, size=%d, sideEffects=%s, iter=%d, time=%.3fms, " +
-                "accesses=%d, mods=%d, cache=%.1f%%, optimized=%s]",
+                "accesses=%d, mods=%d, cache=%.1f%%, memo=%d/%d/%d, optimized=%s]",
                 loopId, estimatedSize, hadSideEffects, iterationCount, 
                 totalExecutionTime / 1_000_000.0,
                 arrayAccessCount, arrayModificationCount, 
-                getCacheHitRate(), wasOptimized
+                getCacheHitRate(), memoHits, memoMisses, memoEvictions, wasOptimized
             );
         }
     }
@@ -289,6 +295,45 @@ public class ArrayTracker {
         }
     }
     
+    /**
+     * Record a formula result served from the array's memo
+     */
+    public static void recordMemoHit(NaturalArray array) {
+        int loopId = getCurrentLoopId();
+        if (loopId == 0) return;
+        
+        LoopStats stats = loopStats.get().get(loopId);
+        if (stats != null) {
+            stats.memoHits++;
+        }
+    }
+    
+    /**
+     * Record a formula result computed and offered to the array's memo
+     */
+    public static void recordMemoMiss(NaturalArray array) {
+        int loopId = getCurrentLoopId();
+        if (loopId == 0) return;
+        
+        LoopStats stats = loopStats.get().get(loopId);
+        if (stats != null) {
+            stats.memoMisses++;
+        }
+    }
+    
+    /**
+     * Record memo entries evicted by the array's memo policy
+     */
+    public static void recordMemoEvictions(NaturalArray array, int count) {
+        int loopId = getCurrentLoopId();
+        if (loopId == 0) return;
+        
+        LoopStats stats = loopStats.get().get(loopId);
+        if (stats != null) {
+            stats.memoEvictions += count;
+        }
+    }
+    
     /**
      * Record formula application
      */
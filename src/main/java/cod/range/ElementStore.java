@@ -0,0 +1,193 @@
+package cod.range;
+
+import cod.math.AutoStackingNumber;
+
+import java.util.ArrayDeque;
+
+/**
+ * Assigned elements of a NaturalArray. For [int] arrays, single-word integers
+ * are packed into pages of primitive longs with a presence bitmap, so filling
+ * a large array keeps no per-element objects; every other value (and every
+ * value of other element types) is kept by reference.
+ *
+ * When cod.range.offheap (or COD_RANGE_OFFHEAP) gives an element count,
+ * at most that many packed elements stay on the heap: pages being written
+ * are kept resident, and a second-chance queue spills the others to a
+ * MappedPageFile. Reads of spilled pages go to the mapping directly and
+ * never bring a page back, so reading never modifies the store.
+ */
+final class ElementStore {
+    private static final int PAGE_SHIFT = 6;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final long RESIDENT_PAGE_LIMIT = residentPageLimit(Settings.get("cod.range.offheap", "COD_RANGE_OFFHEAP"));
+
+    private final boolean packIntegers;
+    private final LongObjectStore references = new LongObjectStore();
+    private LongObjectStore pages;
+    private ArrayDeque<LongPage> residentOrder;
+    private MappedPageFile spilled;
+    private int packedSize;
+
+    ElementStore(boolean packIntegers) {
+        this.packIntegers = packIntegers;
+    }
+
+    boolean containsKey(long key) {
+        return containsLong(key) || references.containsKey(key);
+    }
+
+    /** True when the element is stored as a primitive long. */
+    boolean containsLong(long key) {
+        if (packedSize == 0) return false;
+        long pageNumber = key >> PAGE_SHIFT;
+        LongPage page = (LongPage) pages.get(pageNumber);
+        long present = page != null ? page.present : spilled != null ? spilled.present(pageNumber) : 0L;
+        return (present & (1L << (key & PAGE_MASK))) != 0;
+    }
+
+    /** The packed value of a key for which containsLong holds. */
+    long getLong(long key) {
+        long pageNumber = key >> PAGE_SHIFT;
+        LongPage page = (LongPage) pages.get(pageNumber);
+        if (page == null) {
+            return spilled.getLong(pageNumber, (int) (key & PAGE_MASK));
+        }
+        return page.values[(int) (key & PAGE_MASK)];
+    }
+
+    Object get(long key) {
+        if (containsLong(key)) {
+            return AutoStackingNumber.fromLong(getLong(key));
+        }
+        return references.get(key);
+    }
+
+    void put(long key, Object value) {
+        if (packIntegers && value instanceof AutoStackingNumber
+            && ((AutoStackingNumber) value).getStacks() == 1) {
+            references.remove(key);
+            putLong(key, ((AutoStackingNumber) value).longValue());
+            return;
+        }
+        removeLong(key);
+        references.put(key, value);
+    }
+
+    void remove(long key) {
+        removeLong(key);
+        references.remove(key);
+    }
+
+    int size() {
+        return packedSize + references.size();
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private void putLong(long key, long value) {
+        if (pages == null) {
+            pages = new LongObjectStore();
+        }
+        LongPage page = residentPage(key >> PAGE_SHIFT, true);
+        int offset = (int) (key & PAGE_MASK);
+        long bit = 1L << offset;
+        if ((page.present & bit) == 0) {
+            page.present |= bit;
+            packedSize++;
+        }
+        page.values[offset] = value;
+    }
+
+    private void removeLong(long key) {
+        if (packedSize == 0) return;
+        long pageNumber = key >> PAGE_SHIFT;
+        long bit = 1L << (key & PAGE_MASK);
+        if (!containsLong(key)) return;
+        LongPage page = residentPage(pageNumber, false);
+        page.present &= ~bit;
+        packedSize--;
+        if (page.present == 0) {
+            pages.remove(pageNumber);
+            if (spilled != null && spilled.hasPage(pageNumber)) {
+                spilled.store(pageNumber, 0L, page.values);
+            }
+        }
+    }
+
+    /** The page on the heap, loaded back from the page file or (if create) made empty. */
+    private LongPage residentPage(long pageNumber, boolean create) {
+        LongPage page = (LongPage) pages.get(pageNumber);
+        if (page != null) {
+            page.referenced = true;
+            return page;
+        }
+        if (spilled != null && spilled.hasPage(pageNumber)) {
+            page = new LongPage(pageNumber);
+            page.present = spilled.load(pageNumber, page.values);
+        } else if (create) {
+            page = new LongPage(pageNumber);
+        } else {
+            return null;
+        }
+        // Referenced from the start, so the sweep below never spills the page being handed out.
+        page.referenced = true;
+        pages.put(pageNumber, page);
+        if (RESIDENT_PAGE_LIMIT != Long.MAX_VALUE) {
+            if (residentOrder == null) {
+                residentOrder = new ArrayDeque<LongPage>();
+            }
+            residentOrder.add(page);
+            while (pages.size() > RESIDENT_PAGE_LIMIT) {
+                spillOne();
+            }
+        }
+        return page;
+    }
+
+    /** Writes one resident page out, giving recently written pages a second chance. */
+    private void spillOne() {
+        while (true) {
+            LongPage page = residentOrder.poll();
+            if (pages.get(page.pageNumber) != page) {
+                // Emptied and dropped since it was queued.
+                continue;
+            }
+            if (page.referenced) {
+                page.referenced = false;
+                residentOrder.add(page);
+                continue;
+            }
+            if (spilled == null) {
+                spilled = MappedPageFile.create(this);
+            } else {
+                MappedPageFile.releaseDropped();
+            }
+            spilled.store(page.pageNumber, page.present, page.values);
+            pages.remove(page.pageNumber);
+            return;
+        }
+    }
+
+    private static long residentPageLimit(String raw) {
+        if (raw == null) return Long.MAX_VALUE;
+        try {
+            long elements = Long.parseLong(raw.trim());
+            return elements > 0 ? Math.max(1L, elements >> PAGE_SHIFT) : Long.MAX_VALUE;
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static final class LongPage {
+        final long pageNumber;
+        final long[] values = new long[1 << PAGE_SHIFT];
+        long present;
+        boolean referenced;
+
+        LongPage(long pageNumber) {
+            this.pageNumber = pageNumber;
+        }
+    }
+}
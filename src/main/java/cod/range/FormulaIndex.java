@@ -0,0 +1,97 @@
+package cod.range;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Formulas of one kind layered over a NaturalArray, kept as sorted disjoint
+ * segments that each map to the newest formula covering them. Adding a layer
+ * cuts the segments it overlaps, so lookup is a single floor search and
+ * formulas that end up fully shadowed are no longer referenced.
+ */
+final class FormulaIndex<F> {
+    private final TreeMap<Long, Segment<F>> segments = new TreeMap<Long, Segment<F>>();
+
+    /** Layers [start, end] over everything added before; empty ranges are ignored. */
+    void add(long start, long end, F formula) {
+        if (start > end) return;
+
+        Map.Entry<Long, Segment<F>> below = segments.lowerEntry(start);
+        if (below != null && below.getValue().end >= start) {
+            Segment<F> cut = below.getValue();
+            segments.put(cut.start, new Segment<F>(cut.start, start - 1, cut.formula));
+            if (cut.end > end) {
+                segments.put(end + 1, new Segment<F>(end + 1, cut.end, cut.formula));
+            }
+        }
+
+        List<Long> covered = new ArrayList<Long>(segments.subMap(start, true, end, true).keySet());
+        for (Long key : covered) {
+            Segment<F> cut = segments.remove(key);
+            if (cut.end > end) {
+                segments.put(end + 1, new Segment<F>(end + 1, cut.end, cut.formula));
+            }
+        }
+
+        segments.put(start, new Segment<F>(start, end, formula));
+    }
+
+    /** Newest formula covering the index, or null. */
+    F find(long index) {
+        Segment<F> segment = coveringSegment(index);
+        return segment != null ? segment.formula : null;
+    }
+
+    /**
+     * Last index of the stretch starting at index over which find gives the
+     * same answer: the end of the covering segment, or the end of the gap.
+     */
+    long runEnd(long index) {
+        Segment<F> covering = coveringSegment(index);
+        if (covering != null) return covering.end;
+        Long next = segments.higherKey(index);
+        return next != null ? next - 1 : Long.MAX_VALUE;
+    }
+
+    boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    /** Number of distinct formulas still visible somewhere. */
+    int formulaCount() {
+        return formulas().size();
+    }
+
+    /** Distinct visible formulas. */
+    Set<F> formulas() {
+        Set<F> visible = Collections.newSetFromMap(new IdentityHashMap<F, Boolean>());
+        for (Segment<F> segment : segments.values()) {
+            visible.add(segment.formula);
+        }
+        return visible;
+    }
+
+    private Segment<F> coveringSegment(long index) {
+        Map.Entry<Long, Segment<F>> entry = segments.floorEntry(index);
+        if (entry == null) return null;
+        Segment<F> segment = entry.getValue();
+        return index <= segment.end ? segment : null;
+    }
+
+    private static final class Segment<F> {
+        final long start;
+        final long end;
+        final F formula;
+
+        Segment(long start, long end, F formula) {
+            this.start = start;
+            this.end = end;
+            this.formula = formula;
+        }
+    }
+}
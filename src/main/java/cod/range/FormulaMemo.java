@@ -0,0 +1,213 @@
+package cod.range;
+
+import cod.math.AutoStackingNumber;
+
+/**
+ * Memo of formula results for one NaturalArray, governed by a MemoPolicy.
+ * Bounded policies keep entries in a CLOCK ring: a hit sets the entry's
+ * reference bit, and eviction skips (and clears) referenced entries once
+ * before dropping them.
+ */
+final class FormulaMemo {
+    /** Returned by lookup when the index is not memoized. */
+    static final Object MISSING = new Object();
+
+    // Rough per-entry footprint of a bounded entry: the slot object, its
+    // ring and store references.
+    private static final long SLOT_BYTES = 48;
+
+    private final MemoPolicy policy;
+    private final boolean bounded;
+    private final LongObjectStore entries = new LongObjectStore();
+
+    private Slot[] ring;
+    private int ringSize;
+    private int[] freePositions;
+    private int freeCount;
+    private int hand;
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    FormulaMemo(MemoPolicy policy) {
+        this.policy = policy != null ? policy : MemoPolicy.defaultPolicy();
+        this.bounded = this.policy.kind == MemoPolicy.Kind.ENTRIES || this.policy.kind == MemoPolicy.Kind.BYTES;
+    }
+
+    MemoPolicy policy() {
+        return policy;
+    }
+
+    /** Memoized value (possibly null) or MISSING; counts a hit when found. */
+    Object lookup(long key) {
+        Object stored = entries.get(key);
+        if (stored == null) {
+            if (bounded || !entries.containsKey(key)) return MISSING;
+            hits++;
+            return null;
+        }
+        hits++;
+        if (!bounded) return stored;
+        Slot slot = (Slot) stored;
+        slot.referenced = true;
+        return slot.value;
+    }
+
+    boolean containsKey(long key) {
+        return entries.containsKey(key);
+    }
+
+    /** Memoized value without touching counters or reference bits. */
+    Object get(long key) {
+        Object stored = entries.get(key);
+        return bounded && stored != null ? ((Slot) stored).value : stored;
+    }
+
+    /** Records a freshly computed value; returns how many entries were evicted for it. */
+    int put(long key, Object value) {
+        misses++;
+        switch (policy.kind) {
+            case NONE:
+                return 0;
+            case UNBOUNDED:
+                entries.put(key, value);
+                return 0;
+            default:
+                break;
+        }
+
+        Slot previous = (Slot) entries.remove(key);
+        if (previous != null) {
+            release(previous);
+        }
+        Slot slot = new Slot(key, value, estimateBytes(value));
+        int evicted = 0;
+        while (overBudget(slot.bytes) && evictOne()) {
+            evicted++;
+        }
+        place(slot);
+        entries.put(key, slot);
+        evictions += evicted;
+        return evicted;
+    }
+
+    void remove(long key) {
+        Object stored = entries.remove(key);
+        if (bounded && stored != null) {
+            release((Slot) stored);
+        }
+    }
+
+    void clear() {
+        entries.clear();
+        ring = null;
+        ringSize = 0;
+        freePositions = null;
+        freeCount = 0;
+        hand = 0;
+        bytes = 0;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    long evictions() {
+        return evictions;
+    }
+
+    private boolean overBudget(long incomingBytes) {
+        if (entries.isEmpty()) return false;
+        if (policy.kind == MemoPolicy.Kind.ENTRIES) {
+            return entries.size() + 1 > policy.limit;
+        }
+        return bytes + incomingBytes > policy.limit;
+    }
+
+    private boolean evictOne() {
+        if (entries.isEmpty() || ringSize == 0) return false;
+        while (true) {
+            Slot slot = ring[hand];
+            hand = hand + 1 == ringSize ? 0 : hand + 1;
+            if (slot == null) continue;
+            if (slot.referenced) {
+                slot.referenced = false;
+                continue;
+            }
+            entries.remove(slot.key);
+            release(slot);
+            return true;
+        }
+    }
+
+    private void place(Slot slot) {
+        int position;
+        if (freeCount > 0) {
+            position = freePositions[--freeCount];
+        } else {
+            if (ring == null) {
+                ring = new Slot[16];
+            } else if (ringSize == ring.length) {
+                Slot[] grown = new Slot[ring.length * 2];
+                System.arraycopy(ring, 0, grown, 0, ringSize);
+                ring = grown;
+            }
+            position = ringSize++;
+        }
+        ring[position] = slot;
+        slot.position = position;
+        bytes += slot.bytes;
+    }
+
+    private void release(Slot slot) {
+        ring[slot.position] = null;
+        if (freePositions == null) {
+            freePositions = new int[16];
+        } else if (freeCount == freePositions.length) {
+            int[] grown = new int[freePositions.length * 2];
+            System.arraycopy(freePositions, 0, grown, 0, freeCount);
+            freePositions = grown;
+        }
+        freePositions[freeCount++] = slot.position;
+        bytes -= slot.bytes;
+    }
+
+    private static long estimateBytes(Object value) {
+        if (value == null) return SLOT_BYTES;
+        if (value instanceof String) {
+            return SLOT_BYTES + 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof AutoStackingNumber) {
+            return SLOT_BYTES + 64;
+        }
+        return SLOT_BYTES + 24;
+    }
+
+    private static final class Slot {
+        final long key;
+        final Object value;
+        final long bytes;
+        int position;
+        boolean referenced;
+
+        Slot(long key, Object value, long bytes) {
+            this.key = key;
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package cod.range;
+
+/**
+ * Long-keyed element store behind NaturalArray's caches. Scattered indices
+ * live in an open-addressing table with primitive keys; once the touched
+ * indices are mostly contiguous they move into a window of fixed-size pages,
+ * which costs one reference per element. Null values are allowed.
+ */
+final class LongObjectStore {
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int DENSE_MIN_ENTRIES = 64;
+    private static final Object NULL_VALUE = new Object();
+
+    // Sparse part: linear probing, a null value marks an empty slot.
+    private long[] keys;
+    private Object[] values;
+    private int sparseSize;
+    private long sparseMin = Long.MAX_VALUE;
+    private long sparseMax = Long.MIN_VALUE;
+
+    // Dense part: pages[i] holds the keys of page number firstPage + i.
+    // Keys inside the window are never also kept in the sparse part.
+    private Object[][] pages;
+    private int[] pageCounts;
+    private long firstPage;
+    private int denseSize;
+
+    boolean containsKey(long key) {
+        return lookup(key) != null;
+    }
+
+    Object get(long key) {
+        return unwrap(lookup(key));
+    }
+
+    Object put(long key, Object value) {
+        Object stored = value == null ? NULL_VALUE : value;
+        if (pages != null) {
+            long page = key >> PAGE_SHIFT;
+            if (page < firstPage || page >= firstPage + pages.length) {
+                trimWindow();
+                if (canExtendWindow(page)) {
+                    extendWindow(page);
+                }
+            }
+            if (page >= firstPage && page < firstPage + pages.length) {
+                return unwrap(putDense((int) (page - firstPage), key, stored));
+            }
+        }
+
+        Object previous = putSparse(key, stored);
+        if (previous == null) {
+            if (key < sparseMin) sparseMin = key;
+            if (key > sparseMax) sparseMax = key;
+            long span = sparseMax - sparseMin;
+            if (pages == null && sparseSize >= DENSE_MIN_ENTRIES && span >= 0 && span / 2 < sparseSize) {
+                buildWindow();
+            }
+        }
+        return unwrap(previous);
+    }
+
+    Object remove(long key) {
+        if (pages != null) {
+            long page = (key >> PAGE_SHIFT) - firstPage;
+            if (page >= 0 && page < pages.length) {
+                Object[] slots = pages[(int) page];
+                if (slots == null) return null;
+                int offset = (int) (key & PAGE_MASK);
+                Object previous = slots[offset];
+                if (previous != null) {
+                    slots[offset] = null;
+                    denseSize--;
+                    if (--pageCounts[(int) page] == 0) {
+                        pages[(int) page] = null;
+                    }
+                }
+                return unwrap(previous);
+            }
+        }
+        if (sparseSize == 0) return null;
+        int slot = findSlot(key);
+        if (slot < 0) return null;
+        Object previous = values[slot];
+        removeSparseAt(slot);
+        return unwrap(previous);
+    }
+
+    int size() {
+        return sparseSize + denseSize;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    void clear() {
+        keys = null;
+        values = null;
+        sparseSize = 0;
+        sparseMin = Long.MAX_VALUE;
+        sparseMax = Long.MIN_VALUE;
+        pages = null;
+        pageCounts = null;
+        firstPage = 0;
+        denseSize = 0;
+    }
+
+    private Object lookup(long key) {
+        if (pages != null) {
+            long page = (key >> PAGE_SHIFT) - firstPage;
+            if (page >= 0 && page < pages.length) {
+                Object[] slots = pages[(int) page];
+                return slots == null ? null : slots[(int) (key & PAGE_MASK)];
+            }
+        }
+        if (sparseSize == 0) return null;
+        int slot = findSlot(key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    private Object putDense(int page, long key, Object stored) {
+        Object[] slots = pages[page];
+        if (slots == null) {
+            slots = new Object[PAGE_SIZE];
+            pages[page] = slots;
+        }
+        int offset = (int) (key & PAGE_MASK);
+        Object previous = slots[offset];
+        slots[offset] = stored;
+        if (previous == null) {
+            denseSize++;
+            pageCounts[page]++;
+        }
+        return previous;
+    }
+
+    /**
+     * Drops emptied pages from both ends of the window so that a run of
+     * removals followed by puts further on (an evicting cache walking
+     * forward) slides the window instead of spilling into the sparse part.
+     */
+    private void trimWindow() {
+        int low = 0;
+        int high = pages.length;
+        while (low < high && pages[low] == null) low++;
+        while (high > low && pages[high - 1] == null) high--;
+        if (low == 0 && high == pages.length) return;
+        if (low == high) {
+            if (pages.length == 1) return;
+            low = 0;
+            high = 1;
+        }
+        int length = high - low;
+        Object[][] trimmed = new Object[length][];
+        int[] trimmedCounts = new int[length];
+        System.arraycopy(pages, low, trimmed, 0, length);
+        System.arraycopy(pageCounts, low, trimmedCounts, 0, length);
+        pages = trimmed;
+        pageCounts = trimmedCounts;
+        firstPage += low;
+    }
+
+    /** The window may grow while it stays at least roughly half occupied. */
+    private boolean canExtendWindow(long page) {
+        long low = Math.min(firstPage, page);
+        long high = Math.max(firstPage + pages.length - 1, page);
+        long span = high - low + 1;
+        return span <= 2L * (size() >> PAGE_SHIFT) + 4 && span <= Integer.MAX_VALUE / 2;
+    }
+
+    private void extendWindow(long page) {
+        int length = pages.length;
+        long lastPage = firstPage + length - 1;
+        long needed = Math.max(lastPage, page) - Math.min(firstPage, page) + 1;
+        int newLength = (int) Math.max(needed, 2L * length);
+        long newFirst = page < firstPage ? lastPage + 1 - newLength : firstPage;
+        Object[][] grown = new Object[newLength][];
+        int[] grownCounts = new int[newLength];
+        System.arraycopy(pages, 0, grown, (int) (firstPage - newFirst), length);
+        System.arraycopy(pageCounts, 0, grownCounts, (int) (firstPage - newFirst), length);
+        pages = grown;
+        pageCounts = grownCounts;
+        firstPage = newFirst;
+        migrateSparseIntoWindow();
+    }
+
+    private void buildWindow() {
+        firstPage = sparseMin >> PAGE_SHIFT;
+        pages = new Object[(int) ((sparseMax >> PAGE_SHIFT) - firstPage + 1)][];
+        pageCounts = new int[pages.length];
+        migrateSparseIntoWindow();
+    }
+
+    private void migrateSparseIntoWindow() {
+        if (sparseSize == 0) return;
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = null;
+        values = null;
+        sparseSize = 0;
+        sparseMin = Long.MAX_VALUE;
+        sparseMax = Long.MIN_VALUE;
+        for (int i = 0; i < oldKeys.length; i++) {
+            Object value = oldValues[i];
+            if (value == null) continue;
+            long key = oldKeys[i];
+            long page = (key >> PAGE_SHIFT) - firstPage;
+            if (page >= 0 && page < pages.length) {
+                putDense((int) page, key, value);
+            } else {
+                putSparse(key, value);
+                if (key < sparseMin) sparseMin = key;
+                if (key > sparseMax) sparseMax = key;
+            }
+        }
+    }
+
+    private Object putSparse(long key, Object stored) {
+        if (keys == null) {
+            keys = new long[INITIAL_CAPACITY];
+            values = new Object[INITIAL_CAPACITY];
+        } else if ((sparseSize + 1) * 4 > keys.length * 3) {
+            resizeSparse(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                Object previous = values[slot];
+                values[slot] = stored;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = stored;
+        sparseSize++;
+        return null;
+    }
+
+    private int findSlot(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** Backward-shift deletion keeps probe chains intact without tombstones. */
+    private void removeSparseAt(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        int i = (slot + 1) & mask;
+        while (values[i] != null) {
+            int home = hash(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        values[hole] = null;
+        sparseSize--;
+    }
+
+    private void resizeSparse(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        sparseSize = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                putSparse(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static Object unwrap(Object stored) {
+        return stored == NULL_VALUE ? null : stored;
+    }
+}
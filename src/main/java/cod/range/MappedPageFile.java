@@ -0,0 +1,169 @@
+package cod.range;
+
+import cod.error.InternalError;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Pages of packed [int] elements spilled out of an ElementStore into a
+ * memory-mapped temp file, so they live outside the Java heap and are paged
+ * by the OS. A page takes one slot: its presence bitmap followed by its 64
+ * values. Slots are handed out in order of first spill and mapped a segment
+ * at a time; the file is unlinked as soon as it is open.
+ *
+ * A page file lives as long as the store that owns it. Once the owner is
+ * collected the file is closed, and deleted if the unlink failed, the next
+ * time any store spills; its mappings are then unreachable and are released
+ * by the collector (the JDK has no portable unmap).
+ */
+final class MappedPageFile {
+    private static final int PAGE_VALUES = 64;
+    private static final int SLOT_BYTES = (PAGE_VALUES + 1) * 8;
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+    private static final long SEGMENT_BYTES = (long) SLOT_BYTES << SEGMENT_SHIFT;
+
+    private static final ReferenceQueue<Object> droppedOwners = new ReferenceQueue<Object>();
+    // Keeps the owner references themselves reachable until they are enqueued
+    private static final Set<OwnerReference> owned = new HashSet<OwnerReference>();
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final File leftover;
+    private final LongObjectStore slots = new LongObjectStore();
+    private MappedByteBuffer[] segments = new MappedByteBuffer[4];
+    private int slotCount;
+    private boolean closed;
+
+    private MappedPageFile(RandomAccessFile raf, File leftover) {
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.leftover = leftover;
+    }
+
+    /** A new page file, closed once owner is no longer reachable. */
+    static MappedPageFile create(Object owner) {
+        releaseDropped();
+        try {
+            File file = File.createTempFile("cod-array-", ".pages");
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            File leftover = null;
+            if (!file.delete()) {
+                file.deleteOnExit();
+                leftover = file;
+            }
+            MappedPageFile pageFile = new MappedPageFile(raf, leftover);
+            synchronized (owned) {
+                owned.add(new OwnerReference(owner, pageFile));
+            }
+            return pageFile;
+        } catch (IOException e) {
+            throw new InternalError("Cannot create page file for array spill", e);
+        }
+    }
+
+    /** Closes the page files of owners that have been collected. */
+    static void releaseDropped() {
+        OwnerReference dropped;
+        while ((dropped = (OwnerReference) droppedOwners.poll()) != null) {
+            synchronized (owned) {
+                owned.remove(dropped);
+            }
+            dropped.pageFile.close();
+        }
+    }
+
+    private void close() {
+        if (closed) return;
+        closed = true;
+        segments = null;
+        try {
+            raf.close();
+        } catch (IOException e) {
+            // Nothing is written through the channel, so nothing is lost.
+        }
+        if (leftover != null) {
+            leftover.delete();
+        }
+    }
+
+    boolean hasPage(long pageNumber) {
+        return slots.containsKey(pageNumber);
+    }
+
+    /** Presence bitmap of a spilled page, 0 when the page was never spilled. */
+    long present(long pageNumber) {
+        Integer slot = (Integer) slots.get(pageNumber);
+        return slot == null ? 0L : buffer(slot).getLong(offset(slot));
+    }
+
+    long getLong(long pageNumber, int index) {
+        int slot = ((Integer) slots.get(pageNumber)).intValue();
+        return buffer(slot).getLong(offset(slot) + 8 * (index + 1));
+    }
+
+    /** Reads a spilled page into values and returns its presence bitmap. */
+    long load(long pageNumber, long[] values) {
+        int slot = ((Integer) slots.get(pageNumber)).intValue();
+        MappedByteBuffer buffer = buffer(slot);
+        int base = offset(slot);
+        for (int i = 0; i < PAGE_VALUES; i++) {
+            values[i] = buffer.getLong(base + 8 * (i + 1));
+        }
+        return buffer.getLong(base);
+    }
+
+    void store(long pageNumber, long present, long[] values) {
+        Integer slot = (Integer) slots.get(pageNumber);
+        if (slot == null) {
+            slot = Integer.valueOf(slotCount++);
+            slots.put(pageNumber, slot);
+        }
+        MappedByteBuffer buffer = buffer(slot);
+        int base = offset(slot);
+        buffer.putLong(base, present);
+        for (int i = 0; i < PAGE_VALUES; i++) {
+            buffer.putLong(base + 8 * (i + 1), values[i]);
+        }
+    }
+
+    private MappedByteBuffer buffer(int slot) {
+        int segment = slot >>> SEGMENT_SHIFT;
+        if (segment >= segments.length) {
+            MappedByteBuffer[] grown = new MappedByteBuffer[Math.max(segment + 1, segments.length * 2)];
+            System.arraycopy(segments, 0, grown, 0, segments.length);
+            segments = grown;
+        }
+        MappedByteBuffer buffer = segments[segment];
+        if (buffer == null) {
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, segment * SEGMENT_BYTES, SEGMENT_BYTES);
+            } catch (IOException e) {
+                throw new InternalError("Cannot map page file segment " + segment, e);
+            }
+            segments[segment] = buffer;
+        }
+        return buffer;
+    }
+
+    private static int offset(int slot) {
+        return (slot & SEGMENT_MASK) * SLOT_BYTES;
+    }
+
+    private static final class OwnerReference extends PhantomReference<Object> {
+        final MappedPageFile pageFile;
+
+        OwnerReference(Object owner, MappedPageFile pageFile) {
+            super(owner, droppedOwners);
+            this.pageFile = pageFile;
+        }
+    }
+}
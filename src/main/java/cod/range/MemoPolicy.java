@@ -0,0 +1,89 @@
+package cod.range;
+
+/**
+ * How a NaturalArray memoizes formula results: not at all, without bound,
+ * or in a CLOCK cache bounded by entry count or by an estimated byte budget.
+ * The default comes from the cod.range.memo property or COD_RANGE_MEMO
+ * ("none", "unbounded", "entries:N" or "bytes:N").
+ */
+public final class MemoPolicy {
+    public enum Kind {
+        NONE,
+        UNBOUNDED,
+        ENTRIES,
+        BYTES
+    }
+
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+
+    private static final MemoPolicy NONE = new MemoPolicy(Kind.NONE, 0);
+    private static final MemoPolicy UNBOUNDED = new MemoPolicy(Kind.UNBOUNDED, 0);
+    private static final MemoPolicy DEFAULT = parse(Settings.get("cod.range.memo", "COD_RANGE_MEMO"));
+
+    public final Kind kind;
+    public final long limit;
+
+    private MemoPolicy(Kind kind, long limit) {
+        this.kind = kind;
+        this.limit = limit;
+    }
+
+    public static MemoPolicy defaultPolicy() {
+        return DEFAULT;
+    }
+
+    public static MemoPolicy none() {
+        return NONE;
+    }
+
+    public static MemoPolicy unbounded() {
+        return UNBOUNDED;
+    }
+
+    public static MemoPolicy maxEntries(int entries) {
+        if (entries <= 0) return NONE;
+        return new MemoPolicy(Kind.ENTRIES, entries);
+    }
+
+    public static MemoPolicy maxBytes(long bytes) {
+        if (bytes <= 0) return NONE;
+        return new MemoPolicy(Kind.BYTES, bytes);
+    }
+
+    /** Parses a policy spec; unknown or malformed specs give the bounded default. */
+    public static MemoPolicy parse(String raw) {
+        MemoPolicy fallback = maxEntries(DEFAULT_MAX_ENTRIES);
+        if (raw == null) return fallback;
+        String normalized = raw.trim().toLowerCase();
+        if ("none".equals(normalized) || "off".equals(normalized)) return NONE;
+        if ("unbounded".equals(normalized)) return UNBOUNDED;
+        int colon = normalized.indexOf(':');
+        if (colon < 0) return fallback;
+        String kind = normalized.substring(0, colon).trim();
+        long limit;
+        try {
+            limit = Long.parseLong(normalized.substring(colon + 1).trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+        if ("entries".equals(kind)) {
+            return maxEntries((int) Math.min(limit, Integer.MAX_VALUE));
+        }
+        if ("bytes".equals(kind)) {
+            return maxBytes(limit);
+        }
+        return fallback;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case ENTRIES:
+                return "entries:" + limit;
+            case BYTES:
+                return "bytes:" + limit;
+            default:
+                return kind.name().toLowerCase();
+        }
+    }
+}
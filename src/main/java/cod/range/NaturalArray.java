@@ -1,7 +1,7 @@
 package cod.range;
 
 import cod.ast.node.*;
-import cod.debug.DebugSystem;
+import cod.debug.Metrics;
 import cod.error.InternalError;
 import cod.error.ProgramError;
 import cod.interpreter.Evaluator;
@@ -12,15 +12,26 @@ import cod.range.formula.*;
 
 import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class NaturalArray {
-    private static final String PERF_PREFIX = "naturalArray.";
+    private static final int METRIC_SIZE = Metrics.register("naturalArray.size");
+    private static final int METRIC_GET = Metrics.register("naturalArray.get");
+    private static final int METRIC_APPLY_PENDING_UPDATES_FOR_INDEX = Metrics.register("naturalArray.applyPendingUpdatesForIndex");
+    private static final int METRIC_RESOLVE_PENDING_UPDATE_FOR_INDEX = Metrics.register("naturalArray.resolvePendingUpdateForIndex");
+    private static final int METRIC_COMMIT_UPDATES = Metrics.register("naturalArray.commitUpdates");
+    private static final int METRIC_CALCULATE_VALUE = Metrics.register("naturalArray.calculateValue");
+    private static final int METRIC_EVALUATE_SEQUENCE_FORMULA = Metrics.register("naturalArray.evaluateSequenceFormula");
+    private static final int METRIC_EVALUATE_CONDITIONAL_FORMULA = Metrics.register("naturalArray.evaluateConditionalFormula");
+    private static final int METRIC_EVALUATE_LINEAR_RECURRENCE_FORMULA = Metrics.register("naturalArray.evaluateLinearRecurrenceFormula");
+    private static final int METRIC_EVALUATE_VECTOR_RECURRENCE_FORMULA = Metrics.register("naturalArray.evaluateVectorRecurrenceFormula");
 
     private final Range baseRange;
     private final Evaluator evaluator;
     private ExecutionContext context;
-    private Map<Long, Object> cache;
+    private ElementStore cache;
     private boolean isMutable = false;
 
     // Element type and type handler
@@ -37,6 +48,12 @@ public class NaturalArray {
     private AutoStackingNumber cachedStep = null;
     private Long cachedSize = null;
 
+    // Primitive start/step of an [int] range whose bounds fit in one word
+    private boolean longBoundsResolved = false;
+    private boolean hasLongBounds = false;
+    private long longStart = 0L;
+    private long longStep = 0L;
+
     // Recent index cache for sequential access
     private static final int RECENT_CACHE_SIZE = 64;
     private Object[] recentCache = new Object[RECENT_CACHE_SIZE];
@@ -61,15 +78,28 @@ public class NaturalArray {
     private static final long[] POWERS_2 = new long[11];
     private static final long[] TOTAL_UP_TO_LENGTH = new long[11];
 
-    // Formula collections
-    private List<SequenceFormula> sequenceFormulas = new ArrayList<SequenceFormula>();
-    private List<ConditionalFormula> conditionalFormulas = new ArrayList<ConditionalFormula>();
-    private List<LinearRecurrenceFormula> linearRecurrenceFormulas = new ArrayList<LinearRecurrenceFormula>();
-    private List<VectorRecurrenceBinding> vectorRecurrenceFormulas = new ArrayList<VectorRecurrenceBinding>();
-    private Map<Long, Object> computedCache = new HashMap<Long, Object>();
+    // Formula layers, newest on top within each kind
+    private FormulaIndex<SequenceFormula> sequenceFormulas = new FormulaIndex<SequenceFormula>();
+    private FormulaIndex<ConditionalFormula> conditionalFormulas = new FormulaIndex<ConditionalFormula>();
+    private FormulaIndex<LinearRecurrenceFormula> linearRecurrenceFormulas = new FormulaIndex<LinearRecurrenceFormula>();
+    private FormulaIndex<VectorRecurrenceBinding> vectorRecurrenceFormulas = new FormulaIndex<VectorRecurrenceBinding>();
+    private FormulaMemo computedCache = new FormulaMemo(MemoPolicy.defaultPolicy());
     
     // Pending updates for lazy assignment
     private static final int PENDING_UPDATES_TREE_THRESHOLD = 100;
+
+    // Bulk materialization: arrays at least this long are split across a
+    // fork-join pool, in chunks of at most MATERIALIZE_CHUNK elements.
+    private static final int PARALLEL_MIN_ELEMENTS = 1 << 15;
+    private static final int MATERIALIZE_CHUNK = 1 << 12;
+    private static final int DEFAULT_PARALLELISM = parseParallelism(Settings.get("cod.range.parallelism", "COD_RANGE_PARALLELISM"));
+    // Pools for materialize by parallelism, created on first use and kept
+    private static final Map<Integer, ForkJoinPool> materializePools = new HashMap<Integer, ForkJoinPool>();
+
+    // Bulk reads: cursors fetch this many elements at a time and refetch
+    // whenever version (bumped by every mutation) has moved.
+    private static final int CURSOR_CHUNK = 256;
+    private transient int version;
     private List<PendingRangeUpdate> pendingUpdates = new ArrayList<PendingRangeUpdate>();
     private NavigableMap<Long, List<PendingRangeUpdate>> pendingUpdatesByStart = null;
     private NavigableMap<Long, Long> pendingUpdateOrderPrefixByStart = null;
@@ -86,6 +116,19 @@ public class NaturalArray {
     private static final AtomicInteger nextArrayId = new AtomicInteger(1);
     private boolean tracked = false;
 
+    // ========== SHARED READ MODE ==========
+    // A frozen array is read-only and may be read by many threads at once.
+    // Its reads bypass lastIndex/lastValue, the recent cache and the formula
+    // memo, and memoize into sharedMemo instead.
+    private volatile boolean frozen = false;
+    private SharedMemo sharedMemo;
+    private static final ThreadLocal<TypeHandler> DETACHED_TYPES = new ThreadLocal<TypeHandler>() {
+        @Override
+        protected TypeHandler initialValue() {
+            return new TypeHandler();
+        }
+    };
+
     static {
         POWERS_26[0] = 1;
         POWERS_2[0] = 1;
@@ -456,10 +499,11 @@ public class NaturalArray {
     // ========== CACHE SIZE METHODS ==========
     
     /**
-     * Invalidates the cached size when array changes
+     * Invalidates the cached size (and open cursors) when array changes
      */
     private void invalidateSize() {
         cachedSize = null;
+        version++;
     }
     
     /**
@@ -771,19 +815,19 @@ public class NaturalArray {
     // ========== CORE ARRAY OPERATIONS ==========
 
     public long size() {
-        String timer = startPerfTimer(DebugSystem.Level.DEBUG, PERF_PREFIX + "size");
+        long metricStart = Metrics.start();
         try {
             if (cachedSize == null) {
                 cachedSize = calculateSizeInternal();
             }
             return cachedSize;
         } finally {
-            stopPerfTimer(timer);
+            Metrics.stop(METRIC_SIZE, metricStart);
         }
     }
 
     public Object get(long index) {
-        String timer = startPerfTimer(DebugSystem.Level.DEBUG, PERF_PREFIX + "get");
+        long metricStart = Metrics.start();
         try {
             if (index < 0) {
                 long size = size();
@@ -791,6 +835,10 @@ public class NaturalArray {
             }
 
             checkBounds(index);
+
+            if (frozen) {
+                return readShared(index);
+            }
             
             // ========== TRACKING ==========
             if (tracked) {
@@ -825,8 +873,9 @@ public class NaturalArray {
                 return maybeConvert(val);
             }
 
-            if (computedCache != null && computedCache.containsKey(index)) {
-                Object cached = computedCache.get(index);
+            Object cached = computedCache.lookup(index);
+            if (cached != FormulaMemo.MISSING) {
+                if (tracked) ArrayTracker.recordMemoHit(this);
                 lastIndex = index;
                 lastValue = cached;
                 updateRecentCache(index, cached);
@@ -834,10 +883,8 @@ public class NaturalArray {
             }
 
             // Try sequence formulas first (most specific)
-            Object sequenceResult = evaluateSequenceFormulas(index);
+            Object sequenceResult = evaluateSequenceFormula(index, sequenceFormulas.find(index));
             if (sequenceResult != null) {
-                if (computedCache == null) computedCache = new HashMap<Long, Object>();
-                computedCache.put(index, sequenceResult);
                 lastIndex = index;
                 lastValue = sequenceResult;
                 updateRecentCache(index, sequenceResult);
@@ -845,10 +892,8 @@ public class NaturalArray {
             }
 
             // Then conditional formulas
-            Object conditionalResult = evaluateConditionalFormulas(index);
+            Object conditionalResult = evaluateConditionalFormula(index, conditionalFormulas.find(index));
             if (conditionalResult != null) {
-                if (computedCache == null) computedCache = new HashMap<Long, Object>();
-                computedCache.put(index, conditionalResult);
                 lastIndex = index;
                 lastValue = conditionalResult;
                 updateRecentCache(index, conditionalResult);
@@ -856,7 +901,7 @@ public class NaturalArray {
             }
             
             // Then linear recurrence formulas
-            Object vectorRecurrenceResult = evaluateVectorRecurrenceFormulas(index);
+            Object vectorRecurrenceResult = evaluateVectorRecurrenceFormula(index, vectorRecurrenceFormulas.find(index));
             if (vectorRecurrenceResult != null) {
                 lastIndex = index;
                 lastValue = vectorRecurrenceResult;
@@ -865,7 +910,7 @@ public class NaturalArray {
             }
 
             // Then scalar linear recurrence formulas
-            Object recurrenceResult = evaluateLinearRecurrenceFormulas(index);
+            Object recurrenceResult = evaluateLinearRecurrenceFormula(index, linearRecurrenceFormulas.find(index));
             if (recurrenceResult != null) {
                 lastIndex = index;
                 lastValue = recurrenceResult;
@@ -880,7 +925,333 @@ public class NaturalArray {
             updateRecentCache(index, result);
             return maybeConvert(result);
         } finally {
-            stopPerfTimer(timer);
+            Metrics.stop(METRIC_GET, metricStart);
+        }
+    }
+
+    /** True for [int] arrays, whose elements are all readable through getLong. */
+    public boolean hasLongElements() {
+        return "int".equals(elementType) && !convertToString;
+    }
+
+    /**
+     * Element as a primitive long. Plain stretches of an [int] array (no
+     * formulas or pending updates) are read from the packed store or computed
+     * from start and step without materializing a number object.
+     */
+    public long getLong(long index) {
+        if (index < 0) {
+            index = size() + index;
+        }
+        checkBounds(index);
+
+        if (plainLongs()) {
+            if (isMutable && cache != null) {
+                if (cache.containsLong(index)) {
+                    return cache.getLong(index);
+                }
+                if (cache.containsKey(index)) {
+                    return toLongElement(index, cache.get(index));
+                }
+            }
+            try {
+                return Math.addExact(longStart, Math.multiplyExact(index, longStep));
+            } catch (ArithmeticException e) {
+                // Fall through to the general path, which reports the overflow.
+            }
+        }
+        return toLongElement(index, get(index));
+    }
+
+    /**
+     * Whether getLong reads the element from the packed store or the range
+     * itself. Other elements of an [int] array (formula results, updates)
+     * may not be integers and should be read through get.
+     */
+    public boolean isPackedLong(long index) {
+        if (!hasLongElements() || !plainLongs()) {
+            return false;
+        }
+        if (index < 0) {
+            index = size() + index;
+        }
+        return !isMutable || cache == null || cache.containsLong(index) || !cache.containsKey(index);
+    }
+
+    private boolean plainLongs() {
+        return !tracked && !hasPendingUpdates && !hasFormulas() && resolveLongBounds();
+    }
+
+    /** Element as a primitive double; [float] elements are rounded from their exact value. */
+    public double getDouble(long index) {
+        if (hasLongElements()) {
+            return (double) getLong(index);
+        }
+        return toNumberElement(index, get(index)).doubleValue();
+    }
+
+    private long toLongElement(long index, Object value) {
+        AutoStackingNumber number = toNumberElement(index, value);
+        try {
+            return number.longValue();
+        } catch (ArithmeticException e) {
+            throw new ProgramError("Element " + index + " is not an integer: " + number);
+        }
+    }
+
+    private AutoStackingNumber toNumberElement(long index, Object value) {
+        if (value instanceof AutoStackingNumber) {
+            return (AutoStackingNumber) value;
+        }
+        if (value == null || value instanceof String) {
+            throw new ProgramError("Element " + index + " is not numeric: " + typeHandler.getConcreteType(value));
+        }
+        return typeHandler.toAutoStackingNumber(value);
+    }
+
+    private boolean hasFormulas() {
+        return !sequenceFormulas.isEmpty() || !conditionalFormulas.isEmpty()
+            || !linearRecurrenceFormulas.isEmpty() || !vectorRecurrenceFormulas.isEmpty();
+    }
+
+    // ========== SHARED READS ==========
+
+    /**
+     * Makes the array read-only so that any number of threads can read it
+     * at once. Pending updates are committed and lazy state is resolved
+     * here; afterwards every mutator throws. Formulas that read only the
+     * index run lock-free on each reader's own TypeHandler and recurrences
+     * publish immutable state. A formula that reads variables needs the
+     * interpreter, whose context is not thread-safe, so arrays holding one
+     * cannot be frozen. Frozen reads are not tracked.
+     */
+    public void freeze() {
+        if (frozen) return;
+        for (SequenceFormula formula : sequenceFormulas.formulas()) {
+            if (!formula.isDetached()) {
+                throw new ProgramError("Cannot freeze array " + arrayId
+                    + ": a formula reads variables and needs the interpreter");
+            }
+        }
+        for (ConditionalFormula formula : conditionalFormulas.formulas()) {
+            if (!formula.isDetached()) {
+                throw new ProgramError("Cannot freeze array " + arrayId
+                    + ": a formula reads variables and needs the interpreter");
+            }
+        }
+        commitUpdates();
+        resolveBounds();
+        sharedMemo = SharedMemo.forPolicy(computedCache.policy());
+        // The volatile write publishes everything above to reading threads.
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new ProgramError("Cannot modify frozen array " + arrayId);
+        }
+    }
+
+    private Object readShared(long index) {
+        if (isMutable && cache != null && cache.containsKey(index)) {
+            return maybeConvert(cache.get(index));
+        }
+        if (sharedMemo != null) {
+            Object cached = sharedMemo.get(index);
+            if (cached != FormulaMemo.MISSING) {
+                return maybeConvert(cached);
+            }
+        }
+        return maybeConvert(evaluateShared(index));
+    }
+
+    // A detached formula that deopts would need the interpreter after all.
+    private ProgramError notShareable(long index) {
+        return new ProgramError("Element " + index + " of frozen array " + arrayId
+            + " cannot be computed without the interpreter");
+    }
+
+    private Object evaluateShared(long index) {
+        TypeHandler types = DETACHED_TYPES.get();
+
+        SequenceFormula sequence = sequenceFormulas.find(index);
+        if (sequence != null) {
+            Object result = sequence.evaluateDetached(index, types);
+            if (result != null) {
+                memoize(index, result);
+                return result;
+            }
+            throw notShareable(index);
+        }
+
+        ConditionalFormula conditional = conditionalFormulas.find(index);
+        if (conditional != null) {
+            Object result = conditional.evaluateDetached(index, types);
+            if (result != null) {
+                memoize(index, result);
+                return result;
+            }
+            throw notShareable(index);
+        }
+
+        Object result = evaluateVectorRecurrenceFormula(index, vectorRecurrenceFormulas.find(index));
+        if (result == null) {
+            result = evaluateLinearRecurrenceFormula(index, linearRecurrenceFormulas.find(index));
+        }
+        return result != null ? result : calculateValue(index);
+    }
+
+    // ========== BULK READS ==========
+
+    /**
+     * Reads elements [from, to) into out at offset, with the values get
+     * would return. The covering formula of each kind is resolved once per
+     * run of indices instead of once per element; tracked and
+     * pending-update arrays are read element by element.
+     */
+    public void getRange(long from, long to, Object[] out, int offset) {
+        long size = size();
+        if (from < 0 || from > to || to > size) {
+            throw new ProgramError("Range [" + from + ", " + to + ") out of bounds for size " + size);
+        }
+        if (out == null || offset < 0 || to - from > out.length - offset) {
+            throw new InternalError("getRange buffer cannot hold " + (to - from) + " elements");
+        }
+        readRange(from, to, out, offset, false);
+    }
+
+    /** Sequential reader over [from, size) that fetches elements a chunk at a time. */
+    public Cursor cursor(long from) {
+        if (from < 0) {
+            throw new ProgramError("Negative cursor start: " + from);
+        }
+        return new Cursor(from);
+    }
+
+    public final class Cursor {
+        private final Object[] buffer = new Object[CURSOR_CHUNK];
+        private long next;
+        private long bufferStart;
+        private int bufferCount;
+        private int bufferVersion;
+
+        private Cursor(long from) {
+            this.next = from;
+        }
+
+        public boolean hasNext() {
+            return next < size();
+        }
+
+        /** Index of the element next() returns. */
+        public long index() {
+            return next;
+        }
+
+        public Object next() {
+            long offset = next - bufferStart;
+            if (bufferVersion != version || offset < 0 || offset >= bufferCount) {
+                fill();
+                offset = 0;
+            }
+            next++;
+            return buffer[(int) offset];
+        }
+
+        private void fill() {
+            long size = size();
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            // Reading ahead would skew tracking counts and pending-update order.
+            long to = Math.min(size, next + (canReadAhead() ? CURSOR_CHUNK : 1));
+            bufferCount = readRange(next, to, buffer, 0, true);
+            bufferStart = next;
+            bufferVersion = version;
+        }
+    }
+
+    /**
+     * Fills out from [from, to) and returns how many elements were read. With
+     * stopAtError, reading ahead stops before an element that fails, so the
+     * failure only surfaces if that element is actually asked for.
+     */
+    private int readRange(long from, long to, Object[] out, int offset, boolean stopAtError) {
+        int count = 0;
+        if (!canReadAhead()) {
+            for (long index = from; index < to; index++) {
+                if (!readInto(out, offset + count, index, null, stopAtError && count > 0)) return count;
+                count++;
+            }
+            return count;
+        }
+
+        long index = from;
+        while (index < to) {
+            FormulaRun run = new FormulaRun(index);
+            long runEnd = Math.min(to - 1, run.end);
+            for (; index <= runEnd; index++) {
+                if (!readInto(out, offset + count, index, run, stopAtError && count > 0)) return count;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean canReadAhead() {
+        return !tracked && !hasPendingUpdates;
+    }
+
+    private boolean readInto(Object[] out, int position, long index, FormulaRun run, boolean stopAtError) {
+        try {
+            out[position] = run != null ? readResolved(index, run) : get(index);
+            return true;
+        } catch (RuntimeException e) {
+            if (stopAtError) return false;
+            throw e;
+        }
+    }
+
+    /** get for an untracked array without pending updates, given the formulas covering index. */
+    private Object readResolved(long index, FormulaRun run) {
+        if (frozen) {
+            return readShared(index);
+        }
+        if (isMutable && cache != null && cache.containsKey(index)) {
+            return maybeConvert(cache.get(index));
+        }
+        Object cached = computedCache.lookup(index);
+        if (cached != FormulaMemo.MISSING) {
+            return maybeConvert(cached);
+        }
+        Object result = evaluateSequenceFormula(index, run.sequence);
+        if (result == null) result = evaluateConditionalFormula(index, run.conditional);
+        if (result == null) result = evaluateVectorRecurrenceFormula(index, run.vector);
+        if (result == null) result = evaluateLinearRecurrenceFormula(index, run.linear);
+        if (result == null) result = calculateValue(index);
+        return maybeConvert(result);
+    }
+
+    /** The formula of each kind covering a stretch of indices starting at start. */
+    private final class FormulaRun {
+        final SequenceFormula sequence;
+        final ConditionalFormula conditional;
+        final VectorRecurrenceBinding vector;
+        final LinearRecurrenceFormula linear;
+        final long end;
+
+        FormulaRun(long start) {
+            sequence = sequenceFormulas.find(start);
+            conditional = conditionalFormulas.find(start);
+            vector = vectorRecurrenceFormulas.find(start);
+            linear = linearRecurrenceFormulas.find(start);
+            end = Math.min(
+                Math.min(sequenceFormulas.runEnd(start), conditionalFormulas.runEnd(start)),
+                Math.min(vectorRecurrenceFormulas.runEnd(start), linearRecurrenceFormulas.runEnd(start)));
         }
     }
 
@@ -910,6 +1281,10 @@ public class NaturalArray {
         if (isMutable && cache != null && cache.containsKey(index)) {
             return cache.get(index);
         }
+        if (frozen) {
+            Object shared = sharedMemo != null ? sharedMemo.get(index) : FormulaMemo.MISSING;
+            return shared != FormulaMemo.MISSING ? shared : null;
+        }
         if (computedCache != null && computedCache.containsKey(index)) {
             return computedCache.get(index);
         }
@@ -950,6 +1325,7 @@ public class NaturalArray {
     }
 
     public void set(long index, Object value) {
+        checkNotFrozen();
         if (index < 0) {
             long size = size();
             index = size + index;
@@ -991,7 +1367,7 @@ public class NaturalArray {
         }
 
         if (cache == null) {
-            cache = new HashMap<Long, Object>();
+            cache = new ElementStore(hasLongElements());
         }
 
         cache.put(index, value);
@@ -1024,6 +1400,7 @@ public class NaturalArray {
     }
 
     public void setRange(Object range, Object value) {
+        checkNotFrozen();
         if (range == null) {
             throw new InternalError("setRange called with null range");
         }
@@ -1085,6 +1462,7 @@ public class NaturalArray {
     }
 
     public void setMultiRange(Object multiRange, Object value) {
+        checkNotFrozen();
         if (multiRange == null) {
             throw new InternalError("setMultiRange called with null multiRange");
         }
@@ -1142,7 +1520,7 @@ public class NaturalArray {
     }
     
     private void applyPendingUpdatesForIndex(long index) {
-        String timer = startPerfTimer(DebugSystem.Level.TRACE, PERF_PREFIX + "applyPendingUpdatesForIndex");
+        long metricStart = Metrics.start();
         try {
         if (!hasPendingUpdates || pendingUpdates.isEmpty()) {
             return;
@@ -1154,12 +1532,12 @@ public class NaturalArray {
         }
 
         if (cache == null) {
-            cache = new HashMap<Long, Object>();
+            cache = new ElementStore(hasLongElements());
         }
         cache.put(index, resolvedUpdate.value);
         invalidateRecentCache(index);
         } finally {
-            stopPerfTimer(timer);
+            Metrics.stop(METRIC_APPLY_PENDING_UPDATES_FOR_INDEX, metricStart);
         }
     }
 
@@ -1222,7 +1600,7 @@ public class NaturalArray {
     }
 
     private PendingRangeUpdate resolvePendingUpdateForIndex(long index) {
-        String timer = startPerfTimer(DebugSystem.Level.TRACE, PERF_PREFIX + "resolvePendingUpdateForIndex");
+        long metricStart = Metrics.start();
         try {
         if (pendingUpdatesByStart == null) {
             for (int i = pendingUpdates.size() - 1; i >= 0; i--) {
@@ -1264,12 +1642,12 @@ public class NaturalArray {
         }
         return winner;
         } finally {
-            stopPerfTimer(timer);
+            Metrics.stop(METRIC_RESOLVE_PENDING_UPDATE_FOR_INDEX, metricStart);
         }
     }
     
     public void commitUpdates() {
-        String timer = startPerfTimer(DebugSystem.Level.DEBUG, PERF_PREFIX + "commitUpdates");
+        long metricStart = Metrics.start();
         try {
         if (!hasPendingUpdates || pendingUpdates.isEmpty()) {
             return;
@@ -1316,7 +1694,7 @@ public class NaturalArray {
         pendingUpdateOrderPrefixDirty = false;
         hasPendingUpdates = false;
         } finally {
-            stopPerfTimer(timer);
+            Metrics.stop(METRIC_COMMIT_UPDATES, metricStart);
         }
     }
 
@@ -1345,7 +1723,7 @@ public class NaturalArray {
         
         // Apply to cache
         if (cache == null) {
-            cache = new HashMap<Long, Object>();
+            cache = new ElementStore(hasLongElements());
         }
         
         for (long i = 0; i < iterations; i++) {
@@ -1483,22 +1861,48 @@ public class NaturalArray {
     }
 
     private Object calculateValue(long index) {
-        String timer = startPerfTimer(DebugSystem.Level.TRACE, PERF_PREFIX + "calculateValue");
+        long metricStart = Metrics.start();
         try {
             if (isLexicographicalRange) {
                 return calculateLexValue(index);
             }
 
+            if (resolveLongBounds()) {
+                try {
+                    return AutoStackingNumber.fromLong(
+                        Math.addExact(longStart, Math.multiplyExact(index, longStep)));
+                } catch (ArithmeticException e) {
+                    // Overflows a word; let stacked arithmetic report it.
+                }
+            }
+
             AutoStackingNumber startVal = getStart();
             AutoStackingNumber stepVal = getStep();
             AutoStackingNumber indexNum = AutoStackingNumber.fromLong(index);
             
             return startVal.add(indexNum.multiply(stepVal));
         } finally {
-            stopPerfTimer(timer);
+            Metrics.stop(METRIC_CALCULATE_VALUE, metricStart);
         }
     }
 
+    /** Whether start and step of this [int] range are single-word integers. */
+    private boolean resolveLongBounds() {
+        if (!longBoundsResolved) {
+            longBoundsResolved = true;
+            if (!isLexicographicalRange && hasLongElements()) {
+                AutoStackingNumber startVal = getStart();
+                AutoStackingNumber stepVal = getStep();
+                if (startVal.getStacks() == 1 && stepVal.getStacks() == 1) {
+                    longStart = startVal.longValue();
+                    longStep = stepVal.longValue();
+                    hasLongBounds = true;
+                }
+            }
+        }
+        return hasLongBounds;
+    }
+
     // ========== GETTERS WITH LAZY INITIALIZATION ==========
 
     private AutoStackingNumber getStart() {
@@ -1562,6 +1966,7 @@ public class NaturalArray {
     // ========== FORMULA OPTIMIZATIONS ==========
 
     public void addSequenceFormula(SequenceFormula formula) {
+        checkNotFrozen();
         if (formula == null) {
             throw new InternalError("Attempted to add null SequenceFormula");
         }
@@ -1571,11 +1976,12 @@ public class NaturalArray {
             ArrayTracker.recordFormulaApplication(this);
         }
         
-        sequenceFormulas.add(formula);
+        sequenceFormulas.add(formula.start, formula.end, formula);
         clearCache();
     }
 
     public void addConditionalFormula(ConditionalFormula formula) {
+        checkNotFrozen();
         if (formula == null) {
             throw new InternalError("Attempted to add null ConditionalFormula");
         }
@@ -1585,18 +1991,12 @@ public class NaturalArray {
             ArrayTracker.recordFormulaApplication(this);
         }
         
-        if (conditionalFormulas.isEmpty()) {
-            conditionalFormulas.add(formula);
-        } else {
-            int lastIndex = conditionalFormulas.size() - 1;
-            ConditionalFormula current = conditionalFormulas.get(lastIndex);
-            ConditionalFormula merged = ConditionalFormula.compose(formula, current);
-            conditionalFormulas.set(lastIndex, merged);
-        }
+        conditionalFormulas.add(formula.start, formula.end, formula);
         clearCache();
     }
 
     public void addLinearRecurrenceFormula(LinearRecurrenceFormula formula) {
+        checkNotFrozen();
         if (formula == null) {
             throw new InternalError("Attempted to add null LinearRecurrenceFormula");
         }
@@ -1605,18 +2005,12 @@ public class NaturalArray {
             ArrayTracker.recordFormulaApplication(this);
         }
         
-        if (linearRecurrenceFormulas.isEmpty()) {
-            linearRecurrenceFormulas.add(formula);
-        } else {
-            int lastIndex = linearRecurrenceFormulas.size() - 1;
-            LinearRecurrenceFormula current = linearRecurrenceFormulas.get(lastIndex);
-            LinearRecurrenceFormula merged = LinearRecurrenceFormula.compose(formula, current);
-            linearRecurrenceFormulas.set(lastIndex, merged);
-        }
+        linearRecurrenceFormulas.add(formula.start, formula.end, formula);
         clearCache();
     }
 
     public void addVectorRecurrenceFormula(VectorRecurrenceFormula formula, int sequenceIndex) {
+        checkNotFrozen();
         if (formula == null) {
             throw new InternalError("Attempted to add null VectorRecurrenceFormula");
         }
@@ -1628,10 +2022,47 @@ public class NaturalArray {
             ArrayTracker.recordFormulaApplication(this);
         }
 
-        vectorRecurrenceFormulas.add(new VectorRecurrenceBinding(formula, sequenceIndex));
+        vectorRecurrenceFormulas.add(formula.start, formula.end, new VectorRecurrenceBinding(formula, sequenceIndex));
         clearCache();
     }
 
+    private void memoize(long index, Object result) {
+        if (frozen) {
+            if (sharedMemo != null) sharedMemo.put(index, result);
+            return;
+        }
+        int evicted = computedCache.put(index, result);
+        if (tracked) {
+            ArrayTracker.recordMemoMiss(this);
+            if (evicted > 0) ArrayTracker.recordMemoEvictions(this, evicted);
+        }
+    }
+
+    /** Replaces the formula memo policy; already memoized results are dropped. */
+    public void setMemoPolicy(MemoPolicy policy) {
+        checkNotFrozen();
+        computedCache = new FormulaMemo(policy);
+        clearRecentCache();
+        lastIndex = null;
+        lastValue = null;
+    }
+
+    public MemoPolicy getMemoPolicy() {
+        return computedCache.policy();
+    }
+
+    public long getMemoHits() {
+        return computedCache.hits();
+    }
+
+    public long getMemoMisses() {
+        return computedCache.misses();
+    }
+
+    public long getMemoEvictions() {
+        return computedCache.evictions();
+    }
+
     public void clearCache() {
         if (computedCache != null) {
             computedCache.clear();
@@ -1642,156 +2073,85 @@ public class NaturalArray {
         invalidateSize();
     }
 
-    private Object evaluateSequenceFormulas(long index) {
-        String timer = startPerfTimer(DebugSystem.Level.TRACE, PERF_PREFIX + "evaluateSequenceFormulas");
+    private Object evaluateSequenceFormula(long index, SequenceFormula formula) {
+        long metricStart = Metrics.start();
         try {
-            if (sequenceFormulas.isEmpty()) return null;
-            
-            
-            for (int i = sequenceFormulas.size() - 1; i >= 0; i--) {
-                SequenceFormula formula = sequenceFormulas.get(i);
-                if (formula.contains(index)) {
-                    try {
-                        Object result = formula.evaluate(index, evaluator, context);
-                        if (computedCache == null) {
-                            computedCache = new HashMap<Long, Object>();
-                        }
-                        computedCache.put(index, result);
-                        return result;
-                    } catch (ProgramError e) {
-                        throw e;
-                    } catch (Exception e) {
-                        throw new InternalError(
-                            "Sequence formula evaluation failed at index " + index, e);
-                    }
-                }
+            if (formula == null) return null;
+            try {
+                Object result = formula.evaluate(index, evaluator, context);
+                memoize(index, result);
+                return result;
+            } catch (ProgramError e) {
+                throw e;
+            } catch (Exception e) {
+                throw new InternalError(
+                    "Sequence formula evaluation failed at index " + index, e);
             }
-            return null;
         } finally {
-            stopPerfTimer(timer);
+            Metrics.stop(METRIC_EVALUATE_SEQUENCE_FORMULA, metricStart);
         }
     }
 
-    private Object evaluateConditionalFormulas(long index) {
-        String timer = startPerfTimer(DebugSystem.Level.TRACE, PERF_PREFIX + "evaluateConditionalFormulas");
+    private Object evaluateConditionalFormula(long index, ConditionalFormula formula) {
+        long metricStart = Metrics.start();
         try {
-            if (conditionalFormulas.isEmpty()) return null;
-
-            for (int i = conditionalFormulas.size() - 1; i >= 0; i--) {
-                ConditionalFormula formula = conditionalFormulas.get(i);
-                if (formula == null) {
-                    throw new InternalError("Null ConditionalFormula in list");
-                }
-                
-                if (formula.contains(index)) {
-                    try {
-                        Object result = formula.evaluate(index, evaluator, context);
-                        if (result != null) {
-                            if (computedCache == null) {
-                                computedCache = new HashMap<Long, Object>();
-                            }
-                            computedCache.put(index, result);
-                        }
-                        return result;
-                    } catch (ProgramError e) {
-                        throw e;
-                    } catch (Exception e) {
-                        throw new InternalError(
-                            "Conditional formula evaluation failed at index " + index, e);
-                    }
+            if (formula == null) return null;
+            try {
+                Object result = formula.evaluate(index, evaluator, context);
+                if (result != null) {
+                    memoize(index, result);
                 }
+                return result;
+            } catch (ProgramError e) {
+                throw e;
+            } catch (Exception e) {
+                throw new InternalError(
+                    "Conditional formula evaluation failed at index " + index, e);
             }
-            return null;
         } finally {
-            stopPerfTimer(timer);
+            Metrics.stop(METRIC_EVALUATE_CONDITIONAL_FORMULA, metricStart);
         }
     }
 
-    private Object evaluateLinearRecurrenceFormulas(long index) {
-        String timer = startPerfTimer(DebugSystem.Level.TRACE, PERF_PREFIX + "evaluateLinearRecurrenceFormulas");
+    private Object evaluateLinearRecurrenceFormula(long index, LinearRecurrenceFormula formula) {
+        long metricStart = Metrics.start();
         try {
-            if (linearRecurrenceFormulas.isEmpty()) return null;
-
-            for (int i = linearRecurrenceFormulas.size() - 1; i >= 0; i--) {
-                LinearRecurrenceFormula formula = linearRecurrenceFormulas.get(i);
-                if (formula == null) {
-                    throw new InternalError("Null LinearRecurrenceFormula in list");
-                }
-                
-                if (formula.contains(index)) {
-                    try {
-                        Object result = formula.evaluate(index);
-                        if (result != null) {
-                            if (computedCache == null) {
-                                computedCache = new HashMap<Long, Object>();
-                            }
-                            computedCache.put(index, result);
-                        }
-                        return result;
-                    } catch (ProgramError e) {
-                        throw e;
-                    } catch (Exception e) {
-                        throw new InternalError(
-                            "Linear recurrence formula evaluation failed at index " + index, e);
-                    }
+            if (formula == null) return null;
+            try {
+                Object result = formula.evaluate(index);
+                if (result != null) {
+                    memoize(index, result);
                 }
+                return result;
+            } catch (ProgramError e) {
+                throw e;
+            } catch (Exception e) {
+                throw new InternalError(
+                    "Linear recurrence formula evaluation failed at index " + index, e);
             }
-            return null;
         } finally {
-            stopPerfTimer(timer);
+            Metrics.stop(METRIC_EVALUATE_LINEAR_RECURRENCE_FORMULA, metricStart);
         }
     }
 
-    private Object evaluateVectorRecurrenceFormulas(long index) {
-        String timer = startPerfTimer(DebugSystem.Level.TRACE, PERF_PREFIX + "evaluateVectorRecurrenceFormulas");
+    private Object evaluateVectorRecurrenceFormula(long index, VectorRecurrenceBinding binding) {
+        long metricStart = Metrics.start();
         try {
-            if (vectorRecurrenceFormulas.isEmpty()) return null;
-
-            for (int i = vectorRecurrenceFormulas.size() - 1; i >= 0; i--) {
-                VectorRecurrenceBinding binding = vectorRecurrenceFormulas.get(i);
-                if (binding == null || binding.formula == null) {
-                    throw new InternalError("Null VectorRecurrenceFormula binding in list");
-                }
-                if (binding.formula.contains(index)) {
-                    try {
-                        Object result = binding.formula.evaluate(index, binding.sequenceIndex);
-                        if (result != null) {
-                            if (computedCache == null) {
-                                computedCache = new HashMap<Long, Object>();
-                            }
-                            computedCache.put(index, result);
-                        }
-                        return result;
-                    } catch (ProgramError e) {
-                        throw e;
-                    } catch (Exception e) {
-                        throw new InternalError(
-                            "Vector recurrence formula evaluation failed at index " + index, e);
-                    }
+            if (binding == null) return null;
+            try {
+                Object result = binding.formula.evaluate(index, binding.sequenceIndex);
+                if (result != null) {
+                    memoize(index, result);
                 }
+                return result;
+            } catch (ProgramError e) {
+                throw e;
+            } catch (Exception e) {
+                throw new InternalError(
+                    "Vector recurrence formula evaluation failed at index " + index, e);
             }
-            return null;
         } finally {
-            stopPerfTimer(timer);
-        }
-    }
-
-    private static boolean isTimerEnabled(DebugSystem.Level level) {
-        DebugSystem.Level current = DebugSystem.getLevel();
-        return current != DebugSystem.Level.OFF && current.getLevel() >= level.getLevel();
-    }
-
-    private static String startPerfTimer(DebugSystem.Level level, String operation) {
-        if (!isTimerEnabled(level)) {
-            return null;
-        }
-        DebugSystem.startTimer(level, operation);
-        return operation;
-    }
-
-    private static void stopPerfTimer(String timerName) {
-        if (timerName != null) {
-            DebugSystem.stopTimer(timerName);
+            Metrics.stop(METRIC_EVALUATE_VECTOR_RECURRENCE_FORMULA, metricStart);
         }
     }
 
@@ -1836,14 +2196,136 @@ public class NaturalArray {
     // ========== UTILITY METHODS ==========
 
     public List<Object> toList() {
+        return new ArrayList<Object>(Arrays.asList(materialize(DEFAULT_PARALLELISM)));
+    }
+
+    /**
+     * Every element in index order. When elements are independent of each
+     * other (plain ranges, stored values, and formulas that read nothing but
+     * the index) a long array is evaluated in chunks on a fork-join pool;
+     * whatever a worker cannot resolve is read through get, and every other
+     * array through getRange, on the calling thread.
+     */
+    public Object[] materialize(int parallelism) {
         commitUpdates();
-        
-        List<Object> result = new ArrayList<Object>();
+
         long size = size();
-        for (long i = 0; i < size; i++) {
-            result.add(get(i));
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new ProgramError("Array too large to materialize: " + size);
+        }
+        Object[] values = new Object[(int) size];
+        if (parallelism <= 1 || size < PARALLEL_MIN_ELEMENTS || !prepareDetached()) {
+            readRange(0, values.length, values, 0, false);
+            return values;
+        }
+        materializePool(parallelism).invoke(new MaterializeChunk(values, 0, values.length));
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                values[i] = get(i);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Whether elements can be computed off-thread by computeDetached. Lazy
+     * state (bounds, compiled formulas) is resolved here, before any worker
+     * reads it. Tracked arrays stay on one thread.
+     */
+    private boolean prepareDetached() {
+        if (tracked || hasPendingUpdates) return false;
+        if (!linearRecurrenceFormulas.isEmpty() || !vectorRecurrenceFormulas.isEmpty()) return false;
+        for (SequenceFormula formula : sequenceFormulas.formulas()) {
+            if (!formula.isDetached()) return false;
+        }
+        for (ConditionalFormula formula : conditionalFormulas.formulas()) {
+            if (!formula.isDetached()) return false;
+        }
+        resolveBounds();
+        return true;
+    }
+
+    /** Resolves lazily computed bounds, so that other threads only ever read them. */
+    private void resolveBounds() {
+        size();
+        if (!isLexicographicalRange) {
+            getStart();
+        }
+        getStep();
+        resolveLongBounds();
+    }
+
+    /** Element value without touching caches or counters; null when get must decide. */
+    private Object computeDetached(long index, TypeHandler types) {
+        if (isMutable && cache != null && cache.containsKey(index)) {
+            Object stored = cache.get(index);
+            return stored != null ? maybeConvert(stored) : null;
+        }
+        SequenceFormula sequence = sequenceFormulas.find(index);
+        if (sequence != null) {
+            Object result = sequence.evaluateDetached(index, types);
+            return result != null ? maybeConvert(result) : null;
+        }
+        ConditionalFormula conditional = conditionalFormulas.find(index);
+        if (conditional != null) {
+            Object result = conditional.evaluateDetached(index, types);
+            return result != null ? maybeConvert(result) : null;
+        }
+        return maybeConvert(calculateValue(index));
+    }
+
+    /** Shared pool of the given size; the common pool when it is that size. */
+    private static synchronized ForkJoinPool materializePool(int parallelism) {
+        if (parallelism == ForkJoinPool.getCommonPoolParallelism()) {
+            return ForkJoinPool.commonPool();
+        }
+        ForkJoinPool pool = materializePools.get(parallelism);
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+            materializePools.put(parallelism, pool);
+        }
+        return pool;
+    }
+
+    @SuppressWarnings("serial")
+    private final class MaterializeChunk extends RecursiveAction {
+        private final Object[] values;
+        private final int from;
+        private final int to;
+
+        MaterializeChunk(Object[] values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > MATERIALIZE_CHUNK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MaterializeChunk(values, from, middle), new MaterializeChunk(values, middle, to));
+                return;
+            }
+            TypeHandler types = new TypeHandler();
+            for (int i = from; i < to; i++) {
+                try {
+                    values[i] = computeDetached(i, types);
+                } catch (RuntimeException e) {
+                    // Left for get, which reports the error in index order.
+                }
+            }
+        }
+    }
+
+    private static int parseParallelism(String raw) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (raw == null) return processors;
+        try {
+            int parsed = Integer.parseInt(raw.trim());
+            return parsed > 0 ? parsed : processors;
+        } catch (NumberFormatException e) {
+            return processors;
         }
-        return result;
     }
 
     public boolean isMutable() {
@@ -1863,6 +2345,8 @@ public class NaturalArray {
     }
     
     public void discardUpdates() {
+        checkNotFrozen();
+        version++;
         pendingUpdates.clear();
         pendingUpdatesByStart = null;
         pendingUpdateOrderPrefixByStart = null;
@@ -1947,16 +2431,16 @@ public class NaturalArray {
             sb.append(")");
 
             if (!sequenceFormulas.isEmpty()) {
-                sb.append("\n  Sequence formulas: ").append(sequenceFormulas.size());
+                sb.append("\n  Sequence formulas: ").append(sequenceFormulas.formulaCount());
             }
             if (!conditionalFormulas.isEmpty()) {
-                sb.append("\n  Conditional formulas: ").append(conditionalFormulas.size());
+                sb.append("\n  Conditional formulas: ").append(conditionalFormulas.formulaCount());
             }
             if (!linearRecurrenceFormulas.isEmpty()) {
-                sb.append("\n  Linear recurrence formulas: ").append(linearRecurrenceFormulas.size());
+                sb.append("\n  Linear recurrence formulas: ").append(linearRecurrenceFormulas.formulaCount());
             }
             if (!vectorRecurrenceFormulas.isEmpty()) {
-                sb.append("\n  Vector recurrence formulas: ").append(vectorRecurrenceFormulas.size());
+                sb.append("\n  Vector recurrence formulas: ").append(vectorRecurrenceFormulas.formulaCount());
             }
             return sb.toString();
             
@@ -0,0 +1,15 @@
+package cod.range;
+
+/** Tuning settings of the range package: a system property, else an environment variable. */
+final class Settings {
+    private Settings() {}
+
+    /** The property's value, else the environment variable's; null when both are unset or blank. */
+    static String get(String property, String envVar) {
+        String value = System.getProperty(property);
+        if (value != null && !value.trim().isEmpty()) return value;
+        value = System.getenv(envVar);
+        if (value != null && !value.trim().isEmpty()) return value;
+        return null;
+    }
+}
@@ -0,0 +1,74 @@
+package cod.range;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Formula memo for frozen NaturalArrays read by several threads. A fixed
+ * direct-mapped table of immutable entries: a put publishes its entry with
+ * one compare-and-set and gives way to a concurrent put into the same slot,
+ * so readers never lock and never see a half-built entry.
+ */
+final class SharedMemo {
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 22;
+    // Rough footprint of one entry plus its slot, for byte budgets.
+    private static final long ENTRY_BYTES = 112;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    private SharedMemo(int capacity) {
+        this.slots = new AtomicReferenceArray<Entry>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /** A table sized after the policy's budget, or null when the policy memoizes nothing. */
+    static SharedMemo forPolicy(MemoPolicy policy) {
+        long entries;
+        switch (policy.kind) {
+            case NONE:
+                return null;
+            case ENTRIES:
+                entries = policy.limit;
+                break;
+            case BYTES:
+                entries = policy.limit / ENTRY_BYTES;
+                break;
+            default:
+                entries = MAX_CAPACITY;
+                break;
+        }
+        int capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && (long) capacity * 2 <= entries) {
+            capacity *= 2;
+        }
+        return new SharedMemo(capacity);
+    }
+
+    /** Memoized value (possibly null) or FormulaMemo.MISSING. */
+    Object get(long key) {
+        Entry entry = slots.get(slot(key));
+        return entry != null && entry.key == key ? entry.value : FormulaMemo.MISSING;
+    }
+
+    void put(long key, Object value) {
+        int slot = slot(key);
+        Entry current = slots.get(slot);
+        slots.compareAndSet(slot, current, new Entry(key, value));
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static final class Entry {
+        final long key;
+        final Object value;
+
+        Entry(long key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
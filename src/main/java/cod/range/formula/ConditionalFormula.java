@@ -25,6 +25,9 @@ public class ConditionalFormula {
     private final ConditionalFormula newerFormula;
     private final ConditionalFormula olderFormula;
 
+    private FormulaProgram program;
+    private boolean programResolved;
+
     public ConditionalFormula(long start, long end, String indexVar,
                              List<Expr> conditions,
                              List<List<Stmt>> branchStatements,
@@ -81,6 +84,18 @@ public class ConditionalFormula {
             return evaluateComposite(index, evaluator, context);
         }
 
+        FormulaProgram compiled = compiledProgram();
+        if (compiled != null) {
+            try {
+                return compiled.run(index, evaluator, context);
+            } catch (FormulaProgram.Deopt e) {
+                // Evaluate this index through the interpreter below.
+            } catch (ProgramError e) {
+                // Same recovery as the interpreted fast path.
+                return interpretiveEvaluation(context.copyWithVariable(indexVar, index, null), evaluator);
+            }
+        }
+
         ExecutionContext evalCtx = context.copyWithVariable(indexVar, index, null);
         if (hasFastPathExpression) {
             try {
@@ -94,6 +109,37 @@ public class ConditionalFormula {
         return interpretiveEvaluation(evalCtx, evaluator);
     }
 
+    private FormulaProgram compiledProgram() {
+        if (!programResolved) {
+            programResolved = true;
+            if (hasFastPathExpression) {
+                program = FormulaProgram.compile(indexVar, null, Collections.singletonList(unifiedExpression));
+            }
+        }
+        return program;
+    }
+
+    /** Whether evaluateDetached covers this formula; call before handing it to workers. */
+    public boolean isDetached() {
+        FormulaProgram compiled = compiledProgram();
+        return compiled != null && compiled.isDetached();
+    }
+
+    /**
+     * Evaluates without the interpreter, for worker threads that each pass
+     * their own TypeHandler. Null means the index must go through evaluate;
+     * errors of the program itself are thrown as they are.
+     */
+    public Object evaluateDetached(long index, TypeHandler types) {
+        FormulaProgram compiled = compiledProgram();
+        if (compiled == null) return null;
+        try {
+            return compiled.runDetached(index, types);
+        } catch (FormulaProgram.Deopt e) {
+            return null;
+        }
+    }
+
     private boolean isComposite() {
         return newerFormula != null || olderFormula != null;
     }
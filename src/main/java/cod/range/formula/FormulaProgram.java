@@ -0,0 +1,446 @@
+package cod.range.formula;
+
+import cod.ast.node.*;
+import cod.error.ProgramError;
+import cod.interpreter.Evaluator;
+import cod.interpreter.context.ExecutionContext;
+import cod.interpreter.handler.TypeHandler;
+import cod.math.AutoStackingNumber;
+import cod.range.NaturalArray;
+
+import java.util.*;
+
+/**
+ * Formula steps compiled once into a tree of closures over a primitive index.
+ * Operators call the same TypeHandler routines the interpreter uses, so
+ * results are identical; integer-only subtrees over the index run in plain
+ * long arithmetic and fall back to those routines on overflow. The index and
+ * temporaries are bound directly instead of being written to the context.
+ *
+ * Only a pure expression subset compiles (literals, identifiers, arithmetic,
+ * comparisons, unary +/-/! and if-expressions). At run time, operands the
+ * compiled tree does not handle exactly (pointers, arrays) raise
+ * {@link Deopt} and the caller evaluates that index interpretively.
+ */
+final class FormulaProgram {
+    private static final Deopt DEOPT = new Deopt();
+
+    private final Node[] steps;
+    private final int[] tempSlots;
+    private final int tempCount;
+    private final boolean detached;
+
+    private FormulaProgram(Node[] steps, int[] tempSlots, int tempCount, boolean detached) {
+        this.steps = steps;
+        this.tempSlots = tempSlots;
+        this.tempCount = tempCount;
+        this.detached = detached;
+    }
+
+    /** Signals that one evaluation must be redone interpretively. */
+    @SuppressWarnings("serial")
+    static final class Deopt extends RuntimeException {
+        private Deopt() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Compiles steps evaluated in order; a non-null temp name binds that
+     * step's result for later steps. Returns null when any expression falls
+     * outside the compiled subset.
+     */
+    static FormulaProgram compile(String indexVar, List<String> tempVars, List<Expr> expressions) {
+        Map<String, Integer> temps = new HashMap<String, Integer>();
+        Node[] steps = new Node[expressions.size()];
+        int[] tempSlots = new int[expressions.size()];
+        boolean detached = true;
+        for (int i = 0; i < expressions.size(); i++) {
+            Compiler compiler = new Compiler(indexVar, temps);
+            Node node = compiler.compile(expressions.get(i));
+            detached &= !compiler.usesVariables;
+            if (node == null) return null;
+            steps[i] = node;
+            String tempVar = tempVars != null ? tempVars.get(i) : null;
+            if (tempVar == null) {
+                tempSlots[i] = -1;
+                continue;
+            }
+            if (tempVar.equals(indexVar)) return null;
+            Integer slot = temps.get(tempVar);
+            if (slot == null) {
+                slot = Integer.valueOf(temps.size());
+                temps.put(tempVar, slot);
+            }
+            tempSlots[i] = slot.intValue();
+        }
+        return new FormulaProgram(steps, tempSlots, temps.size(), detached);
+    }
+
+    /** True when the steps read nothing but the index and literals. */
+    boolean isDetached() {
+        return detached;
+    }
+
+    /** Result of the last step; throws Deopt when the index needs the interpreter. */
+    Object run(long index, Evaluator evaluator, ExecutionContext context) {
+        return run(new Frame(index, tempCount, evaluator, context, context.getTypeHandler()));
+    }
+
+    /**
+     * Runs a detached program without an interpreter. Safe on any thread as
+     * long as each thread passes its own TypeHandler.
+     */
+    Object runDetached(long index, TypeHandler types) {
+        if (!detached) throw DEOPT;
+        return run(new Frame(index, tempCount, null, null, types));
+    }
+
+    private Object run(Frame frame) {
+        Object result = null;
+        try {
+            for (int i = 0; i < steps.length; i++) {
+                result = steps[i].eval(frame);
+                if (tempSlots[i] >= 0) {
+                    frame.temps[tempSlots[i]] = result;
+                }
+            }
+        } catch (ArithmeticException | ClassCastException | IllegalArgumentException e) {
+            // Operands the number routines reject (or overflow past what
+            // AutoStackingNumber holds) get the interpreter's handling.
+            throw DEOPT;
+        }
+        return result;
+    }
+
+    private static final class Frame {
+        final long index;
+        final Object[] temps;
+        final Evaluator evaluator;
+        final ExecutionContext context;
+        final TypeHandler types;
+
+        Frame(long index, int tempCount, Evaluator evaluator, ExecutionContext context, TypeHandler types) {
+            this.index = index;
+            this.temps = tempCount == 0 ? null : new Object[tempCount];
+            this.evaluator = evaluator;
+            this.context = context;
+            this.types = types;
+        }
+    }
+
+    // ========== NODES ==========
+
+    private abstract static class Node {
+        abstract Object eval(Frame frame);
+    }
+
+    /** A node that may also evaluate as a primitive long. */
+    private abstract static class LongNode extends Node {
+        /** Whether evalLong is exact for this subtree (barring overflow). */
+        abstract boolean isLong();
+
+        /** Primitive value; throws ArithmeticException on overflow. */
+        abstract long evalLong(Frame frame);
+
+        static boolean isLong(Node node) {
+            return node instanceof LongNode && ((LongNode) node).isLong();
+        }
+    }
+
+    private static final class IndexNode extends LongNode {
+        boolean isLong() {
+            return true;
+        }
+
+        long evalLong(Frame frame) {
+            return frame.index;
+        }
+
+        Object eval(Frame frame) {
+            // The interpreter binds the index variable as a Long.
+            return Long.valueOf(frame.index);
+        }
+    }
+
+    private static final class ConstantNode extends LongNode {
+        private final Object value;
+        private final boolean longValued;
+        private final long longValue;
+
+        ConstantNode(Object value) {
+            this.value = value;
+            long asLong = 0L;
+            boolean fits = false;
+            if (value instanceof AutoStackingNumber) {
+                try {
+                    asLong = ((AutoStackingNumber) value).longValue();
+                    fits = true;
+                } catch (ArithmeticException e) {
+                    fits = false;
+                }
+            }
+            this.longValued = fits;
+            this.longValue = asLong;
+        }
+
+        boolean isLong() {
+            return longValued;
+        }
+
+        long evalLong(Frame frame) {
+            return longValue;
+        }
+
+        Object eval(Frame frame) {
+            return value;
+        }
+    }
+
+    private static final class TempNode extends Node {
+        private final int slot;
+
+        TempNode(int slot) {
+            this.slot = slot;
+        }
+
+        Object eval(Frame frame) {
+            Object value = frame.temps[slot];
+            // A none temp falls through to outer lookups in the interpreter.
+            if (value == null) throw DEOPT;
+            return value;
+        }
+    }
+
+    private static final class VariableNode extends Node {
+        private final Identifier identifier;
+
+        VariableNode(Identifier identifier) {
+            this.identifier = identifier;
+        }
+
+        Object eval(Frame frame) {
+            Object value = frame.context.getVariable(identifier.name);
+            if (value != null) return value;
+            // Slots, fields and globals resolve exactly as the interpreter does.
+            return frame.evaluator.evaluate(identifier, frame.context);
+        }
+    }
+
+    private static final class BinaryNode extends LongNode {
+        private final String op;
+        private final Node left;
+        private final Node right;
+        private final boolean longOperands;
+
+        BinaryNode(String op, Node left, Node right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+            this.longOperands = isLong(left) && isLong(right);
+        }
+
+        boolean isLong() {
+            return longOperands && isArithmetic(op);
+        }
+
+        long evalLong(Frame frame) {
+            long a = ((LongNode) left).evalLong(frame);
+            long b = ((LongNode) right).evalLong(frame);
+            switch (op) {
+                case "+":
+                    return Math.addExact(a, b);
+                case "-":
+                    return Math.subtractExact(a, b);
+                case "*":
+                    return Math.multiplyExact(a, b);
+                default:
+                    if (b == 0L) {
+                        throw new ProgramError("Modulus by zero");
+                    }
+                    return a % b;
+            }
+        }
+
+        Object eval(Frame frame) {
+            if (longOperands) {
+                try {
+                    if (isArithmetic(op)) {
+                        return AutoStackingNumber.fromLong(evalLong(frame));
+                    }
+                    Boolean compared = compareLongs(((LongNode) left).evalLong(frame), ((LongNode) right).evalLong(frame));
+                    if (compared != null) return compared;
+                } catch (ArithmeticException e) {
+                    // Overflowed a word; the generic routines pick the wider result.
+                }
+            }
+            return evalGeneric(left.eval(frame), right.eval(frame), frame.types);
+        }
+
+        private Boolean compareLongs(long a, long b) {
+            switch (op) {
+                case ">":
+                    return a > b;
+                case "<":
+                    return a < b;
+                case ">=":
+                    return a >= b;
+                case "<=":
+                    return a <= b;
+                case "==":
+                    return a == b;
+                case "!=":
+                    return a != b;
+                default:
+                    return null;
+            }
+        }
+
+        private Object evalGeneric(Object a, Object b, TypeHandler types) {
+            if (!isPlainNumber(a) || !isPlainNumber(b)) {
+                Object unwrappedA = types.unwrap(a);
+                Object unwrappedB = types.unwrap(b);
+                if (unwrappedA instanceof TypeHandler.PointerValue || unwrappedB instanceof TypeHandler.PointerValue
+                    || unwrappedA instanceof NaturalArray || unwrappedB instanceof NaturalArray
+                    || unwrappedA instanceof List || unwrappedB instanceof List) {
+                    throw DEOPT;
+                }
+                if ("+".equals(op) && (a instanceof String || b instanceof String
+                    || a instanceof TextLiteral || b instanceof TextLiteral)) {
+                    return String.valueOf(unwrappedA) + String.valueOf(unwrappedB);
+                }
+            }
+            switch (op) {
+                case "+":
+                    return types.addNumbers(a, b);
+                case "-":
+                    return types.subtractNumbers(a, b);
+                case "*":
+                    return types.multiplyNumbers(a, b);
+                case "/":
+                    return types.divideNumbers(a, b);
+                case "%":
+                    return types.modulusNumbers(a, b);
+                case ">":
+                    return types.compare(a, b) > 0;
+                case "<":
+                    return types.compare(a, b) < 0;
+                case ">=":
+                    return types.compare(a, b) >= 0;
+                case "<=":
+                    return types.compare(a, b) <= 0;
+                case "==":
+                    return types.areEqual(a, b);
+                case "!=":
+                    return !types.areEqual(a, b);
+                default:
+                    throw DEOPT;
+            }
+        }
+
+        private static boolean isPlainNumber(Object value) {
+            return value instanceof AutoStackingNumber || value instanceof Long;
+        }
+
+        private static boolean isArithmetic(String op) {
+            return "+".equals(op) || "-".equals(op) || "*".equals(op) || "%".equals(op);
+        }
+    }
+
+    private static final class UnaryNode extends Node {
+        private final String op;
+        private final Node operand;
+
+        UnaryNode(String op, Node operand) {
+            this.op = op;
+            this.operand = operand;
+        }
+
+        Object eval(Frame frame) {
+            Object value = operand.eval(frame);
+            if ("+".equals(op)) return value;
+            if ("!".equals(op)) return !frame.types.isTruthy(value);
+            if (frame.types.unwrap(value) instanceof List) throw DEOPT;
+            return frame.types.negateNumber(value);
+        }
+    }
+
+    private static final class ConditionalNode extends Node {
+        private final Node condition;
+        private final Node thenNode;
+        private final Node elseNode;
+
+        ConditionalNode(Node condition, Node thenNode, Node elseNode) {
+            this.condition = condition;
+            this.thenNode = thenNode;
+            this.elseNode = elseNode;
+        }
+
+        Object eval(Frame frame) {
+            Object value = condition.eval(frame);
+            if (frame.types.isTruthy(frame.types.unwrap(value))) {
+                return thenNode.eval(frame);
+            }
+            return elseNode.eval(frame);
+        }
+    }
+
+    // ========== COMPILER ==========
+
+    private static final class Compiler {
+        private static final Set<String> BINARY_OPS = new HashSet<String>(Arrays.asList(
+            "+", "-", "*", "/", "%", ">", "<", ">=", "<=", "==", "!="
+        ));
+
+        private final String indexVar;
+        private final Map<String, Integer> temps;
+        boolean usesVariables;
+
+        Compiler(String indexVar, Map<String, Integer> temps) {
+            this.indexVar = indexVar;
+            this.temps = temps;
+        }
+
+        Node compile(Expr expr) {
+            if (expr instanceof IntLiteral) {
+                return new ConstantNode(((IntLiteral) expr).value);
+            }
+            if (expr instanceof FloatLiteral) {
+                return new ConstantNode(((FloatLiteral) expr).value);
+            }
+            if (expr instanceof BoolLiteral) {
+                return new ConstantNode(Boolean.valueOf(((BoolLiteral) expr).value));
+            }
+            if (expr instanceof Identifier) {
+                Identifier identifier = (Identifier) expr;
+                if (identifier.name == null) return null;
+                if (identifier.name.equals(indexVar)) return new IndexNode();
+                Integer slot = temps.get(identifier.name);
+                if (slot != null) return new TempNode(slot.intValue());
+                usesVariables = true;
+                return new VariableNode(identifier);
+            }
+            if (expr instanceof BinaryOp) {
+                BinaryOp binary = (BinaryOp) expr;
+                if (!BINARY_OPS.contains(binary.op)) return null;
+                Node left = compile(binary.left);
+                Node right = left != null ? compile(binary.right) : null;
+                return right != null ? new BinaryNode(binary.op, left, right) : null;
+            }
+            if (expr instanceof Unary) {
+                Unary unary = (Unary) expr;
+                if (!"-".equals(unary.op) && !"+".equals(unary.op) && !"!".equals(unary.op)) return null;
+                Node operand = compile(unary.operand);
+                return operand != null ? new UnaryNode(unary.op, operand) : null;
+            }
+            if (expr instanceof ExprIf) {
+                ExprIf exprIf = (ExprIf) expr;
+                Node condition = compile(exprIf.condition);
+                Node thenNode = condition != null ? compile(exprIf.thenExpr) : null;
+                Node elseNode = thenNode != null ? compile(exprIf.elseExpr) : null;
+                return elseNode != null ? new ConditionalNode(condition, thenNode, elseNode) : null;
+            }
+            return null;
+        }
+    }
+}
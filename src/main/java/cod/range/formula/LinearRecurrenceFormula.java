@@ -1,7 +1,9 @@
 package cod.range.formula;
 
 import cod.math.AutoStackingNumber;
-import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class LinearRecurrenceFormula {
     public final long start;
@@ -15,8 +17,20 @@ public class LinearRecurrenceFormula {
     private final boolean hasConstantTerm;
     private final LinearRecurrenceFormula newerFormula;
     private final LinearRecurrenceFormula olderFormula;
-    private transient long rollingIndex = Long.MIN_VALUE;
-    private transient AutoStackingNumber[] rollingState = null;
+
+    // All evaluation state is published as immutable snapshots (state arrays
+    // are never written after publication), so reads need no lock; racing
+    // readers at worst compute the same values twice.
+    private transient volatile Rolling rolling = null;
+
+    // Random access: transition powers T^(2^k) and states at stride-aligned indices
+    private static final long INITIAL_CHECKPOINT_STRIDE = 64L;
+    private static final int MAX_CHECKPOINTS = 4096;
+    private transient volatile AutoStackingNumber[][][] transitionPowers = null;
+    private final transient ConcurrentSkipListMap<Long, AutoStackingNumber[]> checkpoints =
+        new ConcurrentSkipListMap<Long, AutoStackingNumber[]>();
+    private final transient AtomicInteger checkpointCount = new AtomicInteger();
+    private transient volatile long checkpointStride = INITIAL_CHECKPOINT_STRIDE;
     private static final AutoStackingNumber ZERO = AutoStackingNumber.fromLong(0L);
     private static final AutoStackingNumber ONE = AutoStackingNumber.fromLong(1L);
 
@@ -99,30 +113,106 @@ public class LinearRecurrenceFormula {
             return null;
         }
 
-        synchronized (this) {
-            if (rollingState != null && index == rollingIndex) {
-                return rollingState[0];
-            }
-            if (rollingState != null && index == rollingIndex + 1L) {
-                advanceRollingState();
-                rollingIndex = index;
-                return rollingState[0];
+        Rolling current = rolling;
+        if (current != null && index == current.index) {
+            return current.state[0];
+        }
+        if (current != null && index == current.index + 1L) {
+            AutoStackingNumber[] next = advanceRollingState(current.state);
+            rolling = new Rolling(index, next);
+            if (isCheckpointIndex(index)) {
+                addCheckpoint(index, next);
             }
+            return next[0];
         }
 
+        AutoStackingNumber[] result = stateAt(index);
+        rolling = new Rolling(index, result);
+        return result[0];
+    }
+
+    /**
+     * State vector at index, advanced from the nearest checkpoint at or below
+     * it. The stride-aligned state on the way is kept as a new checkpoint, so
+     * later reads nearby only walk less than one stride.
+     */
+    private AutoStackingNumber[] stateAt(long index) {
         long lastSeedIndex = recurrenceStart - 1L;
-        long steps = index - lastSeedIndex;
+        if (checkpoints.isEmpty()
+            && checkpoints.putIfAbsent(lastSeedIndex, buildBaseState(hasConstantTerm ? order + 1 : order)) == null) {
+            checkpointCount.incrementAndGet();
+        }
 
-        int dim = hasConstantTerm ? order + 1 : order;
-        AutoStackingNumber[][] transition = buildTransition(dim);
-        AutoStackingNumber[] state = buildBaseState(dim);
+        Map.Entry<Long, AutoStackingNumber[]> floor = checkpoints.floorEntry(index);
+        long from = floor.getKey();
+        AutoStackingNumber[] state = floor.getValue();
 
-        AutoStackingNumber[] result = applyMatrixPowerToVector(transition, steps, state);
-        synchronized (this) {
-            rollingState = copyState(result);
-            rollingIndex = index;
+        long aligned = index - (index - lastSeedIndex) % checkpointStride;
+        if (aligned > from) {
+            state = advance(state, aligned - from);
+            addCheckpoint(aligned, state);
+            from = aligned;
+        }
+        return advance(state, index - from);
+    }
+
+    /** Applies T^steps to a state using the cached powers of two. */
+    private AutoStackingNumber[] advance(AutoStackingNumber[] state, long steps) {
+        AutoStackingNumber[] result = state;
+        int bit = 0;
+        while (steps != 0) {
+            if ((steps & 1L) != 0) {
+                result = multiply(transitionPower(bit), result);
+            }
+            steps >>>= 1;
+            bit++;
+        }
+        return result;
+    }
+
+    /** T^(2^bit); the table is grown copy-on-write. */
+    private AutoStackingNumber[][] transitionPower(int bit) {
+        AutoStackingNumber[][][] powers = transitionPowers;
+        if (powers == null || powers.length <= bit) {
+            int have = powers == null ? 0 : powers.length;
+            AutoStackingNumber[][][] grown = new AutoStackingNumber[bit + 1][][];
+            if (have > 0) {
+                System.arraycopy(powers, 0, grown, 0, have);
+            } else {
+                grown[0] = buildTransition(hasConstantTerm ? order + 1 : order);
+                have = 1;
+            }
+            for (int i = have; i <= bit; i++) {
+                grown[i] = multiply(grown[i - 1], grown[i - 1]);
+            }
+            transitionPowers = grown;
+            powers = grown;
+        }
+        return powers[bit];
+    }
+
+    private boolean isCheckpointIndex(long index) {
+        return !checkpoints.isEmpty() && (index - (recurrenceStart - 1L)) % checkpointStride == 0;
+    }
+
+    /** Stores a checkpoint; when full, every other one is dropped and the stride doubles. */
+    private void addCheckpoint(long index, AutoStackingNumber[] state) {
+        long lastSeedIndex = recurrenceStart - 1L;
+        if (checkpointCount.get() >= MAX_CHECKPOINTS) {
+            long stride = checkpointStride * 2;
+            checkpointStride = stride;
+            for (Long key : checkpoints.keySet()) {
+                if ((key - lastSeedIndex) % stride != 0 && checkpoints.remove(key) != null) {
+                    checkpointCount.decrementAndGet();
+                }
+            }
+            if ((index - lastSeedIndex) % stride != 0) {
+                return;
+            }
+        }
+        if (checkpoints.putIfAbsent(index, state) == null) {
+            checkpointCount.incrementAndGet();
         }
-        return result[0];
     }
 
     private boolean isComposite() {
@@ -164,54 +254,39 @@ public class LinearRecurrenceFormula {
         return state;
     }
 
-    private AutoStackingNumber[] copyState(AutoStackingNumber[] state) {
-        return Arrays.copyOf(state, state.length);
-    }
-
-    private void advanceRollingState() {
+    private AutoStackingNumber[] advanceRollingState(AutoStackingNumber[] state) {
         AutoStackingNumber next = hasConstantTerm ? constantTerm : ZERO;
         for (int lag = 1; lag <= order; lag++) {
             AutoStackingNumber coeff = coefficientsByLag[lag - 1];
             if (coeff != null && !coeff.isZero()) {
-                next = next.add(coeff.multiply(rollingState[lag - 1]));
+                next = next.add(coeff.multiply(state[lag - 1]));
             }
         }
 
-        AutoStackingNumber[] nextState = new AutoStackingNumber[rollingState.length];
+        AutoStackingNumber[] nextState = new AutoStackingNumber[state.length];
         nextState[0] = next;
         for (int i = 1; i < order; i++) {
-            nextState[i] = rollingState[i - 1];
+            nextState[i] = state[i - 1];
         }
 
         if (hasConstantTerm) {
             nextState[nextState.length - 1] = ONE;
         }
-        rollingState = nextState;
+        return nextState;
     }
 
     private void resetRollingState() {
-        rollingIndex = Long.MIN_VALUE;
-        rollingState = null;
+        rolling = null;
     }
 
-    private AutoStackingNumber[] applyMatrixPowerToVector(AutoStackingNumber[][] base, long exp, AutoStackingNumber[] vector) {
-        AutoStackingNumber[] result = Arrays.copyOf(vector, vector.length);
-        if (exp <= 0) {
-            return result;
-        }
+    private static final class Rolling {
+        final long index;
+        final AutoStackingNumber[] state;
 
-        AutoStackingNumber[][] current = base;
-        long e = exp;
-        while (e > 0) {
-            if ((e & 1L) == 1L) {
-                result = multiply(current, result);
-            }
-            e >>= 1;
-            if (e > 0) {
-                current = multiply(current, current);
-            }
+        Rolling(long index, AutoStackingNumber[] state) {
+            this.index = index;
+            this.state = state;
         }
-        return result;
     }
 
     private AutoStackingNumber[][] multiply(AutoStackingNumber[][] a, AutoStackingNumber[][] b) {
@@ -3,6 +3,7 @@ package cod.range.formula;
 import cod.ast.node.Expr;
 import cod.interpreter.Evaluator;
 import cod.interpreter.context.ExecutionContext;
+import cod.interpreter.handler.TypeHandler;
 import java.util.*;
 
 public class SequenceFormula {
@@ -10,6 +11,9 @@ public class SequenceFormula {
     public final long end;
     public final String indexVar;
     public final List<Step> steps;
+
+    private FormulaProgram program;
+    private boolean programResolved;
     
     public static class Step {
         public final String tempVar;
@@ -54,6 +58,53 @@ public class SequenceFormula {
     }
     
     public Object evaluate(long index, Evaluator evaluator, ExecutionContext context) {
+        FormulaProgram compiled = compiledProgram();
+        if (compiled != null) {
+            try {
+                return compiled.run(index, evaluator, context);
+            } catch (FormulaProgram.Deopt e) {
+                // Evaluate this index through the interpreter below.
+            }
+        }
+        return interpret(index, evaluator, context);
+    }
+
+    private FormulaProgram compiledProgram() {
+        if (!programResolved) {
+            programResolved = true;
+            List<String> tempVars = new ArrayList<String>();
+            List<Expr> expressions = new ArrayList<Expr>();
+            for (Step step : steps) {
+                tempVars.add(step.tempVar);
+                expressions.add(step.expression);
+            }
+            program = FormulaProgram.compile(indexVar, tempVars, expressions);
+        }
+        return program;
+    }
+
+    /** Whether evaluateDetached covers this formula; call before handing it to workers. */
+    public boolean isDetached() {
+        FormulaProgram compiled = compiledProgram();
+        return compiled != null && compiled.isDetached();
+    }
+
+    /**
+     * Evaluates without the interpreter, for worker threads that each pass
+     * their own TypeHandler. Null means the index must go through evaluate;
+     * errors of the program itself are thrown as they are.
+     */
+    public Object evaluateDetached(long index, TypeHandler types) {
+        FormulaProgram compiled = compiledProgram();
+        if (compiled == null) return null;
+        try {
+            return compiled.runDetached(index, types);
+        } catch (FormulaProgram.Deopt e) {
+            return null;
+        }
+    }
+
+    private Object interpret(long index, Evaluator evaluator, ExecutionContext context) {
         // Save old values to restore later
         Object oldIndexValue = context.getVariable(indexVar);
         Map<String, Object> oldTempValues = new HashMap<String, Object>();
@@ -15,8 +15,8 @@ public class VectorRecurrenceFormula {
     public final AutoStackingNumber[] constant;
     public final AutoStackingNumber[][] seedValues;
     private final boolean hasConstantTerm;
-    private transient long rollingIndex = Long.MIN_VALUE;
-    private transient AutoStackingNumber[] rollingState = null;
+    // Published as an immutable snapshot so that reads need no lock.
+    private transient volatile Rolling rolling = null;
 
     private static final AutoStackingNumber ZERO = AutoStackingNumber.fromLong(0L);
     private static final AutoStackingNumber ONE = AutoStackingNumber.fromLong(1L);
@@ -49,7 +49,7 @@ public class VectorRecurrenceFormula {
         return index >= start && index <= end;
     }
 
-    public synchronized Object evaluate(long index, int sequenceIndex) {
+    public Object evaluate(long index, int sequenceIndex) {
         if (sequenceIndex < 0 || sequenceIndex >= dimension) {
             return null;
         }
@@ -76,13 +76,14 @@ public class VectorRecurrenceFormula {
             return seedValues[sequenceIndex][seedOffset.intValue()];
         }
 
-        if (rollingState != null && index == rollingIndex) {
-            return rollingState[sequenceIndex];
+        Rolling current = rolling;
+        if (current != null && index == current.index) {
+            return current.state[sequenceIndex];
         }
-        if (rollingState != null && index == rollingIndex + 1L) {
-            advanceRollingState();
-            rollingIndex = index;
-            return rollingState[sequenceIndex];
+        if (current != null && index == current.index + 1L) {
+            AutoStackingNumber[] next = advanceRollingState(current.state);
+            rolling = new Rolling(index, next);
+            return next[sequenceIndex];
         }
 
         long lastSeedIndex = recurrenceStart - 1L;
@@ -97,8 +98,8 @@ public class VectorRecurrenceFormula {
         }
         AutoStackingNumber[] result = applyMatrixPowerToVector(transition, steps, state);
 
-        rollingState = Arrays.copyOf(result, baseDim);
-        rollingIndex = index;
+        AutoStackingNumber[] rollingState = Arrays.copyOf(result, baseDim);
+        rolling = new Rolling(index, rollingState);
         return rollingState[sequenceIndex];
     }
 
@@ -161,7 +162,7 @@ public class VectorRecurrenceFormula {
         return state;
     }
 
-    private void advanceRollingState() {
+    private AutoStackingNumber[] advanceRollingState(AutoStackingNumber[] rollingState) {
         int baseDim = dimension * order;
         AutoStackingNumber[] nextState = new AutoStackingNumber[baseDim];
 
@@ -183,7 +184,7 @@ public class VectorRecurrenceFormula {
             }
         }
 
-        rollingState = nextState;
+        return nextState;
     }
 
     private AutoStackingNumber[] applyMatrixPowerToVector(AutoStackingNumber[][] base, long exp, AutoStackingNumber[] vector) {
@@ -258,7 +259,16 @@ public class VectorRecurrenceFormula {
     }
 
     private void resetRollingState() {
-        rollingIndex = Long.MIN_VALUE;
-        rollingState = null;
+        rolling = null;
+    }
+
+    private static final class Rolling {
+        final long index;
+        final AutoStackingNumber[] state;
+
+        Rolling(long index, AutoStackingNumber[] state) {
+            this.index = index;
+            this.state = state;
+        }
     }
 }
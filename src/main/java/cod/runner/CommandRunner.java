@@ -287,12 +287,11 @@ public class CommandRunner extends BaseRunner {
             prepareInterpreterForPTAC(ast);
             Type entryType = findMainType(ast);
             if (entryType != null) {
-                Artifact artifact = irManager.loadArtifact(ast.unit.name, entryType.name);
-                if (artifact == null) {
-                    irManager.save(ast.unit.name, entryType);
-                    artifact = irManager.loadArtifact(ast.unit.name, entryType.name);
-                }
+                Artifact artifact = irManager.loadCurrentArtifact(ast.unit.name, entryType);
                 if (artifact != null) {
+                    if (ptacOptions.isBytecodeEnabled()) {
+                        irManager.loadBytecode(ast.unit.name, artifact);
+                    }
                     DebugSystem.info(NAME + LOG_TAG, "Executing using CodP-TAC executor");
                     new Executor(ptacOptions).execute(artifact, interpreter);
                     DebugSystem.info(NAME + LOG_TAG, "Program interpretation completed");
@@ -369,7 +368,8 @@ public class CommandRunner extends BaseRunner {
         out("  compile <file>      Compile source to bytecode container (.codc with .codb entries)");
         out("    -f, --full        Full compile all .cod files under src/main");
         out("Environment flags:");
-        out("  COD_PTAC_MODE=interpreter|compile-only|compile-execute (default: compile-execute)");
+        out("  COD_PTAC_MODE=interpreter|compile-only|compile-execute|bytecode (default: compile-execute)");
+        out("                      bytecode compiles only functions that call nothing outside the unit");
         out("  COD_PTAC_FALLBACK=true|false");
         out();
         out("Examples:");
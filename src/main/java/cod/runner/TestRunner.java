@@ -279,6 +279,9 @@ public class TestRunner extends BaseRunner {
                     artifact = irManager.loadArtifact(ast.unit.name, entryType.name);
                 }
                 if (artifact != null) {
+                    if (ptacOptions.isBytecodeEnabled()) {
+                        irManager.loadBytecode(ast.unit.name, artifact);
+                    }
                     DebugSystem.info(NAME + LOG_TAG, "Executing using CodP-TAC executor");
                     new Executor(ptacOptions).execute(artifact, interpreter);
                     double duration = DebugSystem.stopTimer("interpretation");
@@ -33,6 +33,9 @@ public class ConstructorResolver {
     // Constructor signature cache
     private Map<String, Map<String, Constructor>> constructorSignatureCache = 
         new HashMap<String, Map<String, Constructor>>();
+
+    // Class table version, see getVersion()
+    private volatile int version = 0;
     
     public ConstructorResolver(TypeHandler typeSystem, Interpreter interpreter) {
         if (typeSystem == null) {
@@ -1046,7 +1049,13 @@ public class ConstructorResolver {
         return null;
     }
     
+    /** Bumped by clearCaches; method lookups cached outside this class are stale after a change. */
+    public int getVersion() {
+        return version;
+    }
+
     public void clearCaches() {
+        version++;
         flattenedMethodTables.clear();
         flattenedFieldTables.clear();
         inheritanceChainCache.clear();
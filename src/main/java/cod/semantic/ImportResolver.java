@@ -43,6 +43,10 @@ public class ImportResolver {
     private Map<String, String> explicitFieldImports = new HashMap<String, String>();
     private List<String> importPaths = new ArrayList<String>();
     private Map<String, String> packageBroadcasts = new HashMap<String, String>();
+
+    // Bumped whenever registered imports or loaded units change, so callers
+    // caching resolved methods (call-site caches) know to look up again.
+    private volatile int version = 0;
     
     // Concurrent map keeps lock-free fast-path reads in findPolicy/get/register paths.
     private Map<String, Policy> importedPolicies = new ConcurrentHashMap<String, Policy>();
@@ -608,6 +612,10 @@ public class ImportResolver {
         return policyToUnitMap.get(policyName);
     }
     
+    public int getVersion() {
+        return version;
+    }
+
     public Set<String> getRegisteredPolicies() {
         return importedPolicies.keySet();
     }
@@ -617,6 +625,7 @@ public class ImportResolver {
             throw new InternalError("addImportPath called with null/empty path");
         }
         importPaths.add(path);
+        version++;
         DebugSystem.debug("IMPORTS", "Added import path: " + path);
     }
     
@@ -624,6 +633,7 @@ public class ImportResolver {
         if (importName == null || importName.isEmpty()) {
             throw new InternalError("registerImport called with null/empty importName");
         }
+        version++;
 
         if (importName.contains("(")) {
             if (!methodImportSpecs.contains(importName)) {
@@ -868,6 +878,7 @@ public class ImportResolver {
                 if (program != null) {
                     loadedPrograms.put(importName, program);
                     importedUnits.put(importName, program);
+                    version++;
                     cacheImportName(importName);
                     registerPoliciesAndBroadcast(program, importName);
                     return program;
@@ -881,6 +892,7 @@ public class ImportResolver {
                 program.unit = ASTFactory.createUnit("default", null);
                 program.unit.types.add(type);
                 loadedPrograms.put(importName, program);
+                version++;
                 return program;
             }
             
@@ -1190,6 +1202,7 @@ public class ImportResolver {
     }
 
     public void clearCache() {
+        version++;
         importNameCache.clear();
         typeCache.clear();
         indexCache.clear();
@@ -1544,6 +1557,7 @@ public class ImportResolver {
         importedUnits.put(qualifiedName, program);
         loadedPrograms.put(qualifiedName, program);
         preloadedImports.put(qualifiedName, program);
+        version++;
         
         cacheImportName(qualifiedName);
         